@@ -0,0 +1,30 @@
+package japns.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 全ベンチマークの実行
+ *
+ * <p>
+ * アロケーションプロファイラ（{@link GCProfiler}）を有効にして実行し、
+ * 処理時間と合わせて1回あたりのメモリ割り当て量（gc.alloc.rate.norm）を出力します。<br>
+ * 引数を指定した場合は、ベンチマーク名の正規表現として対象を絞り込みます。
+ * </p>
+ *
+ * @author T.Inukai
+ */
+public class ApnsBenchmarkMain {
+
+	public static void main(String[] args) throws RunnerException {
+		String include = args.length > 0 ? args[0] : "japns\\.benchmark\\..*Benchmark";
+		Options options = new OptionsBuilder()
+				.include(include)
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(options).run();
+	}
+}
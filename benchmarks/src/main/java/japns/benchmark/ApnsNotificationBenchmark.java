@@ -0,0 +1,68 @@
+package japns.benchmark;
+
+import japns.ApnsNotification;
+import japns.ApnsPayload;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 通知バイナリデータ生成のベンチマーク
+ *
+ * @author T.Inukai
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ApnsNotificationBenchmark {
+
+	/** デバイストークン（64桁の16進数） */
+	static final String TOKEN = "0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef";
+
+	/** 通知 */
+	private ApnsNotification notification;
+
+	/** 送信バッファ */
+	private byte[] buffer;
+
+	@Setup
+	public void setup() {
+		ApnsPayload payload = new ApnsPayload();
+		payload.setAlertBody("新着メッセージが3件あります。");
+		payload.setBadge(3);
+		payload.setSound("default");
+		notification = new ApnsNotification(TOKEN, payload.build(), 0, ApnsNotification.Priority.HIGH);
+		buffer = new byte[notification.getNotificationLength()];
+	}
+
+	/**
+	 * 通知ごとにbyte配列を生成
+	 * @return 通知バイナリデータ
+	 */
+	@Benchmark
+	public byte[] getNotificationBytes() {
+		return notification.getNotificationBytes();
+	}
+
+	/**
+	 * 送信バッファに直接生成（送信処理と同じ方法）
+	 * @return 書き込んだバイト数
+	 */
+	@Benchmark
+	public int encodeNotificationBytes() {
+		return notification.encodeNotificationBytes(buffer, 0);
+	}
+}
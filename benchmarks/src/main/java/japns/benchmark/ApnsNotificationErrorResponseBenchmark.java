@@ -0,0 +1,42 @@
+package japns.benchmark;
+
+import japns.ApnsNotificationErrorResponse;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * エラー通知の解析のベンチマーク
+ *
+ * @author T.Inukai
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ApnsNotificationErrorResponseBenchmark {
+
+	/** エラー通知（コマンド8, ステータス8:不正なトークン, 識別子12345） */
+	private final byte[] bytes = { 8, 8, 0, 0, 0x30, 0x39 };
+
+	/**
+	 * エラー通知の解析
+	 * @return 識別子
+	 */
+	@Benchmark
+	public int parse() {
+		ApnsNotificationErrorResponse response = new ApnsNotificationErrorResponse(bytes);
+		return response.getIdentifier() + response.getStatus();
+	}
+}
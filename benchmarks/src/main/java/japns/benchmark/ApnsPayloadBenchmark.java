@@ -0,0 +1,100 @@
+package japns.benchmark;
+
+import japns.ApnsEncodedPayload;
+import japns.ApnsPayload;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ペイロード生成のベンチマーク
+ *
+ * <p>
+ * 送信先ごとにペイロードを生成する場合を想定し、毎回{@link ApnsPayload#reset()}して項目を設定し直します。
+ * {@code truncate}がtrueの場合は、最大ペイロードサイズを超える本文を切り詰めます。
+ * </p>
+ *
+ * @author T.Inukai
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ApnsPayloadBenchmark {
+
+	/** 本文の切り詰めの有無 */
+	@Param({ "false", "true" })
+	public boolean truncate;
+
+	/** ペイロード */
+	private ApnsPayload payload;
+
+	/** 本文 */
+	private String alertBody;
+
+	@Setup
+	public void setup() {
+		payload = new ApnsPayload();
+		StringBuilder sb = new StringBuilder();
+		int repeat = truncate ? 400 : 4;
+		for (int i = 0; i < repeat; i++) {
+			sb.append("新着メッセージ\"があります。");
+		}
+		alertBody = sb.toString();
+	}
+
+	/**
+	 * ペイロードの項目の設定
+	 */
+	private void fill() {
+		payload.reset();
+		payload.setTruncateAlertBody(truncate);
+		payload.setAlertBody(alertBody);
+		payload.setBadge(3);
+		payload.setSound("default");
+		payload.putCustomField("messageId", 12345);
+	}
+
+	/**
+	 * 文字列で取得
+	 * @return ペイロード文字列
+	 */
+	@Benchmark
+	public String getPayload() {
+		fill();
+		return payload.getPayload();
+	}
+
+	/**
+	 * byte配列で取得
+	 * @return ペイロード
+	 */
+	@Benchmark
+	public byte[] getPayloadBytes() {
+		fill();
+		return payload.getPayloadBytes();
+	}
+
+	/**
+	 * 生成済みペイロードで取得
+	 * @return 生成済みペイロード
+	 */
+	@Benchmark
+	public ApnsEncodedPayload build() {
+		fill();
+		return payload.build();
+	}
+}
@@ -0,0 +1,60 @@
+package japns.benchmark;
+
+import japns.ApnsUtil;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 16進数変換のベンチマーク
+ *
+ * @author T.Inukai
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ApnsUtilBenchmark {
+
+	/** デバイストークン（16進数） */
+	private String hex;
+
+	/** デバイストークン（バイナリ） */
+	private byte[] bytes;
+
+	@Setup
+	public void setup() {
+		hex = ApnsNotificationBenchmark.TOKEN;
+		bytes = ApnsUtil.convertHexToBytes(hex);
+	}
+
+	/**
+	 * 16進数からバイナリへの変換
+	 * @return バイナリ
+	 */
+	@Benchmark
+	public byte[] convertHexToBytes() {
+		return ApnsUtil.convertHexToBytes(hex);
+	}
+
+	/**
+	 * バイナリから16進数への変換
+	 * @return 16進数
+	 */
+	@Benchmark
+	public String convertBytesToHex() {
+		return ApnsUtil.convertBytesToHex(bytes);
+	}
+}
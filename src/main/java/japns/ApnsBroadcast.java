@@ -0,0 +1,150 @@
+package japns;
+
+import japns.ApnsNotification.Priority;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * ブロードキャスト送信
+ *
+ * <p>
+ * 全てのデバイストークンに同一のペイロードを送信する場合に使用します。<br>
+ * ペイロードは生成時に一度だけUTF-8バイト配列に変換され、全ての{@link ApnsNotification}で共有されます。
+ * 通知ごとに保持するのはデバイストークンと識別子などの固定長データのみになり、
+ * 送信時もペイロードはバイナリデータへそのままコピーされます。
+ * </p>
+ *
+ * <pre>
+ * ApnsBroadcast broadcast = new ApnsBroadcast(payload.getPayload());
+ * for (String token : tokenList) {
+ *     broadcast.addToken(token);
+ * }
+ * ApnsResult result = apnsNotificationService.push(broadcast.getNotificationList(), threadCount);
+ * </pre>
+ *
+ * @author T.Inukai
+ */
+public class ApnsBroadcast {
+
+	/**
+	 * 共有ペイロード（UTF-8バイト配列）
+	 */
+	private final byte[] payloadBytes;
+	/**
+	 * 有効期限
+	 */
+	private final int expiry;
+	/**
+	 * 優先度
+	 */
+	private final Priority priority;
+
+	/**
+	 * 送信データリスト
+	 */
+	private final List<ApnsNotification> apnsNotificationList = new ArrayList<ApnsNotification>();
+
+	/**
+	 * ペイロードを指定してインスタンスを生成します
+	 *
+	 * <p>
+	 * 有効期限は{@code Integer.MAX_VALUE}、優先度は{@link Priority#HIGH}になります。
+	 * </p>
+	 *
+	 * @param payload ペイロード
+	 */
+	public ApnsBroadcast(String payload) {
+		this(payload, Integer.MAX_VALUE, Priority.HIGH);
+	}
+
+	/**
+	 * ペイロード、有効期限、優先度を指定してインスタンスを生成します
+	 * @param payload ペイロード
+	 * @param expiry 有効期限
+	 * @param priority 優先度
+	 */
+	public ApnsBroadcast(String payload, int expiry, Priority priority) {
+		if (payload == null) {
+			throw new ApnsException("ペイロードが指定されていません。");
+		}
+		this.payloadBytes = ApnsUtil.convertStringToUTF8Bytes(payload);
+		this.expiry = expiry;
+		this.priority = priority;
+	}
+
+	/**
+	 * 生成済みペイロード、有効期限、優先度を指定してインスタンスを生成します
+	 * @param payload 生成済みペイロード。UTF-8バイト配列はコピーせずに共有されます
+	 * @param expiry 有効期限
+	 * @param priority 優先度
+	 */
+	public ApnsBroadcast(ApnsEncodedPayload payload, int expiry, Priority priority) {
+		this.payloadBytes = payload.getBytesUnsafe();
+		this.expiry = expiry;
+		this.priority = priority;
+	}
+
+	/**
+	 * 送信先デバイストークンの追加
+	 * @param token デバイストークン（16進文字列）
+	 * @return 追加された送信データ
+	 */
+	public ApnsNotification addToken(String token) {
+		ApnsNotification apnsNotification = new ApnsNotification(token, payloadBytes, expiry, priority);
+		apnsNotificationList.add(apnsNotification);
+		return apnsNotification;
+	}
+
+	/**
+	 * 送信先デバイストークンの追加
+	 * @param token デバイストークン
+	 * @return 追加された送信データ
+	 */
+	public ApnsNotification addToken(ApnsDeviceToken token) {
+		ApnsNotification apnsNotification = new ApnsNotification(token, payloadBytes, expiry, priority);
+		apnsNotificationList.add(apnsNotification);
+		return apnsNotification;
+	}
+
+	/**
+	 * 送信先デバイストークンの一括追加
+	 * @param tokens デバイストークン（16進文字列）
+	 */
+	public void addTokens(Collection<String> tokens) {
+		for (String token : tokens) {
+			addToken(token);
+		}
+	}
+
+	/**
+	 * 送信データリストの取得
+	 *
+	 * <p>
+	 * {@link ApnsNotificationService#push(List)}などにそのまま渡すことができます。
+	 * </p>
+	 *
+	 * @return 送信データリスト（変更不可）
+	 */
+	public List<ApnsNotification> getNotificationList() {
+		return Collections.unmodifiableList(apnsNotificationList);
+	}
+
+	/**
+	 * 送信先の件数の取得
+	 * @return 送信先の件数
+	 */
+	public int size() {
+		return apnsNotificationList.size();
+	}
+
+	/**
+	 * 共有ペイロードのバイト数の取得
+	 * @return ペイロードのバイト数
+	 */
+	public int getPayloadLength() {
+		return payloadBytes.length;
+	}
+}
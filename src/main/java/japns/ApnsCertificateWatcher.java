@@ -0,0 +1,288 @@
+package japns;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLSocketFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 証明書ファイルの監視と再読み込み
+ *
+ * <p>
+ * 証明書ファイルを定期的に確認し、更新日時またはサイズが変わった場合は、監視スレッドで新しい{@link SSLSocketFactory}を生成して差し替えます。<br>
+ * このクラス自体が{@link SSLSocketFactory}として動作し、新しい接続は差し替え後の証明書で生成されます。
+ * 生成済みの接続は切断されず、{@link ApnsNotificationService}は送信中の接続を通常の再接続（エラー通知、最大パケットサイズ超過）
+ * またはPUSH通知の終了まで使用し続けるため、差し替えによって送信が中断されることはありません。
+ * 新しい証明書の読み込みに失敗した場合は、現在の証明書を使用し続け、次回の確認で再試行します。
+ * </p>
+ *
+ * <pre>
+ * ApnsCertificateWatcher watcher = new ApnsCertificateWatcher(certFileName, certPassword);
+ * watcher.start(60 * 1000L);
+ * ApnsNotificationService service = new ApnsNotificationService(isProduction, watcher, null,
+ * 		ApnsNotificationService.DEFAULT_PUSH_INTERVAL_MS, ApnsNotificationService.DEFAULT_MAX_PACKET);
+ * ...
+ * watcher.stop();
+ * </pre>
+ *
+ * @author T.Inukai
+ */
+public class ApnsCertificateWatcher extends SSLSocketFactory {
+	private static Logger logger = LoggerFactory.getLogger(ApnsCertificateWatcher.class);
+
+	/**
+	 * 証明書ファイル名
+	 */
+	private final String certFileName;
+	/**
+	 * 証明書パスワード
+	 */
+	private volatile String certPassword;
+
+	/**
+	 * 現在のソケットファクトリ
+	 */
+	private volatile SSLSocketFactory delegate;
+	/**
+	 * 世代（証明書を差し替えるたびに加算）
+	 */
+	private volatile long generation;
+	/**
+	 * 最後に証明書を読み込んだ時刻（ミリ秒）
+	 */
+	private volatile long lastReloadMillis;
+
+	/**
+	 * 読み込んだ証明書ファイルの更新日時
+	 */
+	private long loadedLastModified;
+	/**
+	 * 読み込んだ証明書ファイルのサイズ
+	 */
+	private long loadedLength;
+
+	/**
+	 * スケジューラ（実行中のみ）
+	 */
+	private ScheduledExecutorService scheduler;
+
+	/**
+	 * 証明書ファイル、証明書パスワードを指定してインスタンスを生成します
+	 *
+	 * <p>
+	 * 証明書はインスタンス生成時に読み込まれます。
+	 * </p>
+	 *
+	 * @param certFileName 証明書ファイル
+	 * @param certPassword 証明書パスワード
+	 * @throws ApnsException 証明書の読み込みに失敗した場合
+	 */
+	public ApnsCertificateWatcher(String certFileName, String certPassword) {
+		this.certFileName = certFileName;
+		this.certPassword = certPassword;
+		reload();
+	}
+
+	/**
+	 * 証明書パスワードの設定
+	 *
+	 * <p>
+	 * パスワードの異なる証明書に差し替える場合は、ファイルを差し替える前に設定してください。
+	 * 設定したパスワードは次回の読み込みから使用されます。
+	 * </p>
+	 *
+	 * @param certPassword 証明書パスワード
+	 */
+	public void setCertPassword(String certPassword) {
+		this.certPassword = certPassword;
+	}
+
+	/**
+	 * 監視の開始
+	 *
+	 * <p>
+	 * 既に開始している場合は何もしません。
+	 * </p>
+	 *
+	 * @param intervalMillis 確認間隔（ミリ秒）
+	 */
+	public synchronized void start(long intervalMillis) {
+		if (intervalMillis <= 0) {
+			throw new ApnsException("確認間隔が不正です。intervalMillis=" + intervalMillis);
+		}
+		if (scheduler != null) {
+			return;
+		}
+		scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "ApnsCertificateWatcher");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		try {
+			scheduler.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						checkForUpdate();
+					} catch (RuntimeException e) {
+						logger.warn("証明書ファイルの確認に失敗しました。file={}", certFileName, e);
+					}
+				}
+			}, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			logger.debug("停止済みのため監視を開始しません。");
+		}
+	}
+
+	/**
+	 * 監視の停止
+	 *
+	 * <p>
+	 * 停止後も、最後に読み込んだ証明書でソケットを生成できます。
+	 * </p>
+	 */
+	public synchronized void stop() {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+			scheduler = null;
+		}
+	}
+
+	/**
+	 * 証明書ファイルの更新確認
+	 *
+	 * <p>
+	 * 更新日時またはサイズが最後に読み込んだ時から変わっている場合は、証明書を再読み込みします。
+	 * </p>
+	 *
+	 * @return 証明書を差し替えた場合はtrue
+	 */
+	public boolean checkForUpdate() {
+		File file = new File(certFileName);
+		long lastModified = file.lastModified();
+		long length = file.length();
+		synchronized (this) {
+			if (lastModified == 0 || (lastModified == loadedLastModified && length == loadedLength)) {
+				return false;
+			}
+		}
+		try {
+			reload();
+			return true;
+		} catch (ApnsException e) {
+			logger.warn("証明書の再読み込みに失敗しました。現在の証明書を使用し続けます。file={}", certFileName, e);
+			return false;
+		}
+	}
+
+	/**
+	 * 証明書の再読み込み
+	 *
+	 * <p>
+	 * 新しい{@link SSLSocketFactory}の生成が完了してから差し替えるため、生成中も現在の証明書でソケットを生成できます。
+	 * </p>
+	 *
+	 * @throws ApnsException 証明書の読み込みに失敗した場合
+	 */
+	public synchronized void reload() {
+		File file = new File(certFileName);
+		long lastModified = file.lastModified();
+		long length = file.length();
+		SSLSocketFactory factory = ApnsUtil.getSSLSocketFactory(certFileName, certPassword);
+		ApnsUtil.clearSharedSSLSocketFactory(certFileName);
+
+		loadedLastModified = lastModified;
+		loadedLength = length;
+		delegate = factory;
+		lastReloadMillis = System.currentTimeMillis();
+		generation++;
+		logger.info("証明書を読み込みました。file={}, generation={}", certFileName, generation);
+	}
+
+	/**
+	 * 世代の取得
+	 *
+	 * <p>
+	 * 証明書を差し替えるたびに1ずつ増加します。生成時の読み込みが1になります。
+	 * </p>
+	 *
+	 * @return 世代
+	 */
+	public long getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * 最後に証明書を読み込んだ時刻の取得
+	 * @return 最後に証明書を読み込んだ時刻（ミリ秒）
+	 */
+	public long getLastReloadMillis() {
+		return lastReloadMillis;
+	}
+
+	/**
+	 * 証明書ファイル名の取得
+	 * @return 証明書ファイル名
+	 */
+	public String getCertFileName() {
+		return certFileName;
+	}
+
+	@Override
+	public String[] getDefaultCipherSuites() {
+		return delegate.getDefaultCipherSuites();
+	}
+
+	@Override
+	public String[] getSupportedCipherSuites() {
+		return delegate.getSupportedCipherSuites();
+	}
+
+	@Override
+	public Socket createSocket() throws IOException {
+		return delegate.createSocket();
+	}
+
+	@Override
+	public Socket createSocket(Socket s, String host, int port, boolean autoClose) throws IOException {
+		return delegate.createSocket(s, host, port, autoClose);
+	}
+
+	@Override
+	public Socket createSocket(String host, int port) throws IOException {
+		return delegate.createSocket(host, port);
+	}
+
+	@Override
+	public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+		return delegate.createSocket(host, port, localHost, localPort);
+	}
+
+	@Override
+	public Socket createSocket(InetAddress host, int port) throws IOException {
+		return delegate.createSocket(host, port);
+	}
+
+	@Override
+	public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+		return delegate.createSocket(address, port, localAddress, localPort);
+	}
+
+	@Override
+	public String toString() {
+		return "{certFileName:" + certFileName + ",generation:" + generation + ",lastReloadMillis:" + lastReloadMillis + "}";
+	}
+}
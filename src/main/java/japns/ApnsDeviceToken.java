@@ -0,0 +1,150 @@
+package japns;
+
+import java.util.Arrays;
+
+/**
+ * デバイストークン
+ *
+ * <p>
+ * デバイストークンをバイナリ（byte配列）で保持する不変クラスです。<br>
+ * 16進文字列で保持する場合と比べてメモリ使用量が半分になり、
+ * PUSH通知送信時に16進文字列を解析する必要がなくなります。<br>
+ * ハッシュ値は生成時に計算されるため、{@code HashMap}などのキーとして高速に利用できます。
+ * </p>
+ *
+ * @author T.Inukai
+ */
+public final class ApnsDeviceToken {
+
+	/**
+	 * デバイストークン（byte配列）
+	 */
+	private final byte[] bytes;
+
+	/**
+	 * ハッシュ値
+	 */
+	private final int hash;
+
+	/**
+	 * byte配列を指定してインスタンスを生成します。
+	 *
+	 * <p>
+	 * 指定されたbyte配列はコピーされて保持されます。
+	 * </p>
+	 *
+	 * @param bytes デバイストークン（byte配列）
+	 */
+	public ApnsDeviceToken(byte[] bytes) {
+		this(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * byte配列の範囲を指定してインスタンスを生成します。
+	 *
+	 * @param bytes デバイストークンを含むbyte配列
+	 * @param offset 開始位置
+	 * @param length 長さ
+	 */
+	public ApnsDeviceToken(byte[] bytes, int offset, int length) {
+		this(Arrays.copyOfRange(bytes, offset, offset + length), null);
+	}
+
+	/**
+	 * byte配列をコピーせずに保持するコンストラクタ
+	 * @param bytes デバイストークン（byte配列）
+	 * @param unused シグネチャ区別用（未使用）
+	 */
+	private ApnsDeviceToken(byte[] bytes, Void unused) {
+		this.bytes = bytes;
+		this.hash = Arrays.hashCode(bytes);
+	}
+
+	/**
+	 * byte配列をコピーせずにデバイストークンを生成します。
+	 *
+	 * <p>
+	 * 呼び出し元は以降{@code bytes}を変更してはいけません。
+	 * </p>
+	 *
+	 * @param bytes デバイストークン（byte配列）
+	 * @return デバイストークン
+	 */
+	static ApnsDeviceToken wrap(byte[] bytes) {
+		return new ApnsDeviceToken(bytes, null);
+	}
+
+	/**
+	 * 16進文字列からデバイストークンを生成します。
+	 *
+	 * <p>
+	 * 空白、ハイフンは読み飛ばされます。
+	 * </p>
+	 *
+	 * @param hex 16進文字列
+	 * @return デバイストークン
+	 * @throws ApnsException 16進文字列として不正な場合
+	 */
+	public static ApnsDeviceToken fromHex(String hex) {
+		return wrap(ApnsUtil.convertHexToBytes(hex));
+	}
+
+	/**
+	 * デバイストークンの長さ（バイト数）の取得
+	 * @return デバイストークンの長さ
+	 */
+	public int length() {
+		return bytes.length;
+	}
+
+	/**
+	 * デバイストークン（byte配列）の取得
+	 * @return デバイストークンのbyte配列のコピー
+	 */
+	public byte[] getBytes() {
+		return bytes.clone();
+	}
+
+	/**
+	 * デバイストークン（byte配列）の取得
+	 *
+	 * <p>
+	 * 内部で保持しているbyte配列をそのまま返却します。呼び出し元で変更してはいけません。
+	 * </p>
+	 *
+	 * @return デバイストークンのbyte配列
+	 */
+	byte[] getBytesUnsafe() {
+		return bytes;
+	}
+
+	/**
+	 * 16進文字列の取得
+	 * @return 16進文字列（大文字）
+	 */
+	public String toHex() {
+		return ApnsUtil.convertBytesToHex(bytes);
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof ApnsDeviceToken)) {
+			return false;
+		}
+		ApnsDeviceToken other = (ApnsDeviceToken) obj;
+		return hash == other.hash && Arrays.equals(bytes, other.bytes);
+	}
+
+	@Override
+	public String toString() {
+		return toHex();
+	}
+}
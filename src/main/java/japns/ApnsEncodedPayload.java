@@ -0,0 +1,146 @@
+package japns;
+
+import java.util.Arrays;
+
+/**
+ * 生成済みペイロード
+ *
+ * <p>
+ * {@link ApnsPayload#build()}で生成される、シリアライズ済みのペイロードを保持する不変クラスです。<br>
+ * UTF-8バイト配列は生成時に一度だけ計算され、複数の{@link ApnsNotification}でコピーせずに共有されます。
+ * 文字列への変換を経由しないため、送信時にペイロードを再エンコードする必要がありません。
+ * </p>
+ *
+ * <pre>
+ * ApnsEncodedPayload encoded = payload.build();
+ * for (ApnsDeviceToken token : tokenList) {
+ *     apnsNotificationList.add(new ApnsNotification(token, encoded));
+ * }
+ * </pre>
+ *
+ * @author T.Inukai
+ */
+public final class ApnsEncodedPayload {
+
+	/**
+	 * ペイロード（UTF-8バイト配列）
+	 */
+	private final byte[] bytes;
+
+	/**
+	 * ペイロード文字列（初回取得時に生成）
+	 */
+	private String string;
+
+	/**
+	 * byte配列をコピーせずに保持するコンストラクタ
+	 * @param bytes ペイロード（UTF-8バイト配列）
+	 */
+	private ApnsEncodedPayload(byte[] bytes) {
+		this.bytes = bytes;
+	}
+
+	/**
+	 * UTF-8バイト配列から生成済みペイロードを生成します。
+	 *
+	 * <p>
+	 * 指定されたbyte配列はコピーされて保持されます。
+	 * </p>
+	 *
+	 * @param payloadBytes ペイロード（UTF-8バイト配列）
+	 * @return 生成済みペイロード
+	 */
+	public static ApnsEncodedPayload fromBytes(byte[] payloadBytes) {
+		if (payloadBytes == null) {
+			throw new ApnsException("ペイロードが指定されていません。");
+		}
+		return new ApnsEncodedPayload(payloadBytes.clone());
+	}
+
+	/**
+	 * 文字列から生成済みペイロードを生成します。
+	 * @param payload ペイロード
+	 * @return 生成済みペイロード
+	 */
+	public static ApnsEncodedPayload fromString(String payload) {
+		if (payload == null) {
+			throw new ApnsException("ペイロードが指定されていません。");
+		}
+		ApnsEncodedPayload encodedPayload = new ApnsEncodedPayload(ApnsUtil.convertStringToUTF8Bytes(payload));
+		encodedPayload.string = payload;
+		return encodedPayload;
+	}
+
+	/**
+	 * byte配列をコピーせずに生成済みペイロードを生成します。
+	 *
+	 * <p>
+	 * 呼び出し元は以降{@code payloadBytes}を変更してはいけません。
+	 * </p>
+	 *
+	 * @param payloadBytes ペイロード（UTF-8バイト配列）
+	 * @return 生成済みペイロード
+	 */
+	static ApnsEncodedPayload wrap(byte[] payloadBytes) {
+		return new ApnsEncodedPayload(payloadBytes);
+	}
+
+	/**
+	 * ペイロードのバイト数の取得
+	 * @return ペイロードのバイト数
+	 */
+	public int length() {
+		return bytes.length;
+	}
+
+	/**
+	 * ペイロードバイトデータの取得
+	 * @return ペイロード（UTF-8バイト配列）のコピー
+	 */
+	public byte[] getBytes() {
+		return bytes.clone();
+	}
+
+	/**
+	 * ペイロードバイトデータの取得（コピーなし）
+	 * @return ペイロード（UTF-8バイト配列）。変更してはいけません
+	 */
+	byte[] getBytesUnsafe() {
+		return bytes;
+	}
+
+	/**
+	 * ペイロード文字列の取得
+	 * @return ペイロード文字列
+	 */
+	public String getPayload() {
+		String s = string;
+		if (s == null) {
+			// 複数スレッドで同時に生成されても結果は同じため、同期は不要
+			s = ApnsUtil.convertUTF8BytesToString(bytes);
+			string = s;
+		}
+		return s;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof ApnsEncodedPayload)) {
+			return false;
+		}
+		return Arrays.equals(bytes, ((ApnsEncodedPayload) obj).bytes);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(bytes);
+	}
+
+	@Override
+	public String toString() {
+		return getPayload();
+	}
+}
@@ -0,0 +1,295 @@
+package japns;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 送信イベントのリングバッファ
+ *
+ * <p>
+ * 送信処理のイベント（書き込み、エラー通知、再接続など）を、固定サイズの{@code long}配列に記録します。<br>
+ * 記録時に文字列の生成やメモリ割り当てを行わないため、送信処理の中で全ての通知について記録できます。
+ * 容量を超えると古いイベントから上書きされます。
+ * 記録したイベントは{@link #dump()}で文字列として取得できます。{@link ApnsNotificationService}は送信処理が異常終了した場合にログに出力します。
+ * </p>
+ *
+ * <p>
+ * 1つのインスタンスに記録できるのは同時に1スレッドのみです。
+ * マルチスレッド送信では、{@link #lane(int)}で取得したスレッドごとのリングバッファに記録し、
+ * {@link #dump()}で全てのリングバッファのイベントを時刻順に結合して出力します。<br>
+ * 記録中でも{@link #dump()}できます。出力中に上書きされた可能性のあるイベントは出力しません。
+ * </p>
+ *
+ * @author T.Inukai
+ */
+public class ApnsEventRing {
+
+	/**
+	 * イベントの種類
+	 */
+	public enum EventType {
+		// 送信処理の開始（a:通知件数）
+		PUSH_START,
+		// 送信処理の終了（a:送信済件数, b:エラー件数）
+		PUSH_END,
+		// 接続（a:再接続後に最初に送信する通知のIndex）
+		CONNECT,
+		// 通知の書き込み（a:Index, b:バイト数）
+		WRITE,
+		// 通知を生成できず読み飛ばし（a:Index, b:最大ペイロードサイズを超える場合はペイロードのバイト数、それ以外は0）
+		SKIP,
+		// 書き込みエラー（a:Index）
+		WRITE_ERROR,
+		// エラー通知の受信（a:識別子, b:ステータス）
+		ERROR_RESPONSE,
+		// エラー通知の識別子に該当する通知なし（a:識別子）
+		UNKNOWN_IDENTIFIER,
+		// 再送（a:再送を開始するIndex, b:再送件数）
+		RESEND
+	}
+
+	/**
+	 * デフォルトの容量（イベント数）
+	 */
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	/**
+	 * 1イベントあたりの{@code long}の数（時刻、種類と接続ID、値a、値b）
+	 */
+	private static final int SLOT_SIZE = 4;
+
+	/**
+	 * 種類を格納するビット位置
+	 */
+	private static final int TYPE_SHIFT = 56;
+
+	/**
+	 * イベントの種類（ordinal順）
+	 */
+	private static final EventType[] EVENT_TYPES = EventType.values();
+
+	/**
+	 * イベント
+	 *
+	 * <p>
+	 * 記録中の{@link #dump()}で上書き途中のイベントを検出できるよう、書き込みは{@link AtomicLongArray#lazySet(int, long)}で順序を保証します。
+	 * </p>
+	 */
+	private final AtomicLongArray slots;
+
+	/**
+	 * 容量-1（容量は2のべき乗）
+	 */
+	private final int mask;
+
+	/**
+	 * 記録の状態
+	 *
+	 * <p>
+	 * 記録したイベントの件数の2倍で、イベントの記録中のみ1を加えた奇数になります。
+	 * 記録するスレッドのみが更新します。
+	 * 記録中を示す奇数は、後続のイベントの書き込みより先に{@link #dump()}から見えるよう{@link AtomicLong#set(long)}で、
+	 * 記録後の偶数はイベントの書き込みより後に見えればよいため{@link AtomicLong#lazySet(long)}で更新します。
+	 * </p>
+	 */
+	private final AtomicLong state = new AtomicLong();
+
+	/**
+	 * 時刻の基準（{@link System#nanoTime()}）
+	 *
+	 * <p>
+	 * スレッドごとのリングバッファは親と同じ基準を使用します。
+	 * </p>
+	 */
+	private final long baseNanos;
+
+	/**
+	 * スレッドごとのリングバッファ
+	 */
+	private final List<ApnsEventRing> lanes = new CopyOnWriteArrayList<ApnsEventRing>();
+
+	/**
+	 * デフォルトの容量でインスタンスを生成します
+	 */
+	public ApnsEventRing() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * 容量を指定してインスタンスを生成します
+	 * @param capacity 容量（イベント数）。2のべき乗に切り上げられます
+	 */
+	public ApnsEventRing(int capacity) {
+		this(capacity, System.nanoTime());
+	}
+
+	/**
+	 * 容量、時刻の基準を指定してインスタンスを生成します
+	 * @param capacity 容量（イベント数）。2のべき乗に切り上げられます
+	 * @param baseNanos 時刻の基準（{@link System#nanoTime()}）
+	 */
+	private ApnsEventRing(int capacity, long baseNanos) {
+		int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+		this.slots = new AtomicLongArray(size * SLOT_SIZE);
+		this.mask = size - 1;
+		this.baseNanos = baseNanos;
+	}
+
+	/**
+	 * スレッドごとのリングバッファの取得
+	 *
+	 * <p>
+	 * 同じ容量のリングバッファを初回の取得時に生成し、以降は同じインスタンスを返却します。
+	 * 記録したイベントは、このインスタンスの{@link #dump()}でまとめて出力されます。
+	 * </p>
+	 *
+	 * @param index スレッドの番号（0から）
+	 * @return スレッドごとのリングバッファ
+	 */
+	public synchronized ApnsEventRing lane(int index) {
+		while (lanes.size() <= index) {
+			lanes.add(new ApnsEventRing(getCapacity(), baseNanos));
+		}
+		return lanes.get(index);
+	}
+
+	/**
+	 * イベントの記録
+	 * @param type イベントの種類
+	 * @param connectionId 接続ID
+	 * @param a 値a（種類ごとに異なる）
+	 * @param b 値b（種類ごとに異なる）
+	 */
+	public void record(EventType type, long connectionId, long a, long b) {
+		long current = state.get();
+		// lazySetではイベントの書き込みが先に見える可能性があるため、記録中の印はvolatileで書き込む
+		state.set(current + 1);
+		int pos = (int) ((current >>> 1) & mask) * SLOT_SIZE;
+		slots.lazySet(pos, System.nanoTime() - baseNanos);
+		slots.lazySet(pos + 1, ((long) type.ordinal() << TYPE_SHIFT) | (connectionId & ((1L << TYPE_SHIFT) - 1)));
+		slots.lazySet(pos + 2, a);
+		slots.lazySet(pos + 3, b);
+		state.lazySet(current + 2);
+	}
+
+	/**
+	 * 記録したイベントの件数の取得
+	 * @return 記録したイベントの件数（上書きされたイベントを含む。スレッドごとのリングバッファは含まない）
+	 */
+	public long getRecordedCount() {
+		return state.get() >>> 1;
+	}
+
+	/**
+	 * 容量の取得
+	 * @return 容量（イベント数）
+	 */
+	public int getCapacity() {
+		return mask + 1;
+	}
+
+	/**
+	 * 記録したイベントの出力
+	 *
+	 * <p>
+	 * スレッドごとのリングバッファがある場合は、全てのイベントを時刻順に結合し、行頭にリングバッファの番号
+	 * （このインスタンスは0、{@link #lane(int)}は番号+1）を出力します。
+	 * </p>
+	 *
+	 * @return 古い順に1行1イベントの文字列
+	 */
+	public String dump() {
+		StringBuilder sb = new StringBuilder();
+		dump(sb);
+		return sb.toString();
+	}
+
+	/**
+	 * 記録したイベントの出力
+	 * @param sb 出力先
+	 */
+	public void dump(StringBuilder sb) {
+		List<long[]> events = new ArrayList<long[]>();
+		collect(0, events);
+		boolean merged = !lanes.isEmpty();
+		if (merged) {
+			for (int i = 0; i < lanes.size(); i++) {
+				lanes.get(i).collect(i + 1, events);
+			}
+			// 時刻順（同時刻はリングバッファ、記録順）
+			Collections.sort(events, new Comparator<long[]>() {
+				@Override
+				public int compare(long[] o1, long[] o2) {
+					for (int i = 0; i < o1.length; i++) {
+						if (o1[i] != o2[i]) {
+							return o1[i] < o2[i] ? -1 : 1;
+						}
+					}
+					return 0;
+				}
+			});
+		}
+		for (long[] event : events) {
+			int typeOrdinal = (int) (event[3] >>> TYPE_SHIFT);
+			if (merged) {
+				sb.append(event[1]).append(':');
+			}
+			sb.append(event[2]).append(' ');
+			sb.append('+').append(TimeUnit.NANOSECONDS.toMicros(event[0])).append("us ");
+			sb.append(typeOrdinal < EVENT_TYPES.length ? EVENT_TYPES[typeOrdinal].name() : "?");
+			sb.append(" conn=").append(event[3] & ((1L << TYPE_SHIFT) - 1));
+			sb.append(" a=").append(event[4]);
+			sb.append(" b=").append(event[5]);
+			sb.append('\n');
+		}
+	}
+
+	/**
+	 * 記録したイベントの取得
+	 *
+	 * <p>
+	 * 読み出した後に記録の状態を再確認し、読み出し中に上書きされた可能性のあるイベントを除外します。
+	 * 記録中のイベントを含めた件数から容量を引いた位置より前のイベントが対象です。
+	 * </p>
+	 *
+	 * @param laneNumber リングバッファの番号
+	 * @param events 取得先（時刻、リングバッファの番号、記録順、種類と接続ID、値a、値bの配列）
+	 */
+	private void collect(int laneNumber, List<long[]> events) {
+		long end = state.get() >>> 1;
+		long start = Math.max(0, end - getCapacity());
+		int first = events.size();
+		for (long seq = start; seq < end; seq++) {
+			int pos = (int) (seq & mask) * SLOT_SIZE;
+			events.add(new long[] { slots.get(pos), laneNumber, seq, slots.get(pos + 1), slots.get(pos + 2), slots.get(pos + 3) });
+		}
+		long overwritten = ((state.get() + 1) >>> 1) - getCapacity();
+		int remove = (int) Math.max(0, Math.min(end, overwritten) - start);
+		events.subList(first, first + remove).clear();
+	}
+
+	/**
+	 * 記録のクリア
+	 *
+	 * <p>
+	 * スレッドごとのリングバッファもクリアします。記録中に呼び出さないでください。
+	 * </p>
+	 */
+	public void clear() {
+		state.set(0);
+		for (ApnsEventRing lane : lanes) {
+			lane.clear();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return dump();
+	}
+}
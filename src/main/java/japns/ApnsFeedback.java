@@ -4,19 +4,30 @@ import java.util.Date;
 
 /**
  * APNsフィードバック
+ *
+ * <p>
+ * {@link ApnsFeedbackListener}に渡されるインスタンスは、読み込み処理で再利用されます。
+ * 通知後も値を保持する場合は、{@link #getApnsDeviceToken()}などで値を取り出してください。
+ * </p>
+ *
  * @author T.Inukai
  */
 public class ApnsFeedback {
 
+	/** デバイストークンの標準の長さ */
+	private static final int DEFAULT_TOKEN_LENGTH = 32;
+
 	/** Timestamp(int型) */
 	private int nTimestamp;
-	/** デバイストークン(byte配列) */
-	private byte[] bDeviceToken;
+	/** デバイストークン（byte配列） */
+	private byte[] tokenData;
+	/** デバイストークンの長さ */
+	private int tokenLength;
+	/** デバイストークン（初回取得時に生成） */
+	private ApnsDeviceToken deviceToken;
 
 	/** Timestamp */
 	private Date timestamp;
-	/** デバイストークン */
-	private String deviceToken;
 
 	/**
 	 * APNsフィードバックのバイナリ
@@ -25,8 +36,51 @@ public class ApnsFeedback {
 	 * @param deviceToken デバイストークン
 	 */
 	public ApnsFeedback(int timestamp, byte[] deviceToken) {
+		this(timestamp, deviceToken == null ? null : ApnsDeviceToken.wrap(deviceToken));
+	}
+
+	/**
+	 * APNsフィードバックのタイムスタンプ、デバイストークンを設定してインスタンスを生成する
+	 * @param timestamp Timestamp
+	 * @param deviceToken デバイストークン
+	 */
+	public ApnsFeedback(int timestamp, ApnsDeviceToken deviceToken) {
 		this.nTimestamp = timestamp;
-		this.bDeviceToken = deviceToken;
+		this.deviceToken = deviceToken;
+		if (deviceToken != null) {
+			this.tokenData = deviceToken.getBytesUnsafe();
+			this.tokenLength = tokenData.length;
+		}
+	}
+
+	/**
+	 * 再利用用のインスタンスを生成する
+	 */
+	ApnsFeedback() {
+	}
+
+	/**
+	 * 値の再設定
+	 *
+	 * <p>
+	 * デバイストークンは内部のバッファにコピーされます。バッファは必要な場合のみ拡張されます。
+	 * </p>
+	 *
+	 * @param timestamp Timestamp
+	 * @param buf デバイストークンを含むbyte配列
+	 * @param offset デバイストークンの開始位置
+	 * @param length デバイストークンの長さ
+	 */
+	void set(int timestamp, byte[] buf, int offset, int length) {
+		if (tokenData == null || tokenData.length < length || deviceToken != null) {
+			// 生成済みのApnsDeviceTokenと共有しているバッファは書き換えない
+			tokenData = new byte[Math.max(length, DEFAULT_TOKEN_LENGTH)];
+		}
+		System.arraycopy(buf, offset, tokenData, 0, length);
+		this.nTimestamp = timestamp;
+		this.tokenLength = length;
+		this.deviceToken = null;
+		this.timestamp = null;
 	}
 
 	/**
@@ -40,19 +94,79 @@ public class ApnsFeedback {
 		return timestamp;
 	}
 
+	/**
+	 * Timestamp(int型)の取得
+	 * @return Timestamp（UNIX時間、秒）
+	 */
+	public int getTimestampSeconds() {
+		return nTimestamp;
+	}
+
 	/**
 	 * デバイストークンの取得
-	 * @return デバイストークン
+	 *
+	 * <p>
+	 * 呼び出しごとに16進文字列に変換します。
+	 * </p>
+	 *
+	 * @return デバイストークン（16進文字列）
 	 */
 	public String getDeviceToken() {
-		if (deviceToken != null) {
-			return deviceToken;
-		}
-		if (bDeviceToken == null) {
+		ApnsDeviceToken token = getApnsDeviceToken();
+		if (token == null) {
 			return null;
 		}
-		deviceToken = ApnsUtil.convertBytesToHex(bDeviceToken);
+		return token.toHex();
+	}
+
+	/**
+	 * デバイストークン（バイナリ）の取得
+	 * @return デバイストークン
+	 */
+	public ApnsDeviceToken getApnsDeviceToken() {
+		if (deviceToken == null && tokenData != null) {
+			deviceToken = new ApnsDeviceToken(tokenData, 0, tokenLength);
+			tokenData = deviceToken.getBytesUnsafe();
+		}
 		return deviceToken;
 	}
 
+	/**
+	 * デバイストークンの長さの取得
+	 * @return デバイストークンの長さ（バイト数）
+	 */
+	public int getTokenLength() {
+		return tokenLength;
+	}
+
+	/**
+	 * デバイストークン（byte配列）の取得
+	 *
+	 * <p>
+	 * 内部で保持しているbyte配列をそのまま返却します。有効な範囲は先頭から{@link #getTokenLength()}バイトです。
+	 * 呼び出し元で変更してはいけません。
+	 * </p>
+	 *
+	 * @return デバイストークンを含むbyte配列。デバイストークンがない場合は{@code null}
+	 */
+	byte[] getTokenBytesUnsafe() {
+		return tokenData;
+	}
+
+	/**
+	 * デバイストークンを指定されたbyte配列にコピーする
+	 *
+	 * <p>
+	 * {@link ApnsDeviceToken}を生成せずにデバイストークンを取り出す場合に使用します。
+	 * </p>
+	 *
+	 * @param buf コピー先
+	 * @param offset コピー先の開始位置
+	 */
+	public void copyToken(byte[] buf, int offset) {
+		if (tokenData != null) {
+			System.arraycopy(tokenData, 0, buf, offset, tokenLength);
+		}
+	}
+
 }
@@ -0,0 +1,207 @@
+package japns;
+
+import java.net.Proxy;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 複数アプリケーションのフィードバック情報の一括取得
+ *
+ * <p>
+ * 証明書の異なる複数のアプリケーションのフィードバックサービスに、上限付きのスレッドプールで並列に接続します。<br>
+ * 全アプリケーションの取得にかかる時間は、各アプリケーションの合計ではなく最も遅いアプリケーションの時間に近くなります。
+ * 同じ証明書ファイルを使用するアプリケーションは、{@link ApnsUtil#getSharedSSLSocketFactory(String, String)}で
+ * SSLSocketFactoryを共有します。
+ * </p>
+ *
+ * <p>
+ * 取得したフィードバック情報はアプリケーションごとの{@link ApnsFeedbackStore}に記録されます。<br>
+ * 取得に失敗した場合も、失敗までに受信したフィードバック情報はストアに記録されており、次回以降の{@link #harvest()}で返却されます。
+ * APNsは一度送信したフィードバック情報を再送しないため、受信済みの情報は取得に失敗しても破棄しません。
+ * </p>
+ *
+ * <pre>
+ * ApnsFeedbackHarvester harvester = new ApnsFeedbackHarvester(8);
+ * harvester.addApplication("app1", true, "app1.p12", "password1");
+ * harvester.addApplication("app2", true, "app2.p12", "password2");
+ * Map&lt;String, List&lt;ApnsFeedback&gt;&gt; feedbacks = harvester.harvest();
+ * </pre>
+ *
+ * @author T.Inukai
+ */
+public class ApnsFeedbackHarvester {
+	private static Logger logger = LoggerFactory.getLogger(ApnsFeedbackHarvester.class);
+
+	/**
+	 * 最大スレッド数
+	 */
+	private final int maxThreads;
+
+	/**
+	 * アプリケーション（Key:アプリケーションID）
+	 */
+	private final Map<String, Application> applications = new LinkedHashMap<String, Application>();
+
+	/**
+	 * 直前の取得で失敗したアプリケーション（Key:アプリケーションID, value:例外）
+	 */
+	private Map<String, Exception> failures = Collections.emptyMap();
+
+	/**
+	 * 最大スレッド数を指定してインスタンスを生成します
+	 * @param maxThreads 最大スレッド数
+	 */
+	public ApnsFeedbackHarvester(int maxThreads) {
+		if (maxThreads < 1) {
+			throw new ApnsException("スレッド数が不正です。maxThreads=" + maxThreads);
+		}
+		this.maxThreads = maxThreads;
+	}
+
+	/**
+	 * アプリケーションの追加
+	 * @param applicationId アプリケーションID
+	 * @param isProduction 製品フラグ
+	 * @param certFileName 証明書ファイル
+	 * @param certPassword 証明書パスワード
+	 * @return アプリケーションのフィードバック情報ストア
+	 */
+	public ApnsFeedbackStore addApplication(String applicationId, boolean isProduction, String certFileName, String certPassword) {
+		return addApplication(applicationId, isProduction, certFileName, certPassword, null);
+	}
+
+	/**
+	 * アプリケーションの追加
+	 * @param applicationId アプリケーションID
+	 * @param isProduction 製品フラグ
+	 * @param certFileName 証明書ファイル
+	 * @param certPassword 証明書パスワード
+	 * @param socksProxy SOCKSプロキシ
+	 * @return アプリケーションのフィードバック情報ストア
+	 */
+	public ApnsFeedbackStore addApplication(String applicationId, boolean isProduction, String certFileName, String certPassword, Proxy socksProxy) {
+		return addApplication(applicationId, new ApnsFeedbackService(isProduction, ApnsUtil.getSharedSSLSocketFactory(certFileName, certPassword), socksProxy));
+	}
+
+	/**
+	 * アプリケーションの追加
+	 * @param applicationId アプリケーションID
+	 * @param apnsFeedbackService フィードバックサービス
+	 * @return アプリケーションのフィードバック情報ストア
+	 */
+	public synchronized ApnsFeedbackStore addApplication(String applicationId, ApnsFeedbackService apnsFeedbackService) {
+		if (applications.containsKey(applicationId)) {
+			throw new ApnsException("アプリケーションIDが重複しています。applicationId=" + applicationId);
+		}
+		Application application = new Application(apnsFeedbackService);
+		applications.put(applicationId, application);
+		return application.store;
+	}
+
+	/**
+	 * アプリケーションのフィードバック情報ストアの取得
+	 * @param applicationId アプリケーションID
+	 * @return フィードバック情報ストア。アプリケーションが登録されていない場合は{@code null}
+	 */
+	public synchronized ApnsFeedbackStore getStore(String applicationId) {
+		Application application = applications.get(applicationId);
+		return application == null ? null : application.store;
+	}
+
+	/**
+	 * 全アプリケーションのフィードバック情報の取得
+	 *
+	 * <p>
+	 * 各アプリケーションのフィードバックサービスに並列に接続し、全ての取得が完了するまで待機します。<br>
+	 * 取得に失敗したアプリケーションは結果に含まれず、{@link #getFailures()}で確認できます。
+	 * 失敗したアプリケーションの受信済みのフィードバック情報は、次に取得に成功した時に返却されます。
+	 * </p>
+	 *
+	 * @return 前回返却してから新たに記録されたフィードバック情報（Key:アプリケーションID, value:フィードバック情報リスト）
+	 */
+	public synchronized Map<String, List<ApnsFeedback>> harvest() {
+		Map<String, List<ApnsFeedback>> result = new LinkedHashMap<String, List<ApnsFeedback>>();
+		Map<String, Exception> failureMap = new LinkedHashMap<String, Exception>();
+		if (applications.isEmpty()) {
+			failures = failureMap;
+			return result;
+		}
+
+		logger.info("フィードバック一括取得 - 開始 アプリケーション数:{}", applications.size());
+		ExecutorService service = Executors.newFixedThreadPool(Math.min(maxThreads, applications.size()));
+		try {
+			Map<String, Future<List<ApnsFeedback>>> futureMap = new LinkedHashMap<String, Future<List<ApnsFeedback>>>();
+			for (Map.Entry<String, Application> entry : applications.entrySet()) {
+				futureMap.put(entry.getKey(), service.submit(entry.getValue()));
+			}
+
+			// シャットダウン宣言
+			service.shutdown();
+
+			for (Map.Entry<String, Future<List<ApnsFeedback>>> entry : futureMap.entrySet()) {
+				try {
+					result.put(entry.getKey(), entry.getValue().get());
+					// 返却できた場合のみ返却済みの位置を進める
+					Application application = applications.get(entry.getKey());
+					application.deliveredCursor = application.pendingCursor;
+				} catch (ExecutionException e) {
+					Exception cause = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+					logger.info("フィードバック情報の取得に失敗しました。applicationId=" + entry.getKey(), cause);
+					failureMap.put(entry.getKey(), cause);
+				}
+			}
+		} catch (InterruptedException e) {
+			service.shutdownNow();
+			Thread.currentThread().interrupt();
+			throw new ApnsException(e);
+		} finally {
+			failures = failureMap;
+			logger.info("フィードバック一括取得 - 終了 失敗:{}", failureMap.size());
+		}
+		return result;
+	}
+
+	/**
+	 * 直前の取得で失敗したアプリケーションの取得
+	 * @return 失敗したアプリケーション（Key:アプリケーションID, value:例外）
+	 */
+	public synchronized Map<String, Exception> getFailures() {
+		return Collections.unmodifiableMap(failures);
+	}
+
+	/**
+	 * アプリケーション
+	 */
+	private static class Application implements Callable<List<ApnsFeedback>> {
+		/** フィードバックサービス */
+		private final ApnsFeedbackService apnsFeedbackService;
+		/** フィードバック情報ストア */
+		private final ApnsFeedbackStore store = new ApnsFeedbackStore();
+		/** {@link ApnsFeedbackHarvester#harvest()}で返却済みの位置（ストアのカーソル） */
+		private long deliveredCursor;
+		/** 取得に成功した時点のストアのカーソル（返却できた場合に返却済みの位置になる） */
+		private long pendingCursor;
+
+		private Application(ApnsFeedbackService apnsFeedbackService) {
+			this.apnsFeedbackService = apnsFeedbackService;
+		}
+
+		@Override
+		public List<ApnsFeedback> call() throws Exception {
+			// 失敗した場合も受信済みの情報はストアに記録されているため、返却済みの位置から返却する
+			apnsFeedbackService.feedback(store);
+			pendingCursor = store.getCursor();
+			return store.getChangesSince(deliveredCursor);
+		}
+	}
+}
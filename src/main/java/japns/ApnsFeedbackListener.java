@@ -0,0 +1,22 @@
+package japns;
+
+/**
+ * フィードバック情報の受信リスナ
+ *
+ * <p>
+ * {@link ApnsFeedbackService#feedback(ApnsFeedbackListener)}で、
+ * フィードバック情報を1件読み込むごとに呼び出されます。<br>
+ * 渡される{@link ApnsFeedback}は読み込み処理で再利用されるため、
+ * 呼び出し後も値を保持する場合は値を取り出して保持してください。
+ * </p>
+ *
+ * @author T.Inukai
+ */
+public interface ApnsFeedbackListener {
+
+	/**
+	 * フィードバック情報の受信
+	 * @param apnsFeedback フィードバック情報（再利用されます）
+	 */
+	void onFeedback(ApnsFeedback apnsFeedback);
+}
@@ -0,0 +1,205 @@
+package japns;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * フィードバックサービスの定期取得
+ *
+ * <p>
+ * 指定された間隔でフィードバックサービスに接続し、取得したフィードバック情報を{@link ApnsFeedbackStore}に記録します。<br>
+ * 取得に失敗した場合は、間隔を2倍ずつ最大バックオフ時間まで延ばして再試行し、成功すると元の間隔に戻ります。
+ * 後続の処理は{@link ApnsFeedbackStore#getChangesSince(long)}で新しく記録された情報のみを処理できます。
+ * </p>
+ *
+ * <pre>
+ * ApnsFeedbackStore store = new ApnsFeedbackStore();
+ * ApnsFeedbackPoller poller = new ApnsFeedbackPoller(apnsFeedbackService, store, 10 * 60 * 1000L);
+ * poller.start();
+ * ...
+ * poller.stop();
+ * </pre>
+ *
+ * @author T.Inukai
+ */
+public class ApnsFeedbackPoller {
+	private static Logger logger = LoggerFactory.getLogger(ApnsFeedbackPoller.class);
+
+	/**
+	 * デフォルトの最大バックオフ時間（ミリ秒）
+	 */
+	public static final long DEFAULT_MAX_BACKOFF_MILLIS = 60 * 60 * 1000L;
+
+	/**
+	 * フィードバックサービス
+	 */
+	private final ApnsFeedbackService apnsFeedbackService;
+	/**
+	 * フィードバック情報ストア
+	 */
+	private final ApnsFeedbackStore store;
+	/**
+	 * 取得間隔（ミリ秒）
+	 */
+	private final long intervalMillis;
+	/**
+	 * 最大バックオフ時間（ミリ秒）
+	 */
+	private volatile long maxBackoffMillis = DEFAULT_MAX_BACKOFF_MILLIS;
+
+	/**
+	 * 連続失敗回数
+	 */
+	private volatile int consecutiveFailures;
+	/**
+	 * 最後に取得に成功した時刻（ミリ秒）
+	 */
+	private volatile long lastSuccessMillis;
+
+	/**
+	 * スケジューラ（実行中のみ）
+	 */
+	private ScheduledExecutorService scheduler;
+
+	/**
+	 * フィードバックサービス、ストア、取得間隔を指定してインスタンスを生成します
+	 * @param apnsFeedbackService フィードバックサービス
+	 * @param store フィードバック情報ストア
+	 * @param intervalMillis 取得間隔（ミリ秒）
+	 */
+	public ApnsFeedbackPoller(ApnsFeedbackService apnsFeedbackService, ApnsFeedbackStore store, long intervalMillis) {
+		if (intervalMillis <= 0) {
+			throw new ApnsException("取得間隔が不正です。intervalMillis=" + intervalMillis);
+		}
+		this.apnsFeedbackService = apnsFeedbackService;
+		this.store = store;
+		this.intervalMillis = intervalMillis;
+	}
+
+	/**
+	 * 最大バックオフ時間の設定
+	 * @param maxBackoffMillis 最大バックオフ時間（ミリ秒）
+	 */
+	public void setMaxBackoffMillis(long maxBackoffMillis) {
+		this.maxBackoffMillis = maxBackoffMillis;
+	}
+
+	/**
+	 * 定期取得の開始
+	 *
+	 * <p>
+	 * 初回の取得は直ちに行われます。既に開始している場合は何もしません。
+	 * </p>
+	 */
+	public synchronized void start() {
+		if (scheduler != null) {
+			return;
+		}
+		scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "ApnsFeedbackPoller");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		schedule(scheduler, 0);
+	}
+
+	/**
+	 * 定期取得の停止
+	 *
+	 * <p>
+	 * 取得中の場合は、その取得の完了を待たずに戻ります。
+	 * </p>
+	 */
+	public synchronized void stop() {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+			scheduler = null;
+		}
+	}
+
+	/**
+	 * フィードバック情報の取得
+	 *
+	 * <p>
+	 * スケジュールとは別に、直ちにフィードバックサービスから取得してストアに記録します。
+	 * </p>
+	 *
+	 * @return 取得したフィードバック情報の件数
+	 * @throws ApnsException 取得に失敗した場合
+	 */
+	public int poll() {
+		int count = apnsFeedbackService.feedback(store);
+		lastSuccessMillis = System.currentTimeMillis();
+		return count;
+	}
+
+	/**
+	 * 連続失敗回数の取得
+	 * @return 連続失敗回数
+	 */
+	public int getConsecutiveFailures() {
+		return consecutiveFailures;
+	}
+
+	/**
+	 * 最後に取得に成功した時刻の取得
+	 * @return 最後に取得に成功した時刻（ミリ秒）。未取得の場合は0
+	 */
+	public long getLastSuccessMillis() {
+		return lastSuccessMillis;
+	}
+
+	/**
+	 * 次回の取得のスケジュール
+	 * @param executor スケジューラ
+	 * @param delayMillis 遅延時間（ミリ秒）
+	 */
+	private void schedule(final ScheduledExecutorService executor, long delayMillis) {
+		if (executor.isShutdown()) {
+			return;
+		}
+		try {
+			executor.schedule(new Runnable() {
+				@Override
+				public void run() {
+					long nextDelay;
+					try {
+						int count = poll();
+						consecutiveFailures = 0;
+						nextDelay = intervalMillis;
+						logger.debug("フィードバック情報を取得しました。count={}, cursor={}", count, store.getCursor());
+					} catch (Exception e) {
+						consecutiveFailures++;
+						nextDelay = getBackoffMillis(consecutiveFailures);
+						logger.warn("フィードバック情報の取得に失敗しました。failures=" + consecutiveFailures + ", nextDelay=" + nextDelay, e);
+					}
+					schedule(executor, nextDelay);
+				}
+			}, delayMillis, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			// 停止済み
+		}
+	}
+
+	/**
+	 * バックオフ時間の計算
+	 * @param failures 連続失敗回数
+	 * @return 次回の取得までの時間（ミリ秒）
+	 */
+	private long getBackoffMillis(int failures) {
+		long delay = intervalMillis;
+		for (int i = 0; i < failures && delay < maxBackoffMillis; i++) {
+			delay *= 2;
+		}
+		return Math.min(delay, maxBackoffMillis);
+	}
+}
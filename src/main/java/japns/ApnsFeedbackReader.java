@@ -0,0 +1,111 @@
+package japns;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * フィードバック情報の読み込み
+ *
+ * <p>
+ * フィードバックサービスのストリームを再利用するバッファにまとめて読み込み、
+ * タイムスタンプ（4バイト）、トークン長（2バイト）、デバイストークンの組を順に解析します。<br>
+ * 解析した値は再利用する{@link ApnsFeedback}に設定して{@link ApnsFeedbackListener}に渡すため、
+ * フィードバック情報の件数に関わらずメモリ使用量は一定です。
+ * このクラスはスレッドセーフではありません。
+ * </p>
+ *
+ * @author T.Inukai
+ */
+class ApnsFeedbackReader {
+	private static Logger logger = LoggerFactory.getLogger(ApnsFeedbackReader.class);
+
+	/**
+	 * デフォルトの読み込みバッファサイズ
+	 */
+	static final int DEFAULT_BUFFER_SIZE = 8192;
+
+	/**
+	 * タイムスタンプ、トークン長のバイト数
+	 */
+	private static final int HEADER_LENGTH = 4 + 2;
+
+	/**
+	 * 読み込みバッファ
+	 */
+	private byte[] buffer;
+
+	/**
+	 * 再利用するフィードバック情報
+	 */
+	private final ApnsFeedback apnsFeedback = new ApnsFeedback();
+
+	/**
+	 * デフォルトのバッファサイズでインスタンスを生成します
+	 */
+	ApnsFeedbackReader() {
+		this(DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * バッファサイズを指定してインスタンスを生成します
+	 * @param bufferSize 読み込みバッファサイズ
+	 */
+	ApnsFeedbackReader(int bufferSize) {
+		this.buffer = new byte[Math.max(bufferSize, HEADER_LENGTH)];
+	}
+
+	/**
+	 * ストリームの終端までフィードバック情報を読み込む
+	 * @param is フィードバック情報のInputStream
+	 * @param listener 受信リスナ
+	 * @return 読み込んだフィードバック情報の件数
+	 * @throws IOException 読み込みに失敗した場合
+	 */
+	int read(InputStream is, ApnsFeedbackListener listener) throws IOException {
+		int count = 0;
+		// バッファ内の未解析データの範囲
+		int start = 0;
+		int end = 0;
+		while (true) {
+			int n = is.read(buffer, end, buffer.length - end);
+			if (n < 0) {
+				break;
+			}
+			end += n;
+
+			// 完全な組のみ解析
+			while (end - start >= HEADER_LENGTH) {
+				int tokenLength = ((buffer[start + 4] & 0xff) << 8) | (buffer[start + 5] & 0xff);
+				int tupleLength = HEADER_LENGTH + tokenLength;
+				if (end - start < tupleLength) {
+					break;
+				}
+				int timestamp = ApnsUtil.parseBytesToInt(buffer[start], buffer[start + 1], buffer[start + 2], buffer[start + 3]);
+				apnsFeedback.set(timestamp, buffer, start + HEADER_LENGTH, tokenLength);
+				listener.onFeedback(apnsFeedback);
+				count++;
+				start += tupleLength;
+			}
+
+			// 未解析データをバッファの先頭に詰める
+			if (start > 0) {
+				System.arraycopy(buffer, start, buffer, 0, end - start);
+				end -= start;
+				start = 0;
+			}
+			if (end == buffer.length) {
+				// 1組がバッファに収まらない場合は拡張
+				byte[] newBuffer = new byte[buffer.length * 2];
+				System.arraycopy(buffer, 0, newBuffer, 0, end);
+				buffer = newBuffer;
+			}
+		}
+		if (end > start) {
+			logger.debug("フィードバックサービスのストリームが途中で終了しました。残りバイト数={}", end - start);
+		}
+		return count;
+	}
+}
@@ -1,8 +1,6 @@
 package japns;
 
-import java.io.DataInputStream;
-import java.io.EOFException;
-import java.io.InputStream;
+import java.io.IOException;
 import java.net.Proxy;
 import java.net.Socket;
 import java.util.ArrayList;
@@ -42,6 +40,21 @@ public class ApnsFeedbackService {
 	 */
 	private final SSLSocketFactory factory;
 
+	/**
+	 * フィードバックサーバのホスト（nullの場合は製品フラグに応じたAPNsのホスト）
+	 */
+	private String feedbackHost;
+
+	/**
+	 * フィードバックサーバのポート
+	 */
+	private int feedbackPort;
+
+	/**
+	 * フィードバック情報の読み込み（バッファを再利用）
+	 */
+	private final ApnsFeedbackReader reader = new ApnsFeedbackReader();
+
 	/**
 	 * 製品フラグ、証明書ファイル、証明書パスワードを指定してインスタンスを生成します
 	 *
@@ -74,24 +87,84 @@ public class ApnsFeedbackService {
 
 	}
 
+	/**
+	 * 製品フラグ、ソケットファクトリ、SOCKSプロキシを指定してインスタンスを生成します
+	 *
+	 * <p>
+	 * 複数のサービスで{@link SSLSocketFactory}を共有する場合に使用します。
+	 * </p>
+	 *
+	 * @param isProduction 製品フラグ
+	 * @param factory ソケットファクトリ（{@link ApnsUtil#getSSLSocketFactory(String, String)}などで生成したもの）
+	 * @param socksProxy SOCKSプロキシ
+	 */
+	public ApnsFeedbackService(boolean isProduction, SSLSocketFactory factory, Proxy socksProxy) {
+		this.isProduction = isProduction;
+		this.certFileName = null;
+		this.certPassword = null;
+		this.socksProxy = socksProxy;
+		this.factory = factory;
+	}
+
 	/**
 	 * フィードバックサービスに接続し、フィードバック情報を取得する
 	 * @return フィードバック情報リスト
 	 */
 	public synchronized List<ApnsFeedback> feedback() {
+		final List<ApnsFeedback> apnsFeedbackList = new ArrayList<ApnsFeedback>();
+		feedback(new ApnsFeedbackListener() {
+			@Override
+			public void onFeedback(ApnsFeedback apnsFeedback) {
+				apnsFeedbackList.add(new ApnsFeedback(apnsFeedback.getTimestampSeconds(), apnsFeedback.getApnsDeviceToken()));
+			}
+		});
+		return apnsFeedbackList;
+	}
+
+	/**
+	 * フィードバックサービスに接続し、フィードバック情報を1件ずつリスナに通知する
+	 *
+	 * <p>
+	 * ストリームはバッファ単位でまとめて読み込まれ、フィードバック情報はリストに蓄積されません。
+	 * 大量のフィードバック情報を一定のメモリ使用量で処理する場合に使用します。<br>
+	 * リスナに渡される{@link ApnsFeedback}は再利用されます。
+	 * 読み込み中に接続エラーが発生した場合は再接続して続きを読み込みます（通知済みの情報は再送されません）。
+	 * </p>
+	 *
+	 * @param listener 受信リスナ
+	 * @return 通知したフィードバック情報の件数
+	 */
+	public synchronized int feedback(final ApnsFeedbackListener listener) {
 		Socket apnsFeedbackSocket = null;
 
 		int tryCnt = 0;
+		// 再接続前に通知した件数も含めるため、リスナ側で数える
+		final int[] count = new int[1];
+		ApnsFeedbackListener countingListener = new ApnsFeedbackListener() {
+			@Override
+			public void onFeedback(ApnsFeedback apnsFeedback) {
+				listener.onFeedback(apnsFeedback);
+				count[0]++;
+			}
+		};
 
 		while (true) {
 			try {
 				tryCnt++;
-				apnsFeedbackSocket = ApnsUtil.createAPNSFeedbackSocket(isProduction, factory, socksProxy);
+				apnsFeedbackSocket = createFeedbackSocket();
 
-				List<ApnsFeedback> apnsFeedbackList = readFeedbackStream(apnsFeedbackSocket.getInputStream());
+				reader.read(apnsFeedbackSocket.getInputStream(), countingListener);
 
-				return apnsFeedbackList;
-			} catch (Exception e) {
+				return count[0];
+			} catch (IOException e) {
+				// 例外発生
+				logger.debug("フィードバックサービスのストリーム読み込みエラー", e);
+				if (tryCnt >= 3) {
+					// リトライ回数オーバー
+					logger.info("フィードバックサービスとの接続に失敗しました。", e);
+					throw new ApnsException("リトライ回数オーバー", e);
+				}
+			} catch (ApnsException e) {
 				if (tryCnt >= 3) {
 					// リトライ回数オーバー
 					logger.info("フィードバックサービスとの接続に失敗しました。", e);
@@ -105,35 +178,29 @@ public class ApnsFeedbackService {
 	}
 
 	/**
-	 * {@code InputStream}からフィードバック情報を読み込む
-	 * @param is フィードバック情報のInputStream
-	 * @return フィードバック情報リスト
+	 * フィードバックサーバ接続用Socket生成
+	 * @return フィードバックサーバ接続用Socket
 	 */
-	private synchronized List<ApnsFeedback> readFeedbackStream(InputStream is) {
-		List<ApnsFeedback> apnsFeedbackList = new ArrayList<ApnsFeedback>();
-
-		DataInputStream dis = new DataInputStream(is);
-		while (true) {
-			try {
-				// Timestamp
-				int timestamp = dis.readInt();
-				// トークン長
-				int tokenLength = dis.readUnsignedShort();
-				// デバイストークン
-				byte[] deviceToken = new byte[tokenLength];
-				dis.readFully(deviceToken);
-
-				apnsFeedbackList.add(new ApnsFeedback(timestamp, deviceToken));
-			} catch (EOFException e) {
-				// 読み込み終了
-				break;
-			} catch (Exception e) {
-				// 例外発生
-				logger.debug("フィードバックサービスのストリーム読み込みエラー", e);
-				throw new ApnsException(e);
-			}
+	private Socket createFeedbackSocket() {
+		if (feedbackHost == null) {
+			return ApnsUtil.createAPNSFeedbackSocket(isProduction, factory, socksProxy);
 		}
-		return apnsFeedbackList;
+		return ApnsUtil.createSocket(factory, socksProxy, feedbackHost, feedbackPort);
+	}
+
+	/**
+	 * フィードバックサーバの設定
+	 *
+	 * <p>
+	 * 試験用のフィードバックサーバなど、APNs以外に接続する場合に設定します。
+	 * </p>
+	 *
+	 * @param host ホスト。{@code null}の場合は製品フラグに応じたAPNsのフィードバックサーバに接続する
+	 * @param port ポート
+	 */
+	public void setFeedbackServer(String host, int port) {
+		this.feedbackHost = host;
+		this.feedbackPort = port;
 	}
 
 	/**
@@ -0,0 +1,405 @@
+package japns;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * フィードバック情報ストア
+ *
+ * <p>
+ * フィードバック情報をデバイストークン（バイナリ）ごとに重複なく保持し、最新のタイムスタンプのみを記録します。<br>
+ * 追加または更新された情報には連番（シーケンス）が振られ、{@link #getChangesSince(long)}で
+ * 前回取得したシーケンス（カーソル）以降に変化した情報のみを取得できます。
+ * </p>
+ *
+ * <pre>
+ * long cursor = 0;
+ * ...
+ * List&lt;ApnsFeedback&gt; changes = store.getChangesSince(cursor);
+ * cursor = store.getCursor();
+ * </pre>
+ *
+ * <p>
+ * デバイストークンは1つのbyte配列に連結して保持し、オープンアドレス法のハッシュ表（int配列）で検索します。
+ * 記録は更新順の連結リスト（int配列）でつながれ、更新された記録は末尾に移動するため、
+ * 使用するメモリは更新回数によらずデバイストークン数に比例します（32バイトのデバイストークンで1件あたり約70バイト）。
+ * </p>
+ *
+ * <p>
+ * {@link ApnsFeedbackListener}を実装しているため、{@link ApnsFeedbackService#feedback(ApnsFeedbackListener)}に
+ * そのまま渡すことができます。このクラスはスレッドセーフです。
+ * </p>
+ *
+ * @author T.Inukai
+ */
+public class ApnsFeedbackStore implements ApnsFeedbackListener {
+
+	/**
+	 * デフォルトの初期容量
+	 */
+	private static final int DEFAULT_CAPACITY = 1024;
+
+	/**
+	 * デバイストークンの標準の長さ
+	 */
+	private static final int DEFAULT_TOKEN_LENGTH = 32;
+
+	/**
+	 * 連結リストの終端
+	 */
+	private static final int NIL = -1;
+
+	/**
+	 * デバイストークン（Index順に連結）
+	 */
+	private byte[] tokenBytes;
+	/**
+	 * デバイストークンの開始位置（Index順。Index {@code i}のデバイストークンは{@code tokenOffsets[i]}から{@code tokenOffsets[i + 1]}の直前まで）
+	 */
+	private int[] tokenOffsets;
+	/**
+	 * 最新のタイムスタンプ（Index順）
+	 */
+	private int[] timestamps;
+	/**
+	 * 最後に更新されたシーケンス（Index順）
+	 */
+	private long[] sequences;
+	/**
+	 * 更新順の連結リストの前の記録（Index順）
+	 */
+	private int[] previous;
+	/**
+	 * 更新順の連結リストの次の記録（Index順）
+	 */
+	private int[] next;
+
+	/**
+	 * 更新順の連結リストの先頭（最も古い記録）
+	 */
+	private int head = NIL;
+	/**
+	 * 更新順の連結リストの末尾（最も新しい記録）
+	 */
+	private int tail = NIL;
+
+	/**
+	 * ハッシュ表（Index+1を格納。0は空き。容量は2のべき乗）
+	 */
+	private int[] table;
+
+	/**
+	 * 記録されているデバイストークン数
+	 */
+	private int size;
+
+	/**
+	 * 最新のシーケンス
+	 */
+	private long sequence;
+
+	/**
+	 * デフォルトの初期容量でインスタンスを生成します
+	 */
+	public ApnsFeedbackStore() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * 初期容量を指定してインスタンスを生成します
+	 * @param capacity 初期容量（デバイストークン数）
+	 */
+	public ApnsFeedbackStore(int capacity) {
+		capacity = Math.max(capacity, 1);
+		tokenBytes = new byte[capacity * DEFAULT_TOKEN_LENGTH];
+		tokenOffsets = new int[capacity + 1];
+		timestamps = new int[capacity];
+		sequences = new long[capacity];
+		previous = new int[capacity];
+		next = new int[capacity];
+		table = new int[tableCapacity(capacity)];
+	}
+
+	@Override
+	public void onFeedback(ApnsFeedback apnsFeedback) {
+		merge(apnsFeedback);
+	}
+
+	/**
+	 * フィードバック情報の追加
+	 *
+	 * <p>
+	 * 未登録のデバイストークン、または登録済みのタイムスタンプより新しい場合のみ記録され、シーケンスが進みます。
+	 * 登録済みのデバイストークンの場合はオブジェクトを生成しません。
+	 * </p>
+	 *
+	 * @param apnsFeedback フィードバック情報
+	 * @return 記録された場合は{@code true}
+	 */
+	public synchronized boolean merge(ApnsFeedback apnsFeedback) {
+		byte[] token = apnsFeedback.getTokenBytesUnsafe();
+		if (token == null) {
+			return false;
+		}
+		int length = apnsFeedback.getTokenLength();
+		int timestamp = apnsFeedback.getTimestampSeconds();
+
+		int hash = hash(token, 0, length);
+		int slot = findSlot(token, 0, length, hash);
+		int idx;
+		if (table[slot] == 0) {
+			idx = add(token, length);
+			table[slot] = idx + 1;
+			if (size * 2 > table.length) {
+				rehash(table.length * 2);
+			}
+		} else {
+			idx = table[slot] - 1;
+			if (compareTimestamp(timestamp, timestamps[idx]) <= 0) {
+				// 記録済みの情報と同じか古い
+				return false;
+			}
+			unlink(idx);
+		}
+		timestamps[idx] = timestamp;
+		sequences[idx] = ++sequence;
+		linkLast(idx);
+		return true;
+	}
+
+	/**
+	 * 最新のシーケンス（カーソル）の取得
+	 * @return 最新のシーケンス。未記録の場合は0
+	 */
+	public synchronized long getCursor() {
+		return sequence;
+	}
+
+	/**
+	 * 指定されたカーソル以降に追加または更新されたフィードバック情報の取得
+	 *
+	 * <p>
+	 * 同じデバイストークンが複数回更新された場合は、最新の情報が1件だけ返却されます。
+	 * 返却順はシーケンス順です。処理時間は返却する件数に比例します。
+	 * </p>
+	 *
+	 * @param cursor 前回取得したカーソル（初回は0）
+	 * @return フィードバック情報リスト
+	 */
+	public synchronized List<ApnsFeedback> getChangesSince(long cursor) {
+		// 末尾からカーソル以前の記録まで遡る
+		int first = NIL;
+		for (int idx = tail; idx != NIL && sequences[idx] > cursor; idx = previous[idx]) {
+			first = idx;
+		}
+		List<ApnsFeedback> changes = new ArrayList<ApnsFeedback>();
+		for (int idx = first; idx != NIL; idx = next[idx]) {
+			changes.add(createFeedback(idx));
+		}
+		return changes;
+	}
+
+	/**
+	 * デバイストークンのフィードバック情報の取得
+	 * @param token デバイストークン
+	 * @return フィードバック情報。記録されていない場合は{@code null}
+	 */
+	public synchronized ApnsFeedback get(ApnsDeviceToken token) {
+		byte[] bytes = token.getBytesUnsafe();
+		int slot = findSlot(bytes, 0, bytes.length, token.hashCode());
+		if (table[slot] == 0) {
+			return null;
+		}
+		return createFeedback(table[slot] - 1);
+	}
+
+	/**
+	 * 記録されているデバイストークン数の取得
+	 * @return デバイストークン数
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * 記録からフィードバック情報を生成
+	 * @param idx Index
+	 * @return フィードバック情報
+	 */
+	private ApnsFeedback createFeedback(int idx) {
+		return new ApnsFeedback(timestamps[idx], Arrays.copyOfRange(tokenBytes, tokenOffsets[idx], tokenOffsets[idx + 1]));
+	}
+
+	/**
+	 * デバイストークンの記録の追加
+	 * @param token デバイストークンを含むbyte配列
+	 * @param length デバイストークンの長さ
+	 * @return 追加した記録のIndex
+	 */
+	private int add(byte[] token, int length) {
+		int idx = size;
+		ensureCapacity(idx + 1, tokenOffsets[idx] + length);
+		System.arraycopy(token, 0, tokenBytes, tokenOffsets[idx], length);
+		tokenOffsets[idx + 1] = tokenOffsets[idx] + length;
+		size++;
+		return idx;
+	}
+
+	/**
+	 * 更新順の連結リストから外す
+	 * @param idx Index
+	 */
+	private void unlink(int idx) {
+		int p = previous[idx];
+		int n = next[idx];
+		if (p == NIL) {
+			head = n;
+		} else {
+			next[p] = n;
+		}
+		if (n == NIL) {
+			tail = p;
+		} else {
+			previous[n] = p;
+		}
+	}
+
+	/**
+	 * 更新順の連結リストの末尾に追加
+	 * @param idx Index
+	 */
+	private void linkLast(int idx) {
+		previous[idx] = tail;
+		next[idx] = NIL;
+		if (tail == NIL) {
+			head = idx;
+		} else {
+			next[tail] = idx;
+		}
+		tail = idx;
+	}
+
+	/**
+	 * デバイストークンのハッシュ表の位置の検索
+	 * @param token デバイストークンを含むbyte配列
+	 * @param offset 開始位置
+	 * @param length 長さ
+	 * @param hash ハッシュ値（{@link ApnsDeviceToken#hashCode()}と同じ値）
+	 * @return デバイストークンが記録されている位置。記録されていない場合は空きの位置
+	 */
+	private int findSlot(byte[] token, int offset, int length, int hash) {
+		int mask = table.length - 1;
+		int slot = mix(hash) & mask;
+		while (table[slot] != 0 && !tokenEquals(table[slot] - 1, token, offset, length)) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * 記録されているデバイストークンとの比較
+	 * @param idx Index
+	 * @param token デバイストークンを含むbyte配列
+	 * @param offset 開始位置
+	 * @param length 長さ
+	 * @return 一致する場合は{@code true}
+	 */
+	private boolean tokenEquals(int idx, byte[] token, int offset, int length) {
+		int start = tokenOffsets[idx];
+		if (tokenOffsets[idx + 1] - start != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (tokenBytes[start + i] != token[offset + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * ハッシュ表の再構築
+	 * @param capacity 新しい容量（2のべき乗）
+	 */
+	private void rehash(int capacity) {
+		table = new int[capacity];
+		int mask = capacity - 1;
+		for (int idx = 0; idx < size; idx++) {
+			int start = tokenOffsets[idx];
+			int slot = mix(hash(tokenBytes, start, tokenOffsets[idx + 1] - start)) & mask;
+			while (table[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = idx + 1;
+		}
+	}
+
+	/**
+	 * デバイストークンのハッシュ値の計算
+	 * @param token デバイストークンを含むbyte配列
+	 * @param offset 開始位置
+	 * @param length 長さ
+	 * @return {@link ApnsDeviceToken#hashCode()}と同じ値
+	 */
+	private static int hash(byte[] token, int offset, int length) {
+		int h = 1;
+		for (int i = offset; i < offset + length; i++) {
+			h = 31 * h + token[i];
+		}
+		return h;
+	}
+
+	/**
+	 * ハッシュ値の上位ビットを下位ビットに混ぜる
+	 * @param hash ハッシュ値
+	 * @return ハッシュ表の位置の計算に使用する値
+	 */
+	private static int mix(int hash) {
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * デバイストークン数に対するハッシュ表の容量
+	 * @param capacity デバイストークン数
+	 * @return デバイストークン数の2倍以上の2のべき乗
+	 */
+	private static int tableCapacity(int capacity) {
+		return Integer.highestOneBit(Math.max(capacity * 2 - 1, 1)) << 1;
+	}
+
+	/**
+	 * タイムスタンプ（UNIX時間、秒）の比較
+	 *
+	 * <p>
+	 * タイムスタンプは符号なし32ビット値として比較します。
+	 * </p>
+	 *
+	 * @param t1 タイムスタンプ1
+	 * @param t2 タイムスタンプ2
+	 * @return t1がt2より新しい場合は正の値
+	 */
+	private static int compareTimestamp(int t1, int t2) {
+		return Long.compare(t1 & 0xffffffffL, t2 & 0xffffffffL);
+	}
+
+	/**
+	 * 容量の確保
+	 * @param capacity 必要なデバイストークン数
+	 * @param byteCapacity 必要なデバイストークンのバイト数
+	 */
+	private void ensureCapacity(int capacity, int byteCapacity) {
+		if (byteCapacity > tokenBytes.length) {
+			tokenBytes = Arrays.copyOf(tokenBytes, Math.max(byteCapacity, tokenBytes.length + (tokenBytes.length >> 1)));
+		}
+		if (capacity <= timestamps.length) {
+			return;
+		}
+		int newCapacity = Math.max(capacity, timestamps.length + (timestamps.length >> 1));
+		tokenOffsets = Arrays.copyOf(tokenOffsets, newCapacity + 1);
+		timestamps = Arrays.copyOf(timestamps, newCapacity);
+		sequences = Arrays.copyOf(sequences, newCapacity);
+		previous = Arrays.copyOf(previous, newCapacity);
+		next = Arrays.copyOf(next, newCapacity);
+	}
+}
@@ -0,0 +1,42 @@
+package japns;
+
+/**
+ * Java Flight Recorderの利用可否
+ *
+ * <p>
+ * JFRのイベントクラス（{@code ApnsJfrEvents}）は{@code jdk.jfr}パッケージに依存するため、{@code src/main/jfr}に置き、
+ * JDK 9以降でビルドした場合のみ含まれます。実行時にはリフレクションで生成し、
+ * イベントクラスが含まれていない場合や{@code jdk.jfr}パッケージがない実行環境では無効になります。<br>
+ * 呼び出し元は{@link #ENABLED}が{@code true}の場合のみ{@link #RECORDER}を使用してください。
+ * </p>
+ *
+ * @author T.Inukai
+ */
+final class ApnsJfr {
+
+	/**
+	 * JFRのイベントの記録（記録できない場合は{@code null}）
+	 */
+	static final ApnsJfrRecorder RECORDER = createRecorder();
+
+	/**
+	 * JFRのイベントを記録できるかどうか
+	 */
+	static final boolean ENABLED = RECORDER != null;
+
+	private ApnsJfr() {
+	}
+
+	/**
+	 * JFRのイベントクラスの生成
+	 * @return JFRのイベントの記録。イベントクラスまたは{@code jdk.jfr}パッケージがない場合は{@code null}
+	 */
+	private static ApnsJfrRecorder createRecorder() {
+		try {
+			Class.forName("jdk.jfr.Event");
+			return (ApnsJfrRecorder) Class.forName("japns.ApnsJfrEvents").getDeclaredConstructor().newInstance();
+		} catch (Throwable t) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,87 @@
+package japns;
+
+/**
+ * Java Flight Recorderのイベントの記録
+ *
+ * <p>
+ * 接続、TLSハンドシェイク、通知の書き込み、エラー通知の処理、再接続の各時点でJFRのイベントを記録します。<br>
+ * 実装クラスは{@code jdk.jfr}パッケージに依存するため、{@link ApnsJfr#RECORDER}から取得して使用してください。
+ * イベントは{@code Object}として受け渡し、呼び出し元が{@code jdk.jfr}パッケージに依存しないようにしています。
+ * </p>
+ *
+ * @author T.Inukai
+ */
+interface ApnsJfrRecorder {
+
+	/**
+	 * 接続イベントの開始
+	 * @return イベント
+	 */
+	Object beginConnect();
+
+	/**
+	 * 接続イベントの記録
+	 * @param e {@link #beginConnect()}で開始したイベント
+	 * @param host 接続先HOST
+	 * @param port 接続先PORT
+	 * @param proxy SOCKSプロキシを使用したかどうか
+	 * @param success 接続に成功したかどうか
+	 */
+	void endConnect(Object e, String host, int port, boolean proxy, boolean success);
+
+	/**
+	 * TLSハンドシェイクイベントの開始
+	 * @return イベント
+	 */
+	Object beginHandshake();
+
+	/**
+	 * TLSハンドシェイクイベントの記録
+	 * @param e {@link #beginHandshake()}で開始したイベント
+	 * @param connectionId 接続ID
+	 * @param success ハンドシェイクに成功したかどうか
+	 */
+	void endHandshake(Object e, long connectionId, boolean success);
+
+	/**
+	 * 書き込みイベントの開始
+	 * @return イベント
+	 */
+	Object beginWrite();
+
+	/**
+	 * 書き込みイベントの記録
+	 * @param e {@link #beginWrite()}で開始したイベント
+	 * @param connectionId 接続ID
+	 * @param identifier 通知の識別子
+	 * @param bytes 書き込んだバイト数
+	 */
+	void endWrite(Object e, long connectionId, int identifier, int bytes);
+
+	/**
+	 * エラー処理イベントの開始
+	 * @return イベント
+	 */
+	Object beginError();
+
+	/**
+	 * エラー処理イベントの記録
+	 * @param e {@link #beginError()}で開始したイベント
+	 * @param connectionId エラーが発生した接続の接続ID
+	 * @param status APNsのステータス（エラー通知がない場合は-1）
+	 * @param errorIdentifier エラー通知の識別子（エラー通知がない場合は0）
+	 * @param firstIdentifier 接続で最初に送信した通知の識別子
+	 * @param lastIdentifier 接続で最後に送信した通知の識別子
+	 * @param resendCount 再送する通知の件数
+	 */
+	void endError(Object e, long connectionId, int status, int errorIdentifier, int firstIdentifier, int lastIdentifier, int resendCount);
+
+	/**
+	 * 再接続イベントの記録
+	 * @param previousConnectionId 切断した接続の接続ID
+	 * @param cause 再接続の原因
+	 * @param nextIndex 再接続後に最初に送信する通知のIndex
+	 * @param previousBytes 切断した接続で送信したバイト数
+	 */
+	void reconnect(long previousConnectionId, String cause, int nextIndex, long previousBytes);
+}
@@ -0,0 +1,250 @@
+package japns;
+
+import japns.ApnsPushStatistics.ReconnectCause;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * JMXで公開する{@link ApnsMetrics}
+ *
+ * <p>
+ * 件数は{@link LongAdder}（スレッドごとに分散したカウンタ）で加算するため、
+ * マルチスレッド送信でもカウンタの競合が起きにくく、本番環境で常時有効にできます。<br>
+ * 書き込み時間とハンドシェイク時間は{@link ApnsLatencyHistogram}で集計します。
+ * </p>
+ *
+ * <pre>
+ * ApnsJmxMetrics metrics = new ApnsJmxMetrics();
+ * metrics.register("japns:type=ApnsMetrics,name=app1");
+ * apnsNotificationService.setMetrics(metrics);
+ * </pre>
+ *
+ * @author T.Inukai
+ */
+public class ApnsJmxMetrics implements ApnsMetrics, ApnsJmxMetricsMBean {
+
+	/**
+	 * 送信件数の計測間隔（ナノ秒）
+	 */
+	private static final long RATE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	/** 送信件数 */
+	private final LongAdder notificationsWritten = new LongAdder();
+	/** 送信バイト数 */
+	private final LongAdder bytesWritten = new LongAdder();
+	/** 接続中のソケット数 */
+	private final LongAdder activeConnections = new LongAdder();
+	/** 接続回数 */
+	private final LongAdder handshakeCount = new LongAdder();
+	/** 再接続回数 */
+	private final LongAdder reconnectCount = new LongAdder();
+	/** ステータスごとのエラー通知の件数 */
+	private final AtomicLongArray errorStatusCounts = new AtomicLongArray(256);
+
+	/** 書き込み時間 */
+	private final ApnsLatencyHistogram writeLatency = new ApnsLatencyHistogram();
+	/** ハンドシェイク時間 */
+	private final ApnsLatencyHistogram handshakeLatency = new ApnsLatencyHistogram();
+
+	/** 送信件数の前回の計測時刻（ナノ秒） */
+	private long rateSampleNanos = System.nanoTime();
+	/** 送信件数の前回の計測値 */
+	private long rateSampleCount;
+	/** 1秒あたりの送信件数 */
+	private double rate;
+
+	/** 登録したMBeanの名前 */
+	private ObjectName objectName;
+
+	@Override
+	public void notificationWritten(int bytes, long writeNanos) {
+		notificationsWritten.increment();
+		bytesWritten.add(bytes);
+		writeLatency.record(writeNanos);
+	}
+
+	@Override
+	public void connected(long handshakeNanos) {
+		activeConnections.increment();
+		handshakeCount.increment();
+		handshakeLatency.record(handshakeNanos);
+	}
+
+	@Override
+	public void disconnected() {
+		activeConnections.decrement();
+	}
+
+	@Override
+	public void reconnected(ReconnectCause cause) {
+		reconnectCount.increment();
+	}
+
+	@Override
+	public void errorResponseReceived(int status) {
+		errorStatusCounts.incrementAndGet(status & 0xff);
+	}
+
+	/**
+	 * プラットフォームMBeanサーバへの登録
+	 * @param name MBeanの名前（例：{@code japns:type=ApnsMetrics,name=app1}）
+	 * @throws ApnsException 登録に失敗した場合
+	 */
+	public synchronized void register(String name) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName on = new ObjectName(name);
+			server.registerMBean(this, on);
+			objectName = on;
+		} catch (Exception e) {
+			throw new ApnsException("MBeanの登録に失敗しました。name=" + name, e);
+		}
+	}
+
+	/**
+	 * プラットフォームMBeanサーバからの登録解除
+	 */
+	public synchronized void unregister() {
+		if (objectName == null) {
+			return;
+		}
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+		} catch (Exception e) {
+			throw new ApnsException("MBeanの登録解除に失敗しました。name=" + objectName, e);
+		} finally {
+			objectName = null;
+		}
+	}
+
+	@Override
+	public long getNotificationsWritten() {
+		return notificationsWritten.sum();
+	}
+
+	@Override
+	public synchronized double getNotificationsPerSecond() {
+		long now = System.nanoTime();
+		long elapsed = now - rateSampleNanos;
+		if (elapsed >= RATE_INTERVAL_NANOS) {
+			long count = notificationsWritten.sum();
+			rate = (count - rateSampleCount) * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+			rateSampleCount = count;
+			rateSampleNanos = now;
+		}
+		return rate;
+	}
+
+	@Override
+	public long getBytesWritten() {
+		return bytesWritten.sum();
+	}
+
+	@Override
+	public long getActiveConnections() {
+		return activeConnections.sum();
+	}
+
+	@Override
+	public long getHandshakeCount() {
+		return handshakeCount.sum();
+	}
+
+	@Override
+	public long getReconnectCount() {
+		return reconnectCount.sum();
+	}
+
+	@Override
+	public long getErrorResponseCount() {
+		long total = 0;
+		for (int i = 0; i < errorStatusCounts.length(); i++) {
+			total += errorStatusCounts.get(i);
+		}
+		return total;
+	}
+
+	@Override
+	public String getErrorStatusCounts() {
+		Map<Integer, Long> counts = new TreeMap<Integer, Long>();
+		for (int i = 0; i < errorStatusCounts.length(); i++) {
+			long count = errorStatusCounts.get(i);
+			if (count != 0) {
+				counts.put(i, count);
+			}
+		}
+		return counts.toString();
+	}
+
+	@Override
+	public long getWriteLatencyP50Micros() {
+		return writeLatency.getPercentile(50, TimeUnit.MICROSECONDS);
+	}
+
+	@Override
+	public long getWriteLatencyP99Micros() {
+		return writeLatency.getPercentile(99, TimeUnit.MICROSECONDS);
+	}
+
+	@Override
+	public long getWriteLatencyP999Micros() {
+		return writeLatency.getPercentile(99.9, TimeUnit.MICROSECONDS);
+	}
+
+	@Override
+	public long getWriteLatencyMaxMicros() {
+		return TimeUnit.NANOSECONDS.toMicros(writeLatency.getMax());
+	}
+
+	@Override
+	public long getHandshakeLatencyP99Millis() {
+		return handshakeLatency.getPercentile(99, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 書き込み時間のヒストグラムの取得
+	 * @return 書き込み時間のヒストグラム
+	 */
+	public ApnsLatencyHistogram getWriteLatency() {
+		return writeLatency;
+	}
+
+	/**
+	 * ハンドシェイク時間のヒストグラムの取得
+	 * @return ハンドシェイク時間のヒストグラム
+	 */
+	public ApnsLatencyHistogram getHandshakeLatency() {
+		return handshakeLatency;
+	}
+
+	/**
+	 * 計測値のクリア
+	 *
+	 * <p>
+	 * 接続中のソケット数はクリアされません。
+	 * </p>
+	 */
+	@Override
+	public synchronized void reset() {
+		notificationsWritten.reset();
+		bytesWritten.reset();
+		handshakeCount.reset();
+		reconnectCount.reset();
+		for (int i = 0; i < errorStatusCounts.length(); i++) {
+			errorStatusCounts.set(i, 0);
+		}
+		writeLatency.reset();
+		handshakeLatency.reset();
+		rateSampleNanos = System.nanoTime();
+		rateSampleCount = 0;
+		rate = 0;
+	}
+}
@@ -0,0 +1,91 @@
+package japns;
+
+/**
+ * {@link ApnsJmxMetrics}のMBeanインターフェース
+ * @author T.Inukai
+ */
+public interface ApnsJmxMetricsMBean {
+
+	/**
+	 * 送信した通知の件数の取得
+	 * @return 送信した通知の件数
+	 */
+	long getNotificationsWritten();
+
+	/**
+	 * 1秒あたりの送信件数の取得
+	 * @return 直近の計測間隔（1秒以上）での1秒あたりの送信件数
+	 */
+	double getNotificationsPerSecond();
+
+	/**
+	 * 送信したバイト数の取得
+	 * @return 送信したバイト数
+	 */
+	long getBytesWritten();
+
+	/**
+	 * 接続中のソケット数の取得
+	 * @return 接続中のソケット数
+	 */
+	long getActiveConnections();
+
+	/**
+	 * 接続（TLSハンドシェイク）回数の取得
+	 * @return 接続回数
+	 */
+	long getHandshakeCount();
+
+	/**
+	 * 再接続回数の取得
+	 * @return 再接続回数
+	 */
+	long getReconnectCount();
+
+	/**
+	 * エラー通知の件数の取得
+	 * @return APNsから受信したエラー通知の件数
+	 */
+	long getErrorResponseCount();
+
+	/**
+	 * ステータスごとのエラー通知の件数の取得
+	 * @return ステータスごとの件数（例：{@code {8=3, 10=1}}）
+	 */
+	String getErrorStatusCounts();
+
+	/**
+	 * 書き込み時間の50パーセンタイル値の取得
+	 * @return 書き込み時間（マイクロ秒）
+	 */
+	long getWriteLatencyP50Micros();
+
+	/**
+	 * 書き込み時間の99パーセンタイル値の取得
+	 * @return 書き込み時間（マイクロ秒）
+	 */
+	long getWriteLatencyP99Micros();
+
+	/**
+	 * 書き込み時間の99.9パーセンタイル値の取得
+	 * @return 書き込み時間（マイクロ秒）
+	 */
+	long getWriteLatencyP999Micros();
+
+	/**
+	 * 書き込み時間の最大値の取得
+	 * @return 書き込み時間（マイクロ秒）
+	 */
+	long getWriteLatencyMaxMicros();
+
+	/**
+	 * ハンドシェイク時間の99パーセンタイル値の取得
+	 * @return ハンドシェイク時間（ミリ秒）
+	 */
+	long getHandshakeLatencyP99Millis();
+
+	/**
+	 * 計測値のクリア
+	 */
+	void reset();
+}
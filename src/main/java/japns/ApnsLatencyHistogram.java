@@ -0,0 +1,233 @@
+package japns;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * レイテンシヒストグラム
+ *
+ * <p>
+ * ナノ秒単位の時間を、2のべき乗ごとの範囲をさらに16分割した対数線形のバケットで集計します（誤差は約6%以内）。<br>
+ * 記録はバケットのカウンタを加算するだけで、ロックもメモリ割り当ても行わないため、
+ * 送信処理の中で複数のスレッドから常時記録できます。<br>
+ * 複数のスレッドが同じカウンタを奪い合わないよう、バケットはスレッドごとに分散した領域に加算し、
+ * 件数、合計値、最大値は{@link LongAdder}、{@link LongAccumulator}で集計します。読み出し時に合算します。
+ * パーセンタイルは該当するバケットの上限値で返却します。
+ * </p>
+ *
+ * @author T.Inukai
+ */
+public class ApnsLatencyHistogram {
+
+	/**
+	 * 2のべき乗ごとの範囲の分割数のビット数（16分割）
+	 */
+	private static final int SUB_BUCKET_BITS = 4;
+	/**
+	 * 2のべき乗ごとの範囲の分割数
+	 */
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	/**
+	 * 記録できる最大値のビット数（2^40ナノ秒 ≒ 18分）
+	 */
+	private static final int MAX_VALUE_BITS = 40;
+	/**
+	 * バケット数
+	 */
+	private static final int BUCKET_COUNT = (MAX_VALUE_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+	/**
+	 * バケットを分散する領域の数（プロセッサ数以上の2のべき乗、最大8）
+	 */
+	private static final int STRIPE_COUNT = Math.min(Integer.highestOneBit(Math.max(Runtime.getRuntime().availableProcessors(), 2) - 1) << 1, 8);
+
+	/**
+	 * 最大値の集計
+	 */
+	private static final LongBinaryOperator MAX = new LongBinaryOperator() {
+		@Override
+		public long applyAsLong(long left, long right) {
+			return Math.max(left, right);
+		}
+	};
+
+	/**
+	 * バケットごとの件数（領域ごとに{@link #BUCKET_COUNT}個）
+	 */
+	private final AtomicLongArray buckets = new AtomicLongArray(STRIPE_COUNT * BUCKET_COUNT);
+	/**
+	 * 合計件数
+	 */
+	private final LongAdder count = new LongAdder();
+	/**
+	 * 合計値
+	 */
+	private final LongAdder sum = new LongAdder();
+	/**
+	 * 最大値
+	 */
+	private final LongAccumulator max = new LongAccumulator(MAX, 0);
+
+	/**
+	 * 時間の記録
+	 * @param nanos 時間（ナノ秒）。負の値は0として記録
+	 */
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		// スレッドIDで領域を選ぶ（送信スレッドは連番で生成されるため、通常は別の領域になる）
+		int stripe = (int) Thread.currentThread().getId() & (STRIPE_COUNT - 1);
+		buckets.incrementAndGet(stripe * BUCKET_COUNT + bucketIndex(nanos));
+		count.increment();
+		sum.add(nanos);
+		max.accumulate(nanos);
+	}
+
+	/**
+	 * 記録件数の取得
+	 * @return 記録件数
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * 最大値の取得
+	 * @return 最大値（ナノ秒）
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * 平均値の取得
+	 * @return 平均値（ナノ秒）。記録がない場合は0
+	 */
+	public long getMean() {
+		long n = count.sum();
+		return n == 0 ? 0 : sum.sum() / n;
+	}
+
+	/**
+	 * パーセンタイル値の取得
+	 * @param percentile パーセンタイル（0～100。例：99.9）
+	 * @return パーセンタイル値（ナノ秒）。記録がない場合は0
+	 */
+	public long getPercentile(double percentile) {
+		long total = 0;
+		long[] snapshot = new long[BUCKET_COUNT];
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			for (int stripe = 0; stripe < STRIPE_COUNT; stripe++) {
+				snapshot[i] += buckets.get(stripe * BUCKET_COUNT + i);
+			}
+			total += snapshot[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(total * Math.min(Math.max(percentile, 0), 100) / 100);
+		rank = Math.max(rank, 1);
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				return Math.min(bucketUpperBound(i), getMax());
+			}
+		}
+		return getMax();
+	}
+
+	/**
+	 * パーセンタイル値の取得
+	 * @param percentile パーセンタイル（0～100）
+	 * @param unit 時間の単位
+	 * @return パーセンタイル値
+	 */
+	public long getPercentile(double percentile, TimeUnit unit) {
+		return unit.convert(getPercentile(percentile), TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * ヒストグラムのマージ
+	 * @param h マージするヒストグラム
+	 */
+	public void merge(ApnsLatencyHistogram h) {
+		for (int i = 0; i < h.buckets.length(); i++) {
+			long n = h.buckets.get(i);
+			if (n != 0) {
+				buckets.addAndGet(i, n);
+			}
+		}
+		count.add(h.count.sum());
+		sum.add(h.sum.sum());
+		max.accumulate(h.max.get());
+	}
+
+	/**
+	 * 記録のクリア
+	 *
+	 * <p>
+	 * 記録中にクリアした場合、その記録の一部が残ることがあります。
+	 * </p>
+	 */
+	public void reset() {
+		for (int i = 0; i < buckets.length(); i++) {
+			buckets.set(i, 0);
+		}
+		count.reset();
+		sum.reset();
+		max.reset();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("{");
+		sb.append("count:").append(getCount()).append(",");
+		sb.append("mean:").append(getMean()).append(",");
+		sb.append("p50:").append(getPercentile(50)).append(",");
+		sb.append("p99:").append(getPercentile(99)).append(",");
+		sb.append("p999:").append(getPercentile(99.9)).append(",");
+		sb.append("max:").append(getMax());
+		sb.append("}");
+		return sb.toString();
+	}
+
+	/**
+	 * 値に対応するバケットのIndexの取得
+	 * @param value 値（0以上）
+	 * @return バケットのIndex
+	 */
+	static int bucketIndex(long value) {
+		if (value < SUB_BUCKET_COUNT) {
+			return (int) value;
+		}
+		// 最上位ビットの位置
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		if (exponent >= MAX_VALUE_BITS) {
+			return BUCKET_COUNT - 1;
+		}
+		// 最上位ビットに続くSUB_BUCKET_BITSビット
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+	}
+
+	/**
+	 * バケットの上限値の取得
+	 * @param index バケットのIndex
+	 * @return バケットに含まれる最大の値
+	 */
+	static long bucketUpperBound(int index) {
+		if (index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+		int exponent = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+		int subBucket = index % SUB_BUCKET_COUNT;
+		long lower = (1L << exponent) | ((long) subBucket << (exponent - SUB_BUCKET_BITS));
+		return lower + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+}
@@ -0,0 +1,128 @@
+package japns;
+
+/**
+ * 通知ごとのレイテンシの計測
+ *
+ * <p>
+ * {@link ApnsNotificationService#setLatencyTracer(ApnsLatencyTracer)}で設定すると、
+ * 各通知について以下の時点の間隔を計測し、{@link ApnsLatencyHistogram}に集計します。
+ * </p>
+ *
+ * <ul>
+ * <li>待ち時間 - {@code push()}の呼び出しから、通知の書き込み開始まで</li>
+ * <li>生成時間 - 通知バイナリデータの生成</li>
+ * <li>書き込み時間 - ソケットへの書き込み</li>
+ * <li>確定待ち時間 - 書き込み完了から、APNsのエラー通知で状態が変わることがなくなる（再接続または送信終了）まで</li>
+ * <li>合計時間 - {@code push()}の呼び出しから、状態の確定まで</li>
+ * </ul>
+ *
+ * <p>
+ * 確定待ち時間の計測のため、状態が確定していない通知1件あたり8バイトの書き込み時刻を、送信スレッドごとのリングバッファに保持します。
+ * 状態は再接続（エラー通知、最大パケットサイズ超過）または送信終了で確定するため、
+ * 最大パケットサイズを設定すると保持する件数が1接続の件数までになります。
+ * 計測しない場合（設定しない場合）は保持しません。このクラスはスレッドセーフです。
+ * </p>
+ *
+ * @author T.Inukai
+ */
+public class ApnsLatencyTracer {
+
+	/** 待ち時間 */
+	private final ApnsLatencyHistogram queueDelay = new ApnsLatencyHistogram();
+	/** 生成時間 */
+	private final ApnsLatencyHistogram encodeTime = new ApnsLatencyHistogram();
+	/** 書き込み時間 */
+	private final ApnsLatencyHistogram writeTime = new ApnsLatencyHistogram();
+	/** 確定待ち時間 */
+	private final ApnsLatencyHistogram confirmDelay = new ApnsLatencyHistogram();
+	/** 合計時間 */
+	private final ApnsLatencyHistogram totalLatency = new ApnsLatencyHistogram();
+
+	/**
+	 * 書き込みの記録
+	 * @param submitNanos {@code push()}の呼び出し時刻
+	 * @param encodeStartNanos 生成開始時刻
+	 * @param writeStartNanos 書き込み開始時刻
+	 * @param writeEndNanos 書き込み完了時刻
+	 */
+	void recordWrite(long submitNanos, long encodeStartNanos, long writeStartNanos, long writeEndNanos) {
+		queueDelay.record(encodeStartNanos - submitNanos);
+		encodeTime.record(writeStartNanos - encodeStartNanos);
+		writeTime.record(writeEndNanos - writeStartNanos);
+	}
+
+	/**
+	 * 状態の確定の記録
+	 * @param submitNanos {@code push()}の呼び出し時刻
+	 * @param writeEndNanos 書き込み完了時刻
+	 * @param confirmNanos 状態の確定時刻
+	 */
+	void recordConfirm(long submitNanos, long writeEndNanos, long confirmNanos) {
+		confirmDelay.record(confirmNanos - writeEndNanos);
+		totalLatency.record(confirmNanos - submitNanos);
+	}
+
+	/**
+	 * 待ち時間の取得
+	 * @return {@code push()}の呼び出しから書き込み開始までの時間のヒストグラム
+	 */
+	public ApnsLatencyHistogram getQueueDelay() {
+		return queueDelay;
+	}
+
+	/**
+	 * 生成時間の取得
+	 * @return 通知バイナリデータの生成時間のヒストグラム
+	 */
+	public ApnsLatencyHistogram getEncodeTime() {
+		return encodeTime;
+	}
+
+	/**
+	 * 書き込み時間の取得
+	 * @return ソケットへの書き込み時間のヒストグラム
+	 */
+	public ApnsLatencyHistogram getWriteTime() {
+		return writeTime;
+	}
+
+	/**
+	 * 確定待ち時間の取得
+	 * @return 書き込み完了から状態の確定までの時間のヒストグラム
+	 */
+	public ApnsLatencyHistogram getConfirmDelay() {
+		return confirmDelay;
+	}
+
+	/**
+	 * 合計時間の取得
+	 * @return {@code push()}の呼び出しから状態の確定までの時間のヒストグラム
+	 */
+	public ApnsLatencyHistogram getTotalLatency() {
+		return totalLatency;
+	}
+
+	/**
+	 * 計測値のクリア
+	 */
+	public void reset() {
+		queueDelay.reset();
+		encodeTime.reset();
+		writeTime.reset();
+		confirmDelay.reset();
+		totalLatency.reset();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("{");
+		sb.append("queueDelay:").append(queueDelay).append(",");
+		sb.append("encodeTime:").append(encodeTime).append(",");
+		sb.append("writeTime:").append(writeTime).append(",");
+		sb.append("confirmDelay:").append(confirmDelay).append(",");
+		sb.append("totalLatency:").append(totalLatency);
+		sb.append("}");
+		return sb.toString();
+	}
+}
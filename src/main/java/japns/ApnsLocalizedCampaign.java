@@ -0,0 +1,301 @@
+package japns;
+
+import japns.ApnsNotification.Priority;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * ローカライズ配信
+ *
+ * <p>
+ * ロケールごとに文面が異なるPUSH通知を、送信先ごとにペイロードを生成せずに送信するためのクラスです。<br>
+ * 送信先はロケール（またはバリアント）のキーごとにグループ化され、各キーのペイロードは一度だけシリアライズされます。
+ * 同じグループの送信先は、シリアライズ済みのUTF-8バイト配列をコピーせずに共有します。
+ * ペイロードの生成回数は送信先の件数ではなく、バリアントの数になります。<br>
+ * 送信データは、グループやデバイストークンの形式に関わらず、送信先を追加した順に生成されます。
+ * </p>
+ *
+ * <pre>
+ * ApnsLocalizedCampaign campaign = new ApnsLocalizedCampaign();
+ * campaign.putVariant("ja", jaPayload);
+ * campaign.putVariant("en", enPayload);
+ * campaign.setDefaultVariantKey("en");
+ * for (User user : userList) {
+ *     campaign.addRecipient(user.getToken(), user.getLocale());
+ * }
+ * ApnsResult result = apnsNotificationService.push(campaign.toNotificationBatch(), threadCount);
+ * </pre>
+ *
+ * <p>
+ * 送信先のキーに一致するバリアントがない場合は、キーの言語部分（"ja_JP"の場合は"ja"）、
+ * デフォルトのバリアントの順に使用します。このクラスはスレッドセーフではありません。
+ * </p>
+ *
+ * @author T.Inukai
+ */
+public class ApnsLocalizedCampaign {
+
+	/**
+	 * 有効期限
+	 */
+	private final int expiry;
+	/**
+	 * 優先度
+	 */
+	private final Priority priority;
+
+	/**
+	 * バリアント（Key:キー, value:生成済みペイロード）
+	 */
+	private final Map<String, ApnsEncodedPayload> variants = new LinkedHashMap<String, ApnsEncodedPayload>();
+
+	/**
+	 * 送信先グループ（Key:送信先のキー, value:グループの番号）
+	 */
+	private final Map<String, Integer> groups = new LinkedHashMap<String, Integer>();
+
+	/**
+	 * 送信先のデバイストークン（追加順。{@link ApnsDeviceToken}または16進文字列）
+	 */
+	private final List<Object> recipientTokens = new ArrayList<Object>();
+
+	/**
+	 * 送信先のグループの番号（追加順）
+	 */
+	private int[] recipientGroups = new int[16];
+
+	/**
+	 * デフォルトのバリアントのキー
+	 */
+	private String defaultVariantKey;
+
+	/**
+	 * インスタンスを生成します
+	 *
+	 * <p>
+	 * 有効期限は{@code Integer.MAX_VALUE}、優先度は{@link Priority#HIGH}になります。
+	 * </p>
+	 */
+	public ApnsLocalizedCampaign() {
+		this(Integer.MAX_VALUE, Priority.HIGH);
+	}
+
+	/**
+	 * 有効期限、優先度を指定してインスタンスを生成します
+	 * @param expiry 有効期限
+	 * @param priority 優先度
+	 */
+	public ApnsLocalizedCampaign(int expiry, Priority priority) {
+		this.expiry = expiry;
+		this.priority = priority;
+	}
+
+	/**
+	 * バリアントの設定
+	 *
+	 * <p>
+	 * ペイロードはこの時点で一度だけシリアライズされます。以降にペイロードを変更しても反映されません。
+	 * </p>
+	 *
+	 * @param key キー（ロケールなど）
+	 * @param payload ペイロード
+	 * @throws ApnsException ペイロードを生成できない場合
+	 */
+	public void putVariant(String key, ApnsPayload payload) {
+		putVariant(key, payload.build());
+	}
+
+	/**
+	 * バリアントの設定
+	 * @param key キー（ロケールなど）
+	 * @param payload 生成済みペイロード
+	 */
+	public void putVariant(String key, ApnsEncodedPayload payload) {
+		if (payload == null) {
+			throw new ApnsException("ペイロードが指定されていません。key=" + key);
+		}
+		variants.put(key, payload);
+	}
+
+	/**
+	 * デフォルトのバリアントのキーの設定
+	 *
+	 * <p>
+	 * 送信先のキーに一致するバリアントがない場合に使用されます。
+	 * </p>
+	 *
+	 * @param defaultVariantKey デフォルトのバリアントのキー
+	 */
+	public void setDefaultVariantKey(String defaultVariantKey) {
+		this.defaultVariantKey = defaultVariantKey;
+	}
+
+	/**
+	 * 送信先の追加
+	 * @param token デバイストークン（16進文字列）
+	 * @param key 送信先のキー（ロケールなど）
+	 */
+	public void addRecipient(String token, String key) {
+		addRecipient((Object) token, key);
+	}
+
+	/**
+	 * 送信先の追加
+	 * @param token デバイストークン
+	 * @param key 送信先のキー（ロケールなど）
+	 */
+	public void addRecipient(ApnsDeviceToken token, String key) {
+		addRecipient((Object) token, key);
+	}
+
+	/**
+	 * バリアントのキーの取得
+	 * @return バリアントのキー（変更不可）
+	 */
+	public Set<String> getVariantKeys() {
+		return Collections.unmodifiableSet(variants.keySet());
+	}
+
+	/**
+	 * 送信先の件数の取得
+	 * @return 送信先の件数
+	 */
+	public int size() {
+		return recipientTokens.size();
+	}
+
+	/**
+	 * 送信データリストの生成
+	 *
+	 * <p>
+	 * 送信データは送信先を追加した順に並びます。
+	 * 同じバリアントの送信データは、ペイロードのUTF-8バイト配列を共有します。
+	 * </p>
+	 *
+	 * @return 送信データリスト
+	 * @throws ApnsException 送信先のキーに対応するバリアントがない場合
+	 */
+	public List<ApnsNotification> toNotificationList() {
+		ApnsEncodedPayload[] payloads = resolveVariants();
+		List<ApnsNotification> apnsNotificationList = new ArrayList<ApnsNotification>(size());
+		for (int i = 0; i < recipientTokens.size(); i++) {
+			ApnsEncodedPayload payload = payloads[recipientGroups[i]];
+			Object token = recipientTokens.get(i);
+			if (token instanceof ApnsDeviceToken) {
+				apnsNotificationList.add(new ApnsNotification((ApnsDeviceToken) token, payload, expiry, priority));
+			} else {
+				apnsNotificationList.add(new ApnsNotification((String) token, payload, expiry, priority));
+			}
+		}
+		return apnsNotificationList;
+	}
+
+	/**
+	 * 送信データバッチの生成
+	 *
+	 * <p>
+	 * 送信データは送信先を追加した順に並びます。
+	 * ペイロードテーブルにはバリアントごとに1件だけ登録されます。
+	 * </p>
+	 *
+	 * @return 送信データバッチ
+	 * @throws ApnsException 送信先のキーに対応するバリアントがない場合
+	 */
+	public ApnsNotificationBatch toNotificationBatch() {
+		ApnsEncodedPayload[] payloads = resolveVariants();
+		ApnsNotificationBatch batch = new ApnsNotificationBatch(size());
+		// グループの番号→ペイロードテーブルのインデックス
+		int[] payloadIndexes = new int[payloads.length];
+		Map<ApnsEncodedPayload, Integer> registered = new LinkedHashMap<ApnsEncodedPayload, Integer>();
+		for (int group = 0; group < payloads.length; group++) {
+			Integer payloadIndex = registered.get(payloads[group]);
+			if (payloadIndex == null) {
+				payloadIndex = batch.addPayload(payloads[group]);
+				registered.put(payloads[group], payloadIndex);
+			}
+			payloadIndexes[group] = payloadIndex;
+		}
+		for (int i = 0; i < recipientTokens.size(); i++) {
+			int payloadIndex = payloadIndexes[recipientGroups[i]];
+			Object token = recipientTokens.get(i);
+			if (token instanceof ApnsDeviceToken) {
+				batch.add((ApnsDeviceToken) token, payloadIndex, expiry, priority);
+			} else {
+				batch.add((String) token, payloadIndex, expiry, priority);
+			}
+		}
+		return batch;
+	}
+
+	/**
+	 * 送信先グループごとのバリアントの取得
+	 * @return 生成済みペイロード（グループの番号順）
+	 * @throws ApnsException 送信先のキーに対応するバリアントがない場合
+	 */
+	private ApnsEncodedPayload[] resolveVariants() {
+		ApnsEncodedPayload[] payloads = new ApnsEncodedPayload[groups.size()];
+		for (Map.Entry<String, Integer> entry : groups.entrySet()) {
+			payloads[entry.getValue()] = resolveVariant(entry.getKey());
+		}
+		return payloads;
+	}
+
+	/**
+	 * 送信先のキーに対応するバリアントの取得
+	 * @param key 送信先のキー
+	 * @return 生成済みペイロード
+	 * @throws ApnsException 対応するバリアントがない場合
+	 */
+	private ApnsEncodedPayload resolveVariant(String key) {
+		ApnsEncodedPayload payload = variants.get(key);
+		if (payload == null && key != null) {
+			// 言語部分のみで検索（"ja_JP"、"ja-JP"→"ja"）
+			int idx = indexOfSeparator(key);
+			if (idx > 0) {
+				payload = variants.get(key.substring(0, idx));
+			}
+		}
+		if (payload == null && defaultVariantKey != null) {
+			payload = variants.get(defaultVariantKey);
+		}
+		if (payload == null) {
+			throw new ApnsException("バリアントが設定されていません。key=" + key);
+		}
+		return payload;
+	}
+
+	/**
+	 * 送信先の追加
+	 * @param token デバイストークン（{@link ApnsDeviceToken}または16進文字列）
+	 * @param key 送信先のキー（ロケールなど）
+	 */
+	private void addRecipient(Object token, String key) {
+		Integer group = groups.get(key);
+		if (group == null) {
+			group = groups.size();
+			groups.put(key, group);
+		}
+		int idx = recipientTokens.size();
+		if (idx == recipientGroups.length) {
+			recipientGroups = Arrays.copyOf(recipientGroups, idx + (idx >> 1));
+		}
+		recipientGroups[idx] = group;
+		recipientTokens.add(token);
+	}
+
+	private static int indexOfSeparator(String key) {
+		for (int i = 0; i < key.length(); i++) {
+			char c = key.charAt(i);
+			if (c == '_' || c == '-') {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,47 @@
+package japns;
+
+import japns.ApnsPushStatistics.ReconnectCause;
+
+/**
+ * PUSH通知の計測
+ *
+ * <p>
+ * {@link ApnsNotificationService#setMetrics(ApnsMetrics)}で設定すると、送信処理の各時点で呼び出されます。<br>
+ * 送信処理のスレッドから直接呼び出されるため、実装はスレッドセーフで、かつ短時間で終了しなければなりません。
+ * デフォルトは何もしない{@link ApnsNoopMetrics}です。JMXで公開する実装として{@link ApnsJmxMetrics}があります。
+ * </p>
+ *
+ * @author T.Inukai
+ */
+public interface ApnsMetrics {
+
+	/**
+	 * 通知の送信
+	 * @param bytes 送信したバイト数
+	 * @param writeNanos 書き込みにかかった時間（ナノ秒）
+	 */
+	void notificationWritten(int bytes, long writeNanos);
+
+	/**
+	 * 接続の確立
+	 * @param handshakeNanos 接続とTLSハンドシェイクにかかった時間（ナノ秒）
+	 */
+	void connected(long handshakeNanos);
+
+	/**
+	 * 接続の切断
+	 */
+	void disconnected();
+
+	/**
+	 * 再接続
+	 * @param cause 再接続の原因
+	 */
+	void reconnected(ReconnectCause cause);
+
+	/**
+	 * APNsからのエラー通知の受信
+	 * @param status ステータス
+	 */
+	void errorResponseReceived(int status);
+}
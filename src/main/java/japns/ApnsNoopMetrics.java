@@ -0,0 +1,43 @@
+package japns;
+
+import japns.ApnsPushStatistics.ReconnectCause;
+
+/**
+ * 何もしない{@link ApnsMetrics}
+ *
+ * <p>
+ * {@link ApnsNotificationService}のデフォルトです。
+ * </p>
+ *
+ * @author T.Inukai
+ */
+public final class ApnsNoopMetrics implements ApnsMetrics {
+
+	/**
+	 * インスタンス
+	 */
+	public static final ApnsNoopMetrics INSTANCE = new ApnsNoopMetrics();
+
+	private ApnsNoopMetrics() {
+	}
+
+	@Override
+	public void notificationWritten(int bytes, long writeNanos) {
+	}
+
+	@Override
+	public void connected(long handshakeNanos) {
+	}
+
+	@Override
+	public void disconnected() {
+	}
+
+	@Override
+	public void reconnected(ReconnectCause cause) {
+	}
+
+	@Override
+	public void errorResponseReceived(int status) {
+	}
+}
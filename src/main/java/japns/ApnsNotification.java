@@ -1,8 +1,6 @@
 package japns;
 
-import java.io.ByteArrayOutputStream;
-import java.io.DataOutputStream;
-import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -60,10 +58,11 @@ public class ApnsNotification {
 	 * Identifier管理変数
 	 *
 	 * <p>
-	 * このクラスのインスタンスが生成されるたびにインクリメントされます。
+	 * このクラスのインスタンスが生成されるたびにインクリメントされます。<br>
+	 * {@link ApnsNotificationBatch}の各通知とも共有されます。
 	 * </p>
 	 */
-	private static int nextId = 0;
+	private static final AtomicInteger nextId = new AtomicInteger();
 
 	/**
 	 * PUSH通知送信ステータス
@@ -86,15 +85,37 @@ public class ApnsNotification {
 	/**
 	 * コマンド（2固定）
 	 */
-	private int command = 2;
+	private final static int COMMAND = 2;
+
+	/**
+	 * ペイロード以外のフレームデータ長
+	 *
+	 * <p>
+	 * フレームヘッダ（コマンド、フレームデータ長）と、
+	 * 各アイテムヘッダ（アイテムID、アイテムデータ長）、通知の識別子、有効期限、優先度の合計です。
+	 * </p>
+	 */
+	private final static int FRAME_OVERHEAD = (1 + 4) + (1 + 2) + (1 + 2) + (1 + 2 + 4) + (1 + 2 + 4) + (1 + 2 + 1);
 	/**
 	 * デバイストークン
 	 */
-	private String token;
+	private ApnsDeviceToken token;
 	/**
-	 * ペイロード
+	 * 不正なデバイストークン文字列
+	 *
+	 * <p>
+	 * 16進文字列として不正なデバイストークンが指定された場合のみ保持します。
+	 * </p>
 	 */
-	private String payload;
+	private String invalidToken;
+	/**
+	 * ペイロード（UTF-8バイト配列）
+	 *
+	 * <p>
+	 * ブロードキャスト送信では全通知で同一の配列を共有します。
+	 * </p>
+	 */
+	private byte[] payloadBytes;
 	/**
 	 * 通知の識別子
 	 */
@@ -124,9 +145,87 @@ public class ApnsNotification {
 	private ApnsNotificationErrorResponse apnsNotificationErrorResponse;
 
 	/**
-	 * PUSH通知バイナリデータ
+	 * デバイストークン、ペイロードを指定してインスタンスを生成します。
+	 *
+	 * <p>
+	 * 有効期限、優先度はでデフォルトになります。
+	 * </p>
+	 *
+	 * @param token デバイストークン
+	 * @param payload ペイロード
+	 */
+	public ApnsNotification(String token, String payload) {
+		this(token, payload, DEFAULT_EXPIRY, DEFAULT_PRIORITY);
+	}
+
+	/**
+	 * デバイストークン、ペイロード、有効期限、優先度を指定してインスタンスを生成します。
+	 * @param token デバイストークン
+	 * @param payload ペイロード
+	 * @param expiry 有効期限
+	 * @param priority 優先度
 	 */
-	private byte[] notificationBytes;
+	public ApnsNotification(String token, String payload, int expiry, Priority priority) {
+		this(toDeviceToken(token), payload, expiry, priority);
+		if (this.token == null) {
+			this.invalidToken = token;
+		}
+	}
+
+	/**
+	 * デバイストークン（16進文字列）、ペイロード（UTF-8バイト配列）、有効期限、優先度を指定してインスタンスを生成します。
+	 * @param token デバイストークン
+	 * @param payloadBytes ペイロード（UTF-8バイト配列）。コピーせずに保持されます
+	 * @param expiry 有効期限
+	 * @param priority 優先度
+	 */
+	public ApnsNotification(String token, byte[] payloadBytes, int expiry, Priority priority) {
+		this(toDeviceToken(token), payloadBytes, expiry, priority);
+		if (this.token == null) {
+			this.invalidToken = token;
+		}
+	}
+
+	/**
+	 * デバイストークン（16進文字列）、生成済みペイロード、有効期限、優先度を指定してインスタンスを生成します。
+	 * @param token デバイストークン
+	 * @param payload 生成済みペイロード
+	 * @param expiry 有効期限
+	 * @param priority 優先度
+	 */
+	public ApnsNotification(String token, ApnsEncodedPayload payload, int expiry, Priority priority) {
+		this(token, payload.getBytesUnsafe(), expiry, priority);
+	}
+
+	/**
+	 * デバイストークン、生成済みペイロードを指定してインスタンスを生成します。
+	 *
+	 * <p>
+	 * 有効期限、優先度はでデフォルトになります。
+	 * </p>
+	 *
+	 * @param token デバイストークン
+	 * @param payload 生成済みペイロード
+	 */
+	public ApnsNotification(ApnsDeviceToken token, ApnsEncodedPayload payload) {
+		this(token, payload, DEFAULT_EXPIRY, DEFAULT_PRIORITY);
+	}
+
+	/**
+	 * デバイストークン、生成済みペイロード、有効期限、優先度を指定してインスタンスを生成します。
+	 *
+	 * <p>
+	 * ペイロードのUTF-8バイト配列はコピーせずに共有されます。
+	 * </p>
+	 *
+	 * @param token デバイストークン
+	 * @param payload 生成済みペイロード
+	 * @param expiry 有効期限
+	 * @param priority 優先度
+	 */
+	public ApnsNotification(ApnsDeviceToken token, ApnsEncodedPayload payload, int expiry, Priority priority) {
+		this(token, payload.getBytesUnsafe(), expiry, priority);
+	}
 
 	/**
 	 * デバイストークン、ペイロードを指定してインスタンスを生成します。
@@ -138,7 +237,7 @@ public class ApnsNotification {
 	 * @param token デバイストークン
 	 * @param payload ペイロード
 	 */
-	public ApnsNotification(String token, String payload) {
+	public ApnsNotification(ApnsDeviceToken token, String payload) {
 		this(token, payload, DEFAULT_EXPIRY, DEFAULT_PRIORITY);
 	}
 
@@ -149,11 +248,28 @@ public class ApnsNotification {
 	 * @param expiry 有効期限
 	 * @param priority 優先度
 	 */
-	public ApnsNotification(String token, String payload, int expiry, Priority priority) {
+	public ApnsNotification(ApnsDeviceToken token, String payload, int expiry, Priority priority) {
+		this(token, payload == null ? null : ApnsUtil.convertStringToUTF8Bytes(payload), expiry, priority);
+	}
+
+	/**
+	 * デバイストークン、ペイロード（UTF-8バイト配列）、有効期限、優先度を指定してインスタンスを生成します。
+	 *
+	 * <p>
+	 * {@code payloadBytes}はコピーせずに保持されるため、複数の通知で同一の配列を共有できます。
+	 * 呼び出し元は以降{@code payloadBytes}を変更してはいけません。
+	 * </p>
+	 *
+	 * @param token デバイストークン
+	 * @param payloadBytes ペイロード（UTF-8バイト配列）
+	 * @param expiry 有効期限
+	 * @param priority 優先度
+	 */
+	public ApnsNotification(ApnsDeviceToken token, byte[] payloadBytes, int expiry, Priority priority) {
 		this.token = token;
-		this.payload = payload;
+		this.payloadBytes = payloadBytes;
 
-		this.identifier = getSecId();
+		this.identifier = nextIdentifier();
 
 		this.expiry = expiry;
 		this.priority = priority;
@@ -161,18 +277,50 @@ public class ApnsNotification {
 
 	/**
 	 * デバイストークンの取得
-	 * @return デバイストークン
+	 *
+	 * <p>
+	 * デバイストークンはバイナリで保持しているため、呼び出しごとに正規化した16進文字列（大文字、区切り文字なし）に変換します。
+	 * 16進文字列として不正なデバイストークンが指定されていた場合は、指定された文字列をそのまま返却します。
+	 * </p>
+	 *
+	 * <p>
+	 * 以前のバージョンでは指定された文字列をそのまま返却していたため、
+	 * 小文字や区切り文字（空白、ハイフン）を含む文字列で生成した場合は、指定した文字列と一致しなくなります。
+	 * 返却値をデバイストークンの照合に使用している場合は、照合する側も{@link ApnsDeviceToken#fromHex(String)}で変換して比較するか、
+	 * {@link #getDeviceToken()}の値で比較してください。
+	 * </p>
+	 *
+	 * @return デバイストークン（16進文字列）
 	 */
 	public String getToken() {
+		if (this.token == null) {
+			return this.invalidToken;
+		}
+		return this.token.toHex();
+	}
+
+	/**
+	 * デバイストークンの取得
+	 * @return デバイストークン。16進文字列として不正なデバイストークンが指定されていた場合は{@code null}
+	 */
+	public ApnsDeviceToken getDeviceToken() {
 		return this.token;
 	}
 
 	/**
 	 * ペイロードの取得
+	 *
+	 * <p>
+	 * 呼び出しごとにUTF-8バイト配列から文字列に変換します。
+	 * </p>
+	 *
 	 * @return ペイロード
 	 */
 	public String getPayload() {
-		return this.payload;
+		if (this.payloadBytes == null) {
+			return null;
+		}
+		return ApnsUtil.convertUTF8BytesToString(this.payloadBytes);
 	}
 
 	/**
@@ -234,98 +382,176 @@ public class ApnsNotification {
 	 *
 	 * <p>
 	 * APNsに送信するバイナリデータを生成して返却します。<br>
-	 * 初回呼び出し時にメモリに保持されるため、生成処理が実行されるのは初回のみ。
+	 * 生成したバイナリデータはメモリに保持しないため、呼び出しごとに生成処理が実行されます。
+	 * PUSH通知の送信処理では{@link #encodeNotificationBytes(byte[], int)}で送信バッファに直接生成するため、この処理は使用しません。
 	 * </p>
 	 *
 	 * @return PUSH通知バイナリデータ
 	 */
 	public byte[] getNotificationBytes() {
-		if (notificationBytes != null) {
-			return notificationBytes;
+		int length = getNotificationLength();
+		if (length < 0) {
+			logger.info("PUSH通知バイナリデータを生成できませんでした。token={}", getToken());
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		encodeNotificationBytes(bytes, 0);
+		return bytes;
+	}
+
+	/**
+	 * 通知バイナリデータ長の取得
+	 * @return 通知バイナリデータのバイト数。デバイストークンまたはペイロードが不正で生成できない場合は-1
+	 */
+	public int getNotificationLength() {
+		if (token == null || payloadBytes == null || priority == null) {
+			return -1;
 		}
+		return getFrameLength(token.length(), payloadBytes.length);
+	}
+
+	/**
+	 * ペイロード長の取得
+	 * @return ペイロードのバイト数。ペイロードがない場合は-1
+	 */
+	int getPayloadLength() {
+		return payloadBytes == null ? -1 : payloadBytes.length;
+	}
+
+	/**
+	 * 通知バイナリデータを指定されたbyte配列に書き込む
+	 *
+	 * <p>
+	 * 呼び出し元が用意したバッファに直接書き込むため、通知ごとのbyte配列は生成されません。<br>
+	 * ペイロードは保持しているUTF-8バイト配列をそのままコピーします。
+	 * </p>
+	 *
+	 * @param buf 書き込み先。{@code offset}から{@link #getNotificationLength()}バイトの領域が必要
+	 * @param offset 書き込み開始位置
+	 * @return 書き込んだバイト数
+	 */
+	public int encodeNotificationBytes(byte[] buf, int offset) {
+		if (getNotificationLength() < 0) {
+			throw new ApnsException("PUSH通知バイナリデータを生成できません。");
+		}
+		byte[] tokenData = token.getBytesUnsafe();
+		return encodeFrame(buf, offset, tokenData, 0, tokenData.length, payloadBytes, identifier, expiry, priority.getCode());
+	}
+
+	/**
+	 * 通知バイナリデータ長の計算
+	 * @param tokenLength デバイストークンのバイト数
+	 * @param payloadLength ペイロードのバイト数
+	 * @return 通知バイナリデータのバイト数。アイテムデータ長の上限を超える場合は-1
+	 */
+	static int getFrameLength(int tokenLength, int payloadLength) {
+		if (tokenLength > 0xffff || payloadLength > 0xffff) {
+			return -1;
+		}
+		return FRAME_OVERHEAD + tokenLength + payloadLength;
+	}
+
+	/**
+	 * 通知バイナリデータ（コマンド2）を指定されたbyte配列に書き込む
+	 * @param buf 書き込み先
+	 * @param offset 書き込み開始位置
+	 * @param tokenData デバイストークンを含むbyte配列
+	 * @param tokenOffset デバイストークンの開始位置
+	 * @param tokenLength デバイストークンのバイト数
+	 * @param payloadData ペイロード（UTF-8バイト配列）
+	 * @param identifier 通知の識別子
+	 * @param expiry 有効期限
+	 * @param priorityCode 優先度コード
+	 * @return 書き込んだバイト数
+	 */
+	static int encodeFrame(byte[] buf, int offset, byte[] tokenData, int tokenOffset, int tokenLength, byte[] payloadData, int identifier, int expiry, int priorityCode) {
+		int length = getFrameLength(tokenLength, payloadData.length);
+
+		int pos = offset;
+		// フレームヘッダ
+		buf[pos++] = (byte) COMMAND;
+		pos = putInt(buf, pos, length - (1 + 4));
+
+		// デバイストークン
+		buf[pos++] = 1;
+		pos = putShort(buf, pos, tokenLength);
+		System.arraycopy(tokenData, tokenOffset, buf, pos, tokenLength);
+		pos += tokenLength;
+
+		// ペイロード
+		buf[pos++] = 2;
+		pos = putShort(buf, pos, payloadData.length);
+		System.arraycopy(payloadData, 0, buf, pos, payloadData.length);
+		pos += payloadData.length;
+
+		// 通知の識別子
+		buf[pos++] = 3;
+		pos = putShort(buf, pos, 4);
+		pos = putInt(buf, pos, identifier);
+
+		// 有効期限
+		buf[pos++] = 4;
+		pos = putShort(buf, pos, 4);
+		pos = putInt(buf, pos, expiry);
+
+		// 優先度
+		buf[pos++] = 5;
+		pos = putShort(buf, pos, 1);
+		buf[pos++] = (byte) priorityCode;
+
+		return pos - offset;
+	}
+
+	/**
+	 * 2バイト（ビッグエンディアン）の書き込み
+	 * @param buf 書き込み先
+	 * @param pos 書き込み位置
+	 * @param v 値
+	 * @return 次の書き込み位置
+	 */
+	private static int putShort(byte[] buf, int pos, int v) {
+		buf[pos] = (byte) (v >>> 8);
+		buf[pos + 1] = (byte) v;
+		return pos + 2;
+	}
+
+	/**
+	 * 4バイト（ビッグエンディアン）の書き込み
+	 * @param buf 書き込み先
+	 * @param pos 書き込み位置
+	 * @param v 値
+	 * @return 次の書き込み位置
+	 */
+	private static int putInt(byte[] buf, int pos, int v) {
+		buf[pos] = (byte) (v >>> 24);
+		buf[pos + 1] = (byte) (v >>> 16);
+		buf[pos + 2] = (byte) (v >>> 8);
+		buf[pos + 3] = (byte) v;
+		return pos + 4;
+	}
 
-		ByteArrayOutputStream boas = new ByteArrayOutputStream();
-		DataOutputStream dos = new DataOutputStream(boas);
+	/**
+	 * 16進文字列のデバイストークンを変換
+	 * @param token 16進文字列
+	 * @return デバイストークン。変換できない場合は{@code null}
+	 */
+	private static ApnsDeviceToken toDeviceToken(String token) {
+		if (token == null) {
+			return null;
+		}
 		try {
-			// フレームデータの生成
-			int frameDataLength = 0;
-
-			// デバイストークン
-			int tokenCommand = 1;
-			byte[] tokenData = ApnsUtil.convertHexToBytes(token);
-			int tokenDataLength = tokenData.length;
-			frameDataLength += 1 + 2 + tokenDataLength;
-
-			// ペイロード
-			int payloadCommad = 2;
-			byte[] payloadData = ApnsUtil.convertStringToUTF8Bytes(payload);
-			int payloadDataLength = payloadData.length;
-			frameDataLength += 1 + 2 + payloadDataLength;
-
-			// 通知の識別子
-			int identifierCommad = 3;
-			int identifierData = this.identifier;
-			int identifierDataLength = 4;
-			frameDataLength += 1 + 2 + identifierDataLength;
-
-			// 有効期限
-			int expiryCommad = 4;
-			int expiryData = this.expiry;
-			int expiryDataLength = 4;
-			frameDataLength += 1 + 2 + expiryDataLength;
-
-			// 優先度
-			int priorityCommad = 5;
-			int priorityData = this.priority.getCode();
-			int priorityDataLength = 1;
-			frameDataLength += 1 + 2 + priorityDataLength;
-
-			// Streamに書き出し
-
-			dos.writeByte(command);
-			dos.writeInt(frameDataLength);
-
-			dos.writeByte(tokenCommand);
-			dos.writeShort(tokenDataLength);
-			dos.write(tokenData);
-
-			dos.writeByte(payloadCommad);
-			dos.writeShort(payloadDataLength);
-			dos.write(payloadData);
-
-			dos.writeByte(identifierCommad);
-			dos.writeShort(identifierDataLength);
-			dos.writeInt(identifierData);
-
-			dos.writeByte(expiryCommad);
-			dos.writeShort(expiryDataLength);
-			dos.writeInt(expiryData);
-
-			dos.writeByte(priorityCommad);
-			dos.writeShort(priorityDataLength);
-			dos.writeByte(priorityData);
-
-			notificationBytes = boas.toByteArray();
-		} catch (Exception e) {
-			logger.info("PUSH通知バイナリデータを生成できませんでした。", e);
-
-			notificationBytes = null;
-		} finally {
-			try {
-				dos.close();
-				boas.close();
-			} catch (IOException e) {
-			}
+			return ApnsDeviceToken.fromHex(token);
+		} catch (ApnsException e) {
+			logger.info("デバイストークンを変換できませんでした。token={}", token);
+			return null;
 		}
-		return notificationBytes;
 	}
 
 	/**
 	 * identifierの取得
 	 * @return インクリメントしたidentifier
 	 */
-	private synchronized int getSecId() {
-		nextId++;
-		return nextId;
+	static int nextIdentifier() {
+		return nextId.incrementAndGet();
 	}
 }
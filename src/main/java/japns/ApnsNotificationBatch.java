@@ -0,0 +1,712 @@
+package japns;
+
+import japns.ApnsNotification.Priority;
+import japns.ApnsNotification.PushStatus;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * PUSH通知バッチ
+ *
+ * <p>
+ * 大量のPUSH通知を、{@link ApnsNotification}オブジェクトを生成せずに管理します。<br>
+ * デバイストークン、識別子、有効期限、優先度、PUSHステータス、リトライ回数を
+ * 通知ごとのオブジェクトではなくプリミティブ型の配列にまとめて保持し、
+ * ペイロードは共有ペイロードテーブルのIndexで参照します。<br>
+ * 1件あたりのメモリ使用量はデバイストークン長＋約20バイトで、
+ * 件数が増えてもGCが走査するオブジェクト数は増えません。
+ * </p>
+ *
+ * <pre>
+ * ApnsNotificationBatch batch = new ApnsNotificationBatch(tokenCount);
+ * int payloadIndex = batch.addPayload(payload.getPayload());
+ * for (String token : tokenList) {
+ *     batch.add(token, payloadIndex);
+ * }
+ * ApnsResult result = apnsNotificationService.push(batch, threadCount);
+ * </pre>
+ *
+ * <p>
+ * 送信結果の件数は{@link ApnsResult}から、各通知の状態は{@link #getPushStatus(int)}などから取得します。
+ * このクラスはスレッドセーフではありません。送信中に通知を追加してはいけません。
+ * </p>
+ *
+ * @author T.Inukai
+ */
+public class ApnsNotificationBatch implements ApnsPushTarget {
+
+	/**
+	 * デフォルト初期容量
+	 */
+	private static final int DEFAULT_CAPACITY = 1024;
+
+	/**
+	 * デバイストークンの想定バイト数
+	 */
+	private static final int TOKEN_LENGTH = 32;
+
+	/**
+	 * PUSHステータス（ordinal→列挙子）
+	 */
+	private static final PushStatus[] PUSH_STATUSES = PushStatus.values();
+
+	/**
+	 * 件数
+	 */
+	private int size;
+
+	/**
+	 * デバイストークン（全通知分を連結）
+	 */
+	private byte[] tokens;
+	/**
+	 * デバイストークン開始位置（{@code tokenOffsets[i]}～{@code tokenOffsets[i + 1]}がi件目のデバイストークン）
+	 */
+	private int[] tokenOffsets;
+	/**
+	 * 通知の識別子
+	 */
+	private int[] identifiers;
+	/**
+	 * 有効期限
+	 */
+	private int[] expiries;
+	/**
+	 * 優先度コード
+	 */
+	private byte[] priorities;
+	/**
+	 * ペイロードテーブルのIndex
+	 */
+	private int[] payloadIndexes;
+	/**
+	 * PUSHステータス（ordinal）
+	 */
+	private byte[] pushStatuses;
+	/**
+	 * リトライ回数
+	 */
+	private byte[] retryCounts;
+
+	/**
+	 * ペイロードテーブル（UTF-8バイト配列）
+	 */
+	private final List<byte[]> payloads = new ArrayList<byte[]>();
+
+	/**
+	 * PUSH通知エラー情報（Key:Index）
+	 *
+	 * <p>
+	 * エラーは少数のため、エラーが発生した通知のみ保持します。
+	 * </p>
+	 */
+	private final Map<Integer, ApnsNotificationErrorResponse> errors = new HashMap<Integer, ApnsNotificationErrorResponse>();
+
+	/**
+	 * デフォルトの初期容量でインスタンスを生成します
+	 */
+	public ApnsNotificationBatch() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * 初期容量を指定してインスタンスを生成します
+	 * @param capacity 初期容量（通知件数）
+	 */
+	public ApnsNotificationBatch(int capacity) {
+		this(Math.max(capacity, 1) * TOKEN_LENGTH, capacity);
+	}
+
+	/**
+	 * 連結済みのデバイストークンを指定してインスタンスを生成します
+	 *
+	 * <p>
+	 * デバイストークンの配列はコピーせずに保持します（{@link ApnsPackedTokens}と共有します）。
+	 * 既存の通知のデバイストークンは変更されないため、共有しても問題ありません。
+	 * 全ての通知は同じペイロード、有効期限、優先度になります。
+	 * </p>
+	 *
+	 * @param packedTokens デバイストークン（{@code tokenLength}バイトずつ連結）
+	 * @param count 件数
+	 * @param tokenLength デバイストークンのバイト数
+	 * @param payload ペイロード
+	 * @param expiry 有効期限
+	 * @param priority 優先度
+	 * @return PUSH通知バッチ
+	 */
+	static ApnsNotificationBatch ofPackedTokens(byte[] packedTokens, int count, int tokenLength, ApnsEncodedPayload payload, int expiry, Priority priority) {
+		ApnsNotificationBatch batch = new ApnsNotificationBatch(0, count);
+		batch.tokens = packedTokens;
+		int payloadIndex = batch.addPayload(payload);
+		byte priorityCode = (byte) priority.getCode();
+		for (int i = 0; i < count; i++) {
+			batch.tokenOffsets[i + 1] = (i + 1) * tokenLength;
+			batch.identifiers[i] = ApnsNotification.nextIdentifier();
+			batch.expiries[i] = expiry;
+			batch.priorities[i] = priorityCode;
+			batch.payloadIndexes[i] = payloadIndex;
+			batch.pushStatuses[i] = (byte) PushStatus.NONE.ordinal();
+		}
+		batch.size = count;
+		return batch;
+	}
+
+	/**
+	 * デバイストークン配列の初期容量と通知件数の初期容量を指定してインスタンスを生成します
+	 * @param tokenCapacity デバイストークン配列の初期容量（バイト数）
+	 * @param capacity 初期容量（通知件数）
+	 */
+	private ApnsNotificationBatch(int tokenCapacity, int capacity) {
+		capacity = Math.max(capacity, 1);
+		tokens = new byte[tokenCapacity];
+		tokenOffsets = new int[capacity + 1];
+		identifiers = new int[capacity];
+		expiries = new int[capacity];
+		priorities = new byte[capacity];
+		payloadIndexes = new int[capacity];
+		pushStatuses = new byte[capacity];
+		retryCounts = new byte[capacity];
+	}
+
+	/**
+	 * ペイロードテーブルへの追加
+	 * @param payload ペイロード
+	 * @return ペイロードテーブルのIndex
+	 */
+	public int addPayload(String payload) {
+		if (payload == null) {
+			throw new ApnsException("ペイロードが指定されていません。");
+		}
+		return addPayload(ApnsUtil.convertStringToUTF8Bytes(payload));
+	}
+
+	/**
+	 * ペイロードテーブルへの追加
+	 * @param payload 生成済みペイロード。UTF-8バイト配列はコピーせずに共有されます
+	 * @return ペイロードテーブルのIndex
+	 */
+	public int addPayload(ApnsEncodedPayload payload) {
+		return addPayload(payload.getBytesUnsafe());
+	}
+
+	/**
+	 * ペイロードテーブルへの追加
+	 * @param payloadBytes ペイロード（UTF-8バイト配列）。コピーせずに保持されます
+	 * @return ペイロードテーブルのIndex
+	 */
+	public int addPayload(byte[] payloadBytes) {
+		if (payloadBytes == null) {
+			throw new ApnsException("ペイロードが指定されていません。");
+		}
+		payloads.add(payloadBytes);
+		return payloads.size() - 1;
+	}
+
+	/**
+	 * 通知の追加
+	 *
+	 * <p>
+	 * 有効期限は{@code Integer.MAX_VALUE}、優先度は{@link Priority#HIGH}になります。<br>
+	 * 16進文字列として不正なデバイストークンは、送信時にエラーとなります。
+	 * </p>
+	 *
+	 * @param token デバイストークン（16進文字列）
+	 * @param payloadIndex ペイロードテーブルのIndex
+	 * @return 追加した通知のIndex
+	 */
+	public int add(String token, int payloadIndex) {
+		return add(token, payloadIndex, Integer.MAX_VALUE, Priority.HIGH);
+	}
+
+	/**
+	 * 通知の追加
+	 *
+	 * <p>
+	 * 16進文字列として不正なデバイストークンは、送信時にエラーとなります。
+	 * </p>
+	 *
+	 * @param token デバイストークン（16進文字列）
+	 * @param payloadIndex ペイロードテーブルのIndex
+	 * @param expiry 有効期限
+	 * @param priority 優先度
+	 * @return 追加した通知のIndex
+	 */
+	public int add(String token, int payloadIndex, int expiry, Priority priority) {
+		byte[] tokenData;
+		try {
+			tokenData = ApnsUtil.convertHexToBytes(token);
+		} catch (RuntimeException e) {
+			tokenData = new byte[0];
+		}
+		return add(tokenData, 0, tokenData.length, payloadIndex, expiry, priority);
+	}
+
+	/**
+	 * 通知の追加
+	 * @param token デバイストークン
+	 * @param payloadIndex ペイロードテーブルのIndex
+	 * @param expiry 有効期限
+	 * @param priority 優先度
+	 * @return 追加した通知のIndex
+	 */
+	public int add(ApnsDeviceToken token, int payloadIndex, int expiry, Priority priority) {
+		byte[] tokenData = token.getBytesUnsafe();
+		return add(tokenData, 0, tokenData.length, payloadIndex, expiry, priority);
+	}
+
+	/**
+	 * 通知の追加
+	 * @param tokenData デバイストークンを含むbyte配列
+	 * @param tokenOffset デバイストークンの開始位置
+	 * @param tokenLength デバイストークンのバイト数
+	 * @param payloadIndex ペイロードテーブルのIndex
+	 * @param expiry 有効期限
+	 * @param priority 優先度
+	 * @return 追加した通知のIndex
+	 */
+	public int add(byte[] tokenData, int tokenOffset, int tokenLength, int payloadIndex, int expiry, Priority priority) {
+		if (payloadIndex < 0 || payloadIndex >= payloads.size()) {
+			throw new ApnsException("ペイロードテーブルのIndexが不正です。payloadIndex=" + payloadIndex);
+		}
+		ensureCapacity(size + 1);
+
+		int tokenStart = tokenOffsets[size];
+		ensureTokenCapacity(tokenStart + tokenLength);
+		System.arraycopy(tokenData, tokenOffset, tokens, tokenStart, tokenLength);
+		tokenOffsets[size + 1] = tokenStart + tokenLength;
+
+		identifiers[size] = ApnsNotification.nextIdentifier();
+		expiries[size] = expiry;
+		priorities[size] = (byte) priority.getCode();
+		payloadIndexes[size] = payloadIndex;
+		pushStatuses[size] = (byte) PushStatus.NONE.ordinal();
+		retryCounts[size] = 0;
+		return size++;
+	}
+
+	/**
+	 * 通知件数の取得
+	 * @return 通知件数
+	 */
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * デバイストークンの取得
+	 * @param idx Index
+	 * @return デバイストークン
+	 */
+	public ApnsDeviceToken getDeviceToken(int idx) {
+		checkIndex(idx);
+		return new ApnsDeviceToken(tokens, tokenOffsets[idx], tokenOffsets[idx + 1] - tokenOffsets[idx]);
+	}
+
+	/**
+	 * ペイロードの取得
+	 * @param idx Index
+	 * @return ペイロード
+	 */
+	public String getPayload(int idx) {
+		checkIndex(idx);
+		return ApnsUtil.convertUTF8BytesToString(payloads.get(payloadIndexes[idx]));
+	}
+
+	/**
+	 * ペイロードテーブルのIndexの取得
+	 * @param idx Index
+	 * @return ペイロードテーブルのIndex
+	 */
+	public int getPayloadIndex(int idx) {
+		checkIndex(idx);
+		return payloadIndexes[idx];
+	}
+
+	/**
+	 * 通知識別子の取得
+	 * @param idx Index
+	 * @return 通知識別子
+	 */
+	@Override
+	public int getIdentifier(int idx) {
+		checkIndex(idx);
+		return identifiers[idx];
+	}
+
+	/**
+	 * PUSHステータスの取得
+	 * @param idx Index
+	 * @return PUSHステータス
+	 */
+	@Override
+	public PushStatus getPushStatus(int idx) {
+		checkIndex(idx);
+		return PUSH_STATUSES[pushStatuses[idx]];
+	}
+
+	/**
+	 * リトライ回数の取得
+	 * @param idx Index
+	 * @return リトライ回数
+	 */
+	public int getRetryCount(int idx) {
+		checkIndex(idx);
+		return retryCounts[idx];
+	}
+
+	/**
+	 * PUSH通知エラー情報の取得
+	 * @param idx Index
+	 * @return PUSH通知エラー情報。エラー情報がない場合は{@code null}
+	 */
+	public synchronized ApnsNotificationErrorResponse getApnsNotificationErrorData(int idx) {
+		return errors.get(idx);
+	}
+
+	@Override
+	public int getNotificationLength(int idx) {
+		int tokenLength = tokenOffsets[idx + 1] - tokenOffsets[idx];
+		if (tokenLength == 0) {
+			return -1;
+		}
+		return ApnsNotification.getFrameLength(tokenLength, payloads.get(payloadIndexes[idx]).length);
+	}
+
+	@Override
+	public int getPayloadLength(int idx) {
+		return payloads.get(payloadIndexes[idx]).length;
+	}
+
+	@Override
+	public int encodeNotificationBytes(int idx, byte[] buf, int offset) {
+		int tokenOffset = tokenOffsets[idx];
+		return ApnsNotification.encodeFrame(buf, offset, tokens, tokenOffset, tokenOffsets[idx + 1] - tokenOffset,
+				payloads.get(payloadIndexes[idx]), identifiers[idx], expiries[idx], priorities[idx]);
+	}
+
+	@Override
+	public void setPushStatus(int idx, PushStatus pushStatus) {
+		pushStatuses[idx] = (byte) pushStatus.ordinal();
+	}
+
+	@Override
+	public int getAndAddRetryCount(int idx) {
+		int retryCount = retryCounts[idx] + 1;
+		// リトライ回数の上限はRETRY_COUNT程度のため、byteの範囲で飽和させる
+		retryCounts[idx] = (byte) Math.min(retryCount, Byte.MAX_VALUE);
+		return retryCount;
+	}
+
+	@Override
+	public synchronized void setApnsNotificationErrorData(int idx, ApnsNotificationErrorResponse apnsNotificationErrorResponse) {
+		errors.put(idx, apnsNotificationErrorResponse);
+	}
+
+	@Override
+	public String describe(int idx) {
+		return "index=" + idx + ", token=" + getDeviceToken(idx) + ", payload=" + getPayload(idx);
+	}
+
+	@Override
+	public void notifyResult(int idx, ApnsResultListener listener) {
+		listener.onBatchResult(this, idx);
+	}
+
+	@Override
+	public void collectResult(ApnsResult apnsResult) {
+		collectResult(apnsResult, 0, size);
+	}
+
+	/**
+	 * 指定範囲の送信結果の格納
+	 *
+	 * <p>
+	 * {@link ApnsNotification}のリストは生成せず、件数のみを格納します。
+	 * </p>
+	 *
+	 * @param apnsResult 格納先の送信結果
+	 * @param from 開始Index（含む）
+	 * @param to 終了Index（含まない）
+	 */
+	void collectResult(ApnsResult apnsResult, int from, int to) {
+		int noneCount = 0;
+		int doneCount = 0;
+		int errorCount = 0;
+		for (int i = from; i < to; i++) {
+			switch (PUSH_STATUSES[pushStatuses[i]]) {
+			case NONE:
+				noneCount++;
+				break;
+			case DONE:
+				doneCount++;
+				break;
+			case ERROR:
+				errorCount++;
+				break;
+			}
+		}
+		apnsResult.addCount(noneCount, doneCount, errorCount);
+		apnsResult.setNotificationBatch(this);
+	}
+
+	/**
+	 * デバイストークンのハッシュ値で分割した{@link ApnsPushTarget}の取得
+	 *
+	 * <p>
+	 * 同じデバイストークンの通知は必ず同じ分割先になり、分割先の中ではバッチの順序が保たれます。
+	 * 分割先はバッチのIndexのみを保持し、バッチはコピーされません。空の分割先は返却されません。
+	 * </p>
+	 *
+	 * @param count 分割数
+	 * @return 分割した送信対象
+	 */
+	List<ApnsPushTarget> partitionByToken(int count) {
+		count = Math.max(count, 1);
+		int[] partitions = new int[size];
+		int[] counts = new int[count];
+		for (int i = 0; i < size; i++) {
+			int p = ApnsUtil.partitionOf(tokenHash(i), count);
+			partitions[i] = p;
+			counts[p]++;
+		}
+		int[][] indexes = new int[count][];
+		for (int p = 0; p < count; p++) {
+			indexes[p] = new int[counts[p]];
+			counts[p] = 0;
+		}
+		for (int i = 0; i < size; i++) {
+			int p = partitions[i];
+			indexes[p][counts[p]++] = i;
+		}
+		List<ApnsPushTarget> result = new ArrayList<ApnsPushTarget>(count);
+		for (int p = 0; p < count; p++) {
+			if (indexes[p].length > 0) {
+				result.add(subset(indexes[p]));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * デバイストークンのハッシュ値の取得
+	 * @param idx Index
+	 * @return {@link ApnsDeviceToken#hashCode()}と同じ値
+	 */
+	private int tokenHash(int idx) {
+		int h = 1;
+		for (int i = tokenOffsets[idx]; i < tokenOffsets[idx + 1]; i++) {
+			h = 31 * h + tokens[i];
+		}
+		return h;
+	}
+
+	/**
+	 * 指定したIndexの通知を送信対象とする{@link ApnsPushTarget}の取得
+	 * @param indexes バッチのIndex（昇順）
+	 * @return 指定したIndexの送信対象
+	 */
+	private ApnsPushTarget subset(final int[] indexes) {
+		return new ApnsPushTarget() {
+
+			@Override
+			public int size() {
+				return indexes.length;
+			}
+
+			@Override
+			public int getIdentifier(int idx) {
+				return identifiers[indexes[idx]];
+			}
+
+			@Override
+			public int getNotificationLength(int idx) {
+				return ApnsNotificationBatch.this.getNotificationLength(indexes[idx]);
+			}
+
+			@Override
+			public int getPayloadLength(int idx) {
+				return ApnsNotificationBatch.this.getPayloadLength(indexes[idx]);
+			}
+
+			@Override
+			public int encodeNotificationBytes(int idx, byte[] buf, int offset) {
+				return ApnsNotificationBatch.this.encodeNotificationBytes(indexes[idx], buf, offset);
+			}
+
+			@Override
+			public PushStatus getPushStatus(int idx) {
+				return PUSH_STATUSES[pushStatuses[indexes[idx]]];
+			}
+
+			@Override
+			public void setPushStatus(int idx, PushStatus pushStatus) {
+				ApnsNotificationBatch.this.setPushStatus(indexes[idx], pushStatus);
+			}
+
+			@Override
+			public int getAndAddRetryCount(int idx) {
+				return ApnsNotificationBatch.this.getAndAddRetryCount(indexes[idx]);
+			}
+
+			@Override
+			public void setApnsNotificationErrorData(int idx, ApnsNotificationErrorResponse apnsNotificationErrorResponse) {
+				ApnsNotificationBatch.this.setApnsNotificationErrorData(indexes[idx], apnsNotificationErrorResponse);
+			}
+
+			@Override
+			public String describe(int idx) {
+				return ApnsNotificationBatch.this.describe(indexes[idx]);
+			}
+
+			@Override
+			public void notifyResult(int idx, ApnsResultListener listener) {
+				listener.onBatchResult(ApnsNotificationBatch.this, indexes[idx]);
+			}
+
+			@Override
+			public void collectResult(ApnsResult apnsResult) {
+				int noneCount = 0;
+				int doneCount = 0;
+				int errorCount = 0;
+				for (int i : indexes) {
+					switch (PUSH_STATUSES[pushStatuses[i]]) {
+					case NONE:
+						noneCount++;
+						break;
+					case DONE:
+						doneCount++;
+						break;
+					case ERROR:
+						errorCount++;
+						break;
+					}
+				}
+				apnsResult.addCount(noneCount, doneCount, errorCount);
+				apnsResult.setNotificationBatch(ApnsNotificationBatch.this);
+			}
+		};
+	}
+
+	/**
+	 * 指定範囲を送信対象とする{@link ApnsPushTarget}の取得
+	 *
+	 * <p>
+	 * マルチスレッド送信で、バッチをコピーせずに分割するために使用します。
+	 * </p>
+	 *
+	 * @param from 開始Index（含む）
+	 * @param to 終了Index（含まない）
+	 * @return 指定範囲の送信対象
+	 */
+	ApnsPushTarget range(final int from, final int to) {
+		if (from < 0 || to > size || from > to) {
+			throw new IndexOutOfBoundsException("from=" + from + ", to=" + to + ", size=" + size);
+		}
+		return new ApnsPushTarget() {
+
+			@Override
+			public int size() {
+				return to - from;
+			}
+
+			@Override
+			public int getIdentifier(int idx) {
+				return identifiers[from + idx];
+			}
+
+			@Override
+			public int getNotificationLength(int idx) {
+				return ApnsNotificationBatch.this.getNotificationLength(from + idx);
+			}
+
+			@Override
+			public int getPayloadLength(int idx) {
+				return ApnsNotificationBatch.this.getPayloadLength(from + idx);
+			}
+
+			@Override
+			public int encodeNotificationBytes(int idx, byte[] buf, int offset) {
+				return ApnsNotificationBatch.this.encodeNotificationBytes(from + idx, buf, offset);
+			}
+
+			@Override
+			public PushStatus getPushStatus(int idx) {
+				return PUSH_STATUSES[pushStatuses[from + idx]];
+			}
+
+			@Override
+			public void setPushStatus(int idx, PushStatus pushStatus) {
+				ApnsNotificationBatch.this.setPushStatus(from + idx, pushStatus);
+			}
+
+			@Override
+			public int getAndAddRetryCount(int idx) {
+				return ApnsNotificationBatch.this.getAndAddRetryCount(from + idx);
+			}
+
+			@Override
+			public void setApnsNotificationErrorData(int idx, ApnsNotificationErrorResponse apnsNotificationErrorResponse) {
+				ApnsNotificationBatch.this.setApnsNotificationErrorData(from + idx, apnsNotificationErrorResponse);
+			}
+
+			@Override
+			public String describe(int idx) {
+				return ApnsNotificationBatch.this.describe(from + idx);
+			}
+
+			@Override
+			public void notifyResult(int idx, ApnsResultListener listener) {
+				listener.onBatchResult(ApnsNotificationBatch.this, from + idx);
+			}
+
+			@Override
+			public void collectResult(ApnsResult apnsResult) {
+				ApnsNotificationBatch.this.collectResult(apnsResult, from, to);
+			}
+		};
+	}
+
+	/**
+	 * Indexの範囲チェック
+	 * @param idx Index
+	 */
+	private void checkIndex(int idx) {
+		if (idx < 0 || idx >= size) {
+			throw new IndexOutOfBoundsException("index=" + idx + ", size=" + size);
+		}
+	}
+
+	/**
+	 * 通知ごとの配列の容量確保
+	 * @param capacity 必要な容量
+	 */
+	private void ensureCapacity(int capacity) {
+		if (capacity <= identifiers.length) {
+			return;
+		}
+		int newCapacity = Math.max(capacity, identifiers.length + (identifiers.length >> 1));
+		tokenOffsets = Arrays.copyOf(tokenOffsets, newCapacity + 1);
+		identifiers = Arrays.copyOf(identifiers, newCapacity);
+		expiries = Arrays.copyOf(expiries, newCapacity);
+		priorities = Arrays.copyOf(priorities, newCapacity);
+		payloadIndexes = Arrays.copyOf(payloadIndexes, newCapacity);
+		pushStatuses = Arrays.copyOf(pushStatuses, newCapacity);
+		retryCounts = Arrays.copyOf(retryCounts, newCapacity);
+	}
+
+	/**
+	 * デバイストークン配列の容量確保
+	 * @param capacity 必要なバイト数
+	 */
+	private void ensureTokenCapacity(int capacity) {
+		if (capacity <= tokens.length) {
+			return;
+		}
+		tokens = Arrays.copyOf(tokens, Math.max(capacity, tokens.length + (tokens.length >> 1)));
+	}
+}
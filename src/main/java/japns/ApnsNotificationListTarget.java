@@ -0,0 +1,99 @@
+package japns;
+
+import japns.ApnsNotification.PushStatus;
+
+import java.util.List;
+
+/**
+ * {@link ApnsNotification}のリストを送信対象とする{@link ApnsPushTarget}
+ *
+ * @author T.Inukai
+ */
+class ApnsNotificationListTarget implements ApnsPushTarget {
+
+	/**
+	 * 送信データリスト
+	 */
+	private final List<ApnsNotification> apnsNotificationList;
+
+	/**
+	 * コンストラクタ
+	 * @param apnsNotificationList 送信データリスト
+	 */
+	ApnsNotificationListTarget(List<ApnsNotification> apnsNotificationList) {
+		this.apnsNotificationList = apnsNotificationList;
+	}
+
+	@Override
+	public int size() {
+		return apnsNotificationList.size();
+	}
+
+	@Override
+	public int getIdentifier(int idx) {
+		return apnsNotificationList.get(idx).getIdentifier();
+	}
+
+	@Override
+	public int getNotificationLength(int idx) {
+		return apnsNotificationList.get(idx).getNotificationLength();
+	}
+
+	@Override
+	public int getPayloadLength(int idx) {
+		return apnsNotificationList.get(idx).getPayloadLength();
+	}
+
+	@Override
+	public int encodeNotificationBytes(int idx, byte[] buf, int offset) {
+		return apnsNotificationList.get(idx).encodeNotificationBytes(buf, offset);
+	}
+
+	@Override
+	public PushStatus getPushStatus(int idx) {
+		return apnsNotificationList.get(idx).getPushStatus();
+	}
+
+	@Override
+	public void setPushStatus(int idx, PushStatus pushStatus) {
+		apnsNotificationList.get(idx).setPushStatus(pushStatus);
+	}
+
+	@Override
+	public int getAndAddRetryCount(int idx) {
+		return apnsNotificationList.get(idx).getAndAddRetryCount();
+	}
+
+	@Override
+	public void setApnsNotificationErrorData(int idx, ApnsNotificationErrorResponse apnsNotificationErrorResponse) {
+		apnsNotificationList.get(idx).setApnsNotificationErrorData(apnsNotificationErrorResponse);
+	}
+
+	@Override
+	public String describe(int idx) {
+		ApnsNotification apnsNotification = apnsNotificationList.get(idx);
+		return "token=" + apnsNotification.getToken() + ", payload=" + apnsNotification.getPayload();
+	}
+
+	@Override
+	public void notifyResult(int idx, ApnsResultListener listener) {
+		listener.onNotificationResult(apnsNotificationList.get(idx));
+	}
+
+	@Override
+	public void collectResult(ApnsResult apnsResult) {
+		for (ApnsNotification apnsNotification : apnsNotificationList) {
+			switch (apnsNotification.getPushStatus()) {
+			case NONE:
+				apnsResult.addNone(apnsNotification);
+				break;
+			case DONE:
+				apnsResult.addDone(apnsNotification);
+				break;
+			case ERROR:
+				apnsResult.addError(apnsNotification);
+				break;
+			}
+		}
+	}
+}
@@ -1,6 +1,9 @@
 package japns;
 
+import japns.ApnsEventRing.EventType;
 import japns.ApnsNotification.PushStatus;
+import japns.ApnsPushStatistics.ReconnectCause;
+import japns.ApnsResult.ResultMode;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -9,14 +12,14 @@ import java.net.Proxy;
 import java.net.Socket;
 import java.net.SocketException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
+import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
 
 import org.slf4j.Logger;
@@ -51,6 +54,10 @@ public class ApnsNotificationService {
 	 * 最大パケットサイズ
 	 */
 	private long maxPacket = DEFAULT_MAX_PACKET;
+	/**
+	 * 最大ペイロードサイズ
+	 */
+	private int maxPayloadSize = ApnsPayload.DEFAULT_MAX_PAYLOAD_SIZE;
 	/**
 	 * 製品フラグ
 	 */
@@ -73,6 +80,16 @@ public class ApnsNotificationService {
 	 */
 	private final SSLSocketFactory factory;
 
+	/**
+	 * ゲートウェイのホスト（nullの場合は製品フラグに応じたAPNsのホスト）
+	 */
+	private String gatewayHost;
+
+	/**
+	 * ゲートウェイのポート
+	 */
+	private int gatewayPort;
+
 	/**
 	 * PUSH通知ソケット
 	 */
@@ -83,19 +100,110 @@ public class ApnsNotificationService {
 	 */
 	private long packetSize = 0;
 
+	/**
+	 * 送信バッファの初期サイズ
+	 */
+	private static final int DEFAULT_FRAME_BUFFER_SIZE = 4096;
+
+	/**
+	 * 送信バッファ
+	 *
+	 * <p>
+	 * 通知バイナリデータの生成先として再利用します。不足する場合は拡張されます。
+	 * </p>
+	 */
+	private byte[] frameBuffer = new byte[DEFAULT_FRAME_BUFFER_SIZE];
+
 	/**
 	 * APNs入力Streamリーダー
 	 */
 	private ApnsInputMonitoringThread apnsInputMonitoringThread;
 
 	/**
-	 * 実行PUSH通知Map（Key:identifier, value:ApnsNotificationDataオブジェクト）
+	 * 現在のソケットで最初に送信した通知のIndex
+	 *
+	 * <p>
+	 * APNsのエラー通知で指定される識別子は、現在のソケットで送信した通知（Index {@code windowStart}以降）のいずれかです。
+	 * それより前の通知は再送対象にならないため、通知ごとの管理情報を保持しません。
+	 * </p>
+	 */
+	private int windowStart = 0;
+
+	/**
+	 * 送信結果の保持方法
+	 */
+	private ResultMode resultMode = ResultMode.FULL;
+
+	/**
+	 * 同じデバイストークンの通知を同じスレッドで送信するか
+	 */
+	private boolean tokenAffinity;
+
+	/**
+	 * 送信結果リスナ
+	 */
+	private ApnsResultListener resultListener;
+
+	/**
+	 * 送信結果リスナに通知済みの通知の件数（このIndexより前は通知済み）
+	 */
+	private int notifiedCount = 0;
+
+	/**
+	 * 送信統計（送信処理ごと。マルチスレッド送信では全スレッドで共有）
+	 */
+	private ApnsPushStatistics statistics = new ApnsPushStatistics();
+
+	/**
+	 * 計測
+	 */
+	private ApnsMetrics metrics = ApnsNoopMetrics.INSTANCE;
+
+	/**
+	 * レイテンシの計測
+	 */
+	private ApnsLatencyTracer latencyTracer;
+
+	/**
+	 * 送信処理の開始時刻（レイテンシの計測用）
 	 */
-	private Map<Integer, ApnsNotification> executeApnsNotificationMapIdentifier = new HashMap<Integer, ApnsNotification>();
+	private long submitNanos;
+
 	/**
-	 * 実行PUSH通知Map（Key:ApnsNotificationDataオブジェクト, value:notificationInfoList内Index）
+	 * 書き込み完了時刻の初期容量（件数。2のべき乗）
 	 */
-	private Map<ApnsNotification, Integer> executeIndexMapApnsNotification = new HashMap<ApnsNotification, Integer>();
+	private static final int INITIAL_WRITE_END_CAPACITY = 1024;
+
+	/**
+	 * 状態が確定していない通知の書き込み完了時刻（レイテンシの計測時のみ）
+	 *
+	 * <p>
+	 * Index {@link #notifiedCount}以降の通知の書き込み完了時刻を、Indexを容量で割った余りの位置に保持するリングバッファです。
+	 * 状態が確定して読み出した位置は0に戻します。容量は未確定の通知の件数が超えた場合のみ2倍に拡張し、送信処理をまたいで再利用します。<br>
+	 * 未確定の通知は再接続（エラー通知、最大パケットサイズ超過）で確定するため、最大パケットサイズを設定すると容量の上限になります。
+	 * </p>
+	 */
+	private long[] writeEndNanos;
+
+	/**
+	 * 送信イベントの記録先
+	 */
+	private ApnsEventRing eventRing = new ApnsEventRing();
+
+	/**
+	 * 接続IDの採番
+	 */
+	private static final AtomicLong nextConnectionId = new AtomicLong();
+
+	/**
+	 * 現在の接続の接続ID（JFRのイベントで接続を識別するため）
+	 */
+	private long connectionId;
+
+	/**
+	 * 次の再接続の原因
+	 */
+	private ReconnectCause pendingReconnectCause;
 
 	/**
 	 * 製品フラグ、証明書ファイル、証明書パスワードを指定してインスタンスを生成します
@@ -133,6 +241,31 @@ public class ApnsNotificationService {
 
 	}
 
+	/**
+	 * 製品フラグ、ソケットファクトリ、SOCKSプロキシ、PUSH通信間隔（ミリ秒）、最大パケットサイズを指定してインスタンスを生成します
+	 *
+	 * <p>
+	 * 複数のサービスで{@link SSLSocketFactory}を共有する場合や、テスト用のゲートウェイに接続する場合に使用します。<br>
+	 * {@link ApnsCertificateWatcher}を指定すると、証明書が差し替えられた後の接続から新しい証明書を使用します。
+	 * 送信中の接続は、通常の再接続（エラー通知、最大パケットサイズ超過）またはPUSH通知の終了まで使用し続けます。
+	 * </p>
+	 *
+	 * @param isProduction 製品フラグ
+	 * @param factory ソケットファクトリ（{@link ApnsUtil#getSSLSocketFactory(String, String)}などで生成したもの）
+	 * @param socksProxy SOCKSプロキシ
+	 * @param pushIntervalMs PUSH通信間隔（ミリ秒）
+	 * @param maxPacket 最大パケットサイズ
+	 */
+	public ApnsNotificationService(boolean isProduction, SSLSocketFactory factory, Proxy socksProxy, int pushIntervalMs, long maxPacket) {
+		this.isProduction = isProduction;
+		this.certFileName = null;
+		this.certPassword = null;
+		this.socksProxy = socksProxy;
+		this.pushIntervalMs = pushIntervalMs;
+		this.maxPacket = maxPacket;
+		this.factory = factory;
+	}
+
 	/**
 	 * PUSH通知（1件送信）
 	 *
@@ -140,13 +273,13 @@ public class ApnsNotificationService {
 	 * @return 送信結果
 	 */
 	public synchronized ApnsResult push(ApnsNotification apnsNotification) {
-		logger.info("PUSH通知（1件送信） - 開始");
+		logger.debug("PUSH通知（1件送信） - 開始");
 		try {
 			List<ApnsNotification> apnsNotificationList = new ArrayList<ApnsNotification>();
 			apnsNotificationList.add(apnsNotification);
 			return push(apnsNotificationList);
 		} finally {
-			logger.info("PUSH通知（1件送信） - 終了");
+			logger.debug("PUSH通知（1件送信） - 終了");
 		}
 	}
 
@@ -154,7 +287,9 @@ public class ApnsNotificationService {
 	 * PUSH通知（マルチスレッド送信）
 	 *
 	 * <p>
-	 * 分割単位ごとにマルチスレッドでPUSH通知します。<br>
+	 * 送信データリストをスレッド数で分割し、マルチスレッドでPUSH通知します。<br>
+	 * 送信データはコピーされず、各スレッドは分割したビューを送信します。
+	 * {@link #setTokenAffinity(boolean)}を有効にした場合は、同じデバイストークンの通知を同じスレッドで送信します。
 	 * </p>
 	 *
 	 * @param apnsNotificationList 送信データリスト
@@ -162,30 +297,97 @@ public class ApnsNotificationService {
 	 * @return 送信結果
 	 */
 	public synchronized ApnsResult push(List<ApnsNotification> apnsNotificationList, int threadCount) {
-		logger.info("PUSH通知（マルチスレッド送信） - 開始");
-
-		// 送信完了を待機して各スレッドの送信結果を取得
-		ApnsResult apnsResult = new ApnsResult();
-
+		logger.debug("PUSH通知（マルチスレッド送信） - 開始");
 		try {
 			// スレッド数が1の場合はシングルスレッド送信
 			if (threadCount == 1) {
-				logger.info("スレッド数が1のため、シングルスレッドで実行します。");
+				logger.debug("スレッド数が1のため、シングルスレッドで実行します。");
 				return push(apnsNotificationList);
 			}
 
 			// Listをスレッド数に応じて分割
-			List<List<ApnsNotification>> apnsNotificationListList = ApnsUtil.splitList(apnsNotificationList, threadCount);
+			List<List<ApnsNotification>> apnsNotificationListList = tokenAffinity
+					? ApnsUtil.partitionByToken(apnsNotificationList, threadCount)
+					: ApnsUtil.partitionList(apnsNotificationList, threadCount);
+			if (apnsNotificationListList.size() <= 1) {
+				return push(apnsNotificationList);
+			}
+			List<ApnsPushTarget> targetList = new ArrayList<ApnsPushTarget>();
+			for (List<ApnsNotification> apnsNotificationThreadList : apnsNotificationListList) {
+				targetList.add(new ApnsNotificationListTarget(apnsNotificationThreadList));
+			}
+			return pushParallel(targetList);
+		} finally {
+			logger.debug("PUSH通知（マルチスレッド送信） - 終了");
+		}
+	}
 
-			logger.info("スレッド数:{}", apnsNotificationListList.size());
+	/**
+	 * PUSH通知バッチ（マルチスレッド送信）
+	 *
+	 * <p>
+	 * PUSH通知バッチをスレッド数で連続した範囲に分割し、マルチスレッドでPUSH通知します。<br>
+	 * バッチはコピーされず、各スレッドは担当範囲の通知の状態を直接更新します。
+	 * {@link #setTokenAffinity(boolean)}を有効にした場合は、デバイストークンのハッシュ値で分割します。
+	 * </p>
+	 *
+	 * @param notificationBatch PUSH通知バッチ
+	 * @param threadCount スレッド数
+	 * @return 送信結果
+	 */
+	public synchronized ApnsResult push(ApnsNotificationBatch notificationBatch, int threadCount) {
+		logger.debug("PUSH通知バッチ（マルチスレッド送信） - 開始");
+		try {
+			int size = notificationBatch.size();
+			int count = Math.max(Math.min(threadCount, size), 1);
+			// スレッド数が1の場合はシングルスレッド送信
+			if (count == 1) {
+				return push(notificationBatch);
+			}
+
+			// スレッド数に応じて分割
+			List<ApnsPushTarget> targetList;
+			if (tokenAffinity) {
+				targetList = notificationBatch.partitionByToken(count);
+				if (targetList.size() == 1) {
+					return push(notificationBatch);
+				}
+			} else {
+				targetList = new ArrayList<ApnsPushTarget>();
+				for (int i = 0; i < count; i++) {
+					targetList.add(notificationBatch.range((int) ((long) size * i / count), (int) ((long) size * (i + 1) / count)));
+				}
+			}
+			return pushParallel(targetList);
+		} finally {
+			logger.debug("PUSH通知バッチ（マルチスレッド送信） - 終了");
+		}
+	}
+
+	/**
+	 * 送信対象ごとにマルチスレッドでPUSH通知
+	 * @param targetList 送信対象リスト（1スレッドにつき1つ）
+	 * @return 送信結果
+	 */
+	private ApnsResult pushParallel(List<ApnsPushTarget> targetList) {
+		// 送信完了を待機して各スレッドの送信結果を取得
+		ApnsResult apnsResult = new ApnsResult(resultMode);
+		// 全スレッドで共有する送信統計
+		ApnsPushStatistics sharedStatistics = new ApnsPushStatistics();
+		apnsResult.setStatistics(sharedStatistics);
+		long submitNanos = System.nanoTime();
+
+		try {
+			logger.debug("スレッド数:{}", targetList.size());
 
 			// 非同期処理用ExecutorService生成
-			ExecutorService service = Executors.newFixedThreadPool(apnsNotificationListList.size());
+			ExecutorService service = Executors.newFixedThreadPool(targetList.size());
 			List<Future<ApnsResult>> futureList = new ArrayList<Future<ApnsResult>>();
 
 			// 非同期PUSH送信
-			for (List<ApnsNotification> apnsNotificationThreadList : apnsNotificationListList) {
-				ApnsNotificationPushCaller caller = new ApnsNotificationPushCaller(apnsNotificationThreadList);
+			for (int i = 0; i < targetList.size(); i++) {
+				ApnsEventRing laneEventRing = eventRing != null ? eventRing.lane(i) : null;
+				ApnsNotificationPushCaller caller = new ApnsNotificationPushCaller(targetList.get(i), sharedStatistics, submitNanos, laneEventRing);
 				Future<ApnsResult> future = service.submit(caller);
 				futureList.add(future);
 			}
@@ -208,18 +410,12 @@ public class ApnsNotificationService {
 					apnsResult.setException(r.getException());
 				}
 
-				// 未実行リスト
-				apnsResult.addAllNone(r.getNoneList());
-				// 実行済リスト
-				apnsResult.addAllDone(r.getDoneList());
-				// エラーリスト
-				apnsResult.addAllError(r.getErrorList());
+				// 未実行・実行済・エラーの各リストと件数
+				apnsResult.merge(r);
 			}
 		} catch (Exception e) {
 			apnsResult.setException(e);
 			apnsResult.setSuccess(false);
-		} finally {
-			logger.info("PUSH通知（マルチスレッド送信） - 終了");
 		}
 		return apnsResult;
 	}
@@ -231,59 +427,132 @@ public class ApnsNotificationService {
 	 * @return 送信結果
 	 */
 	public synchronized ApnsResult push(List<ApnsNotification> apnsNotificationList) {
-		logger.info("PUSH通知 - 開始");
+		return push(new ApnsNotificationListTarget(apnsNotificationList), new ApnsPushStatistics(), System.nanoTime());
+	}
+
+	/**
+	 * PUSH通知バッチ（複数件送信）
+	 *
+	 * <p>
+	 * 送信結果には件数のみが格納されます。各通知の状態は{@link ApnsNotificationBatch}から取得してください。
+	 * </p>
+	 *
+	 * @param notificationBatch PUSH通知バッチ
+	 * @return 送信結果
+	 */
+	public synchronized ApnsResult push(ApnsNotificationBatch notificationBatch) {
+		return push((ApnsPushTarget) notificationBatch, new ApnsPushStatistics(), System.nanoTime());
+	}
+
+	/**
+	 * PUSH通知（送信対象指定）
+	 *
+	 * @param target 送信対象
+	 * @param statistics 送信統計の集計先
+	 * @param submitNanos 送信処理の開始時刻（{@link System#nanoTime()}）
+	 * @return 送信結果
+	 */
+	private synchronized ApnsResult push(ApnsPushTarget target, ApnsPushStatistics statistics, long submitNanos) {
+		logger.debug("PUSH通知 - 開始");
+		this.statistics = statistics;
+		this.submitNanos = submitNanos;
+		if (latencyTracer == null) {
+			this.writeEndNanos = null;
+		} else if (writeEndNanos == null) {
+			this.writeEndNanos = new long[INITIAL_WRITE_END_CAPACITY];
+		}
+		if (eventRing != null) {
+			eventRing.record(EventType.PUSH_START, 0, target.size(), 0);
+		}
+		ApnsResult apnsResult = null;
 		try {
 
 			// Socketの生成
-			reconnectNotificationSocket();
+			notifiedCount = 0;
+			reconnectNotificationSocket(0);
 
 			// 通知リスト読み込み位置
 			int pos = 0;
 			packetSize = 0;
 			while (true) {
 				int i;
-				for (i = pos; i < apnsNotificationList.size(); i++) {
+				for (i = pos; i < target.size(); i++) {
 					pos = i;
 
-					// 通知情報取り出し
-					ApnsNotification apnsNotification = apnsNotificationList.get(i);
-
-					// 実行Mapに格納
-					executeApnsNotificationMapIdentifier.put(apnsNotification.getIdentifier(), apnsNotification);
-					executeIndexMapApnsNotification.put(apnsNotification, i);
-
-					logger.trace("deviceToken:{}, payload:{}", apnsNotification.getToken(), apnsNotification.getPayload());
+					if (logger.isTraceEnabled()) {
+						logger.trace("{}", target.describe(i));
+					}
 
-					// バイナリデータに変換
-					byte[] pushData = apnsNotification.getNotificationBytes();
-					if (pushData == null) {
-						logger.info("PUSHデータを生成できませんでした。token={}, payload={}", apnsNotification.getToken(), apnsNotification.getPayload());
+					// バイナリデータ長を取得
+					int pushDataLength = target.getNotificationLength(i);
+					// APNsは最大ペイロードサイズを超える通知にエラー通知を返して切断するため、送信しない
+					int payloadLength = target.getPayloadLength(i);
+					boolean oversized = payloadLength > maxPayloadSize;
+					if (pushDataLength < 0 || oversized) {
+						if (eventRing != null) {
+							eventRing.record(EventType.SKIP, connectionId, i, oversized ? payloadLength : 0);
+						}
+						if (logger.isDebugEnabled()) {
+							if (oversized) {
+								logger.debug("最大ペイロードサイズを超えています。size={}, max={}, {}", payloadLength, maxPayloadSize, target.describe(i));
+							} else {
+								logger.debug("PUSHデータを生成できませんでした。{}", target.describe(i));
+							}
+						}
 						// エラーにステータス変更
-						apnsNotification.setPushStatus(PushStatus.ERROR);
+						target.setPushStatus(i, PushStatus.ERROR);
 						// 読み飛ばし
+						pos = i + 1;
 						continue;
 					}
 
 					// パケット量制限を超える場合は再接続
 					if (this.maxPacket != 0 && this.packetSize > this.maxPacket) {
-						reconnectNotificationSocket();
+						notifyResults(target, i);
+						recordReconnect(ReconnectCause.MAX_PACKET);
+						reconnectNotificationSocket(i);
 					}
 
 					try {
+						// 送信バッファにバイナリデータを生成
+						if (frameBuffer.length < pushDataLength) {
+							frameBuffer = new byte[pushDataLength];
+						}
+						long encodeStart = writeEndNanos == null ? 0 : System.nanoTime();
+						target.encodeNotificationBytes(i, frameBuffer, 0);
+
 						// PUSH通知
+						Object jfrEvent = ApnsJfr.ENABLED ? ApnsJfr.RECORDER.beginWrite() : null;
+						long writeStart = System.nanoTime();
 						OutputStream os = apnsNotificationSocket.getOutputStream();
-						os.write(pushData);
+						os.write(frameBuffer, 0, pushDataLength);
 						os.flush();
+						long writeEnd = System.nanoTime();
+						metrics.notificationWritten(pushDataLength, writeEnd - writeStart);
+						if (writeEndNanos != null) {
+							latencyTracer.recordWrite(submitNanos, encodeStart, writeStart, writeEnd);
+							recordWriteEnd(i, writeEnd);
+						}
+						if (eventRing != null) {
+							eventRing.record(EventType.WRITE, connectionId, i, pushDataLength);
+						}
+						if (jfrEvent != null) {
+							ApnsJfr.RECORDER.endWrite(jfrEvent, connectionId, target.getIdentifier(i), pushDataLength);
+						}
 
 						// パケット量加算
-						packetSize += pushData.length;
+						packetSize += pushDataLength;
 
 						// 実行済にステータス設定
-						apnsNotification.setPushStatus(PushStatus.DONE);
+						target.setPushStatus(i, PushStatus.DONE);
 					} catch (IOException e) {
 						// OutputStream書き込みエラー
+						if (eventRing != null) {
+							eventRing.record(EventType.WRITE_ERROR, connectionId, i, 0);
+						}
 						logger.debug("APNs通知情報送信エラー。リトライを試行します。", e);
-						pos = processPushError(i, apnsNotificationList);
+						pos = processPushError(i, target);
+						notifyResults(target, pos);
 						// forループを抜けてリトライ
 						break;
 					}
@@ -293,7 +562,8 @@ public class ApnsNotificationService {
 
 					// エラー確認
 					if (apnsInputMonitoringThread.hasError()) {
-						pos = processPushError(i, apnsNotificationList);
+						pos = processPushError(i, target);
+						notifyResults(target, pos);
 						// forループを抜けてリトライ
 						break;
 					}
@@ -301,7 +571,7 @@ public class ApnsNotificationService {
 				}
 
 				// 終端まで達していない場合は残りを処理
-				if (pos < apnsNotificationList.size()) {
+				if (pos < target.size()) {
 					continue;
 				}
 
@@ -310,7 +580,8 @@ public class ApnsNotificationService {
 
 				// エラー確認
 				if (apnsInputMonitoringThread.hasError()) {
-					pos = processPushError(i, apnsNotificationList);
+					pos = processPushError(i, target);
+					notifyResults(target, pos);
 					// リトライ
 					continue;
 				}
@@ -318,31 +589,130 @@ public class ApnsNotificationService {
 				break;
 			}
 
-			return createApnsSendResult(apnsNotificationList, true, null);
+			apnsResult = createApnsSendResult(target, true, null);
+			return apnsResult;
 		} catch (Exception e) {
-			logger.error("PUSH通知処理中にException発生。", e);
-			return createApnsSendResult(apnsNotificationList, false, e);
+			if (eventRing != null) {
+				logger.error("PUSH通知処理中にException発生。送信イベント:\n{}", eventRing.dump(), e);
+			} else {
+				logger.error("PUSH通知処理中にException発生。", e);
+			}
+			apnsResult = createApnsSendResult(target, false, e);
+			return apnsResult;
 		} finally {
-			ApnsUtil.close(apnsNotificationSocket);
-			logger.info("PUSH通知 - 終了");
+			closeNotificationSocket();
+			notifyResults(target, target.size());
+			if (apnsResult != null) {
+				if (eventRing != null) {
+					eventRing.record(EventType.PUSH_END, connectionId, apnsResult.getDoneCount(), apnsResult.getErrorCount());
+				}
+				logger.info("PUSH通知 - 終了 実行済:{}, エラー:{}, 未実行:{}, 統計:{}",
+						apnsResult.getDoneCount(), apnsResult.getErrorCount(), apnsResult.getNoneCount(), statistics);
+			}
+		}
+	}
+
+	/**
+	 * 送信結果リスナへの通知
+	 *
+	 * <p>
+	 * 通知済みの位置から指定されたIndexの直前までの通知を、送信結果リスナに通知します。<br>
+	 * 再接続後の送信開始位置より前の通知は、APNsのエラー通知で状態が変わることがないため確定しています。
+	 * </p>
+	 *
+	 * @param target 送信対象
+	 * @param to 状態が確定した範囲の終了Index（含まない）
+	 */
+	private void notifyResults(ApnsPushTarget target, int to) {
+		if (writeEndNanos != null) {
+			// 状態が確定した通知の確定待ち時間を記録
+			// 容量を超える位置の通知は、この送信処理で書き込まれていない
+			long now = System.nanoTime();
+			int mask = writeEndNanos.length - 1;
+			int end = (int) Math.min(to, (long) notifiedCount + writeEndNanos.length);
+			for (int i = notifiedCount; i < end; i++) {
+				long writeEnd = writeEndNanos[i & mask];
+				if (writeEnd != 0) {
+					writeEndNanos[i & mask] = 0;
+					if (target.getPushStatus(i) == PushStatus.DONE) {
+						latencyTracer.recordConfirm(submitNanos, writeEnd, now);
+					}
+				}
+			}
+		}
+		if (resultListener == null) {
+			notifiedCount = Math.max(notifiedCount, to);
+			return;
 		}
+		for (int i = notifiedCount; i < to; i++) {
+			try {
+				target.notifyResult(i, resultListener);
+			} catch (RuntimeException e) {
+				logger.info("送信結果リスナで例外が発生しました。", e);
+			}
+		}
+		notifiedCount = Math.max(notifiedCount, to);
+	}
+
+	/**
+	 * 書き込み完了時刻の記録
+	 *
+	 * <p>
+	 * 未確定の通知の件数が容量を超える場合は、容量を2倍ずつ拡張して未確定の範囲を移し替えます。
+	 * </p>
+	 *
+	 * @param idx 通知のIndex
+	 * @param writeEnd 書き込み完了時刻
+	 */
+	private void recordWriteEnd(int idx, long writeEnd) {
+		int window = idx - notifiedCount + 1;
+		if (window > writeEndNanos.length) {
+			int capacity = writeEndNanos.length;
+			while (capacity < window) {
+				capacity <<= 1;
+			}
+			long[] grown = new long[capacity];
+			int oldMask = writeEndNanos.length - 1;
+			for (int i = notifiedCount; i < idx; i++) {
+				grown[i & (capacity - 1)] = writeEndNanos[i & oldMask];
+			}
+			writeEndNanos = grown;
+		}
+		writeEndNanos[idx & (writeEndNanos.length - 1)] = writeEnd;
 	}
 
 	/**
 	 * ソケットの再接続
+	 * @param nextIdx 再接続後に最初に送信する通知のIndex
 	 */
-	private synchronized void reconnectNotificationSocket() {
+	private synchronized void reconnectNotificationSocket(int nextIdx) {
 		apnsInputMonitoringThread = null;
 
+		// 再送対象の範囲を更新
+		windowStart = nextIdx;
+
 		// 既存の接続をクローズ
-		ApnsUtil.close(apnsNotificationSocket);
+		closeNotificationSocket();
+
+		if (ApnsJfr.ENABLED && pendingReconnectCause != null) {
+			ApnsJfr.RECORDER.reconnect(connectionId, pendingReconnectCause.name(), nextIdx, packetSize);
+		}
+		pendingReconnectCause = null;
 
 		// パケット送信量をリセット
 		packetSize = 0;
 
 		// Socket取得
 		apnsNotificationSocket = null;
-		apnsNotificationSocket = ApnsUtil.createAPNSGatewaySocket(isProduction, factory, socksProxy);
+		long connectStart = System.nanoTime();
+		Socket socket = createGatewaySocket();
+		connectionId = nextConnectionId.incrementAndGet();
+		startHandshake(socket);
+		apnsNotificationSocket = socket;
+		metrics.connected(System.nanoTime() - connectStart);
+		if (eventRing != null) {
+			eventRing.record(EventType.CONNECT, connectionId, nextIdx, 0);
+		}
 
 		// APNsからの入力待ちスレッドを開始
 		try {
@@ -354,33 +724,111 @@ public class ApnsNotificationService {
 		logger.debug("APNsへのSocket通信を構築または再構築しました。");
 	}
 
+	/**
+	 * ゲートウェイ接続用Socket生成
+	 * @return ゲートウェイ接続用Socket
+	 */
+	private Socket createGatewaySocket() {
+		if (gatewayHost == null) {
+			return ApnsUtil.createAPNSGatewaySocket(isProduction, factory, socksProxy);
+		}
+		return ApnsUtil.createSocket(factory, socksProxy, gatewayHost, gatewayPort);
+	}
+
+	/**
+	 * TLSハンドシェイクの開始
+	 *
+	 * <p>
+	 * ハンドシェイクの時間を接続時間として計測するため、最初の書き込みを待たずにハンドシェイクします。
+	 * SSLSocket以外の場合は何もしません。
+	 * </p>
+	 *
+	 * @param socket ソケット
+	 */
+	private void startHandshake(Socket socket) {
+		if (!(socket instanceof SSLSocket)) {
+			return;
+		}
+		Object jfrEvent = ApnsJfr.ENABLED ? ApnsJfr.RECORDER.beginHandshake() : null;
+		boolean success = false;
+		try {
+			((SSLSocket) socket).startHandshake();
+			success = true;
+		} catch (IOException e) {
+			ApnsUtil.close(socket);
+			throw new ApnsException("TLSハンドシェイクに失敗しました。", e);
+		} finally {
+			if (jfrEvent != null) {
+				ApnsJfr.RECORDER.endHandshake(jfrEvent, connectionId, success);
+			}
+		}
+	}
+
+	/**
+	 * PUSH通知ソケットのクローズ
+	 */
+	private void closeNotificationSocket() {
+		if (ApnsUtil.close(apnsNotificationSocket)) {
+			metrics.disconnected();
+		}
+	}
+
+	/**
+	 * 再接続の記録
+	 * @param cause 再接続の原因
+	 */
+	private void recordReconnect(ReconnectCause cause) {
+		pendingReconnectCause = cause;
+		statistics.recordReconnect(cause);
+		metrics.reconnected(cause);
+	}
+
+	/**
+	 * 再送の記録
+	 * @param from 再送を開始するIndex
+	 * @param count 再送する通知の件数
+	 */
+	private void recordResend(int from, int count) {
+		if (eventRing != null && count > 0) {
+			eventRing.record(EventType.RESEND, connectionId, from, count);
+		}
+	}
+
 	/**
 	 * PUSH通知エラー発生時処理
 	 * @param idx エラー特定時に処理中の notificationInfoList のIndex
-	 * @param apnsNotificationList
+	 * @param target 送信対象
 	 * @return 次に処理すべき notificationInfoList のIndex
 	 */
-	private synchronized int processPushError(int idx, List<ApnsNotification> apnsNotificationList) {
-		ApnsNotification apnsNotification = null;
+	private synchronized int processPushError(int idx, ApnsPushTarget target) {
+		// エラー対象の通知のIndex
+		int idxTarget = -1;
 
 		// 次回実行Idx
 		int nextIdx = idx;
+
+		// JFRのイベント用
+		Object jfrEvent = ApnsJfr.ENABLED ? ApnsJfr.RECORDER.beginError() : null;
+		int status = -1;
+		int errorIdentifier = 0;
+		int resendCount = 0;
 		try {
 			// APNsエラー通知チェック
 			if (!apnsInputMonitoringThread.hasError()) {
 				// APNsエラー通知無し
-				apnsNotification = apnsNotificationList.get(idx);
-				if (apnsNotification != null) {
+				recordReconnect(ReconnectCause.WRITE_ERROR);
+				if (idx < target.size()) {
+					idxTarget = idx;
 					// リトライ回数を加算して取得
-					int retryCount = apnsNotification.getAndAddRetryCount();
+					int retryCount = target.getAndAddRetryCount(idx);
 
 					if (retryCount > RETRY_COUNT) {
 						// リトライ回数オーバーの場合はエラー扱い
-						apnsNotification.setPushStatus(PushStatus.ERROR);
+						target.setPushStatus(idx, PushStatus.ERROR);
 						nextIdx = idx + 1;
 					} else {
 						// リトライ回数以内の場合は未実行扱い
-						apnsNotification.setPushStatus(PushStatus.NONE);
+						target.setPushStatus(idx, PushStatus.NONE);
 						nextIdx = idx;
 					}
 				}
@@ -389,53 +837,115 @@ public class ApnsNotificationService {
 
 				// エラーデータ取得
 				ApnsNotificationErrorResponse apnsNotificationErrorResponse = apnsInputMonitoringThread.getApnsNotificationErrorResponse();
-				logger.debug("APNsサーバエラー:{}", apnsNotificationErrorResponse.toString());
+				logger.debug("APNsサーバエラー:{}", apnsNotificationErrorResponse);
 
 				// APNsのエラー通知でない場合（APNs待受スレッドで例外発生）
 				if (!apnsNotificationErrorResponse.isApnsErrorNotification()) {
+					recordReconnect(ReconnectCause.READ_ERROR);
 					// 原因がよくわからないので、ここで処理終了する
 					throw new ApnsException(apnsNotificationErrorResponse.getException());
 				}
 
-				// エラーとなったPUSH通知情報を取得
-				apnsNotification = executeApnsNotificationMapIdentifier.get(apnsNotificationErrorResponse.getIdentifier());
+				status = apnsNotificationErrorResponse.getStatus();
+				errorIdentifier = apnsNotificationErrorResponse.getIdentifier();
+				statistics.recordStatus(apnsNotificationErrorResponse.getStatus());
+				if (eventRing != null) {
+					eventRing.record(EventType.ERROR_RESPONSE, connectionId, errorIdentifier, status);
+				}
+				metrics.errorResponseReceived(apnsNotificationErrorResponse.getStatus());
+
 				// エラーとなったPUSH通知情報のIndexを取得
-				int idxError = executeIndexMapApnsNotification.get(apnsNotification);
+				int idxError = findIndex(apnsNotificationErrorResponse.getIdentifier(), idx, target);
+				if (idxError < 0) {
+					// 現在のソケットで送信した通知に該当しない場合は、現在のソケットで送信した通知を全て再送する
+					if (eventRing != null) {
+						eventRing.record(EventType.UNKNOWN_IDENTIFIER, connectionId, errorIdentifier, 0);
+					}
+					logger.debug("エラー通知の識別子に該当する通知がありません。identifier={}", errorIdentifier);
+					recordReconnect(ReconnectCause.UNKNOWN_IDENTIFIER);
+					if (windowStart >= target.size() || target.getAndAddRetryCount(windowStart) > RETRY_COUNT) {
+						throw new ApnsException("エラー通知の識別子に該当する通知がありません。identifier=" + apnsNotificationErrorResponse.getIdentifier());
+					}
+					for (int i = windowStart; i < idx + 1 && i < target.size(); i++) {
+						if (target.getPushStatus(i) == PushStatus.DONE) {
+							target.setPushStatus(i, PushStatus.NONE);
+							resendCount++;
+						}
+					}
+					statistics.addResendCount(resendCount);
+					recordResend(windowStart, resendCount);
+					nextIdx = windowStart;
+					return nextIdx;
+				}
+				idxTarget = idxError;
 				// リトライカウントを加算して取得
-				int retryCount = apnsNotification.getAndAddRetryCount();
+				int retryCount = target.getAndAddRetryCount(idxError);
 
 				// 次回実行Indexを特定
 				// APNsステータスが10以外の場合（PUSH通知データの誤り）・・エラーとなった通知のidentifierがAPNsから渡される
 				// APNsステータスが10の場合（APNsシャットダウン）・・・・・最後に正常終了した通知のidentifierがAPNsから渡される
 				// いずれの場合も次のindexから再開する
 				nextIdx = idxError + 1;
+				recordReconnect(apnsNotificationErrorResponse.getStatus() == 10 ? ReconnectCause.SHUTDOWN : ReconnectCause.ERROR_RESPONSE);
 
 				// 10:シャットダウン以外（通知内容に誤りがある）または同一の通知のリトライ回をオーバーした場合
 				if (apnsNotificationErrorResponse.getStatus() != 10 || retryCount > RETRY_COUNT) {
 					// エラーデータ格納
-					apnsNotification.setApnsNotificationErrorData(apnsNotificationErrorResponse);
+					target.setApnsNotificationErrorData(idxError, apnsNotificationErrorResponse);
 					// ステータスをエラーにする
-					apnsNotificationList.get(idxError).setPushStatus(PushStatus.ERROR);
+					target.setPushStatus(idxError, PushStatus.ERROR);
 				}
 
 				// エラーの通知を送信してからAPNsエラー通知を受け取るまでに送信した通知のステータスを未実行に戻す
 				// ※エラー対象以降の通知はAPNs側で破棄されている
 				for (int i = nextIdx; i < idx + 1; i++) {
-					if (i < apnsNotificationList.size()) {
-						apnsNotificationList.get(i).setPushStatus(PushStatus.NONE);
+					if (i < target.size()) {
+						target.setPushStatus(i, PushStatus.NONE);
 					}
 				}
+				resendCount = Math.max(Math.min(idx + 1, target.size()) - nextIdx, 0);
+				statistics.addResendCount(resendCount);
+				recordResend(nextIdx, resendCount);
 			}
 
-			logger.debug("エラー発生:token={}, payload={}", apnsNotification.getToken(), apnsNotification.getPayload());
+			if (logger.isDebugEnabled() && idxTarget >= 0) {
+				logger.debug("エラー発生:{}", target.describe(idxTarget));
+			}
 			logger.debug("エラー発生Inex:{}, 次回実行Index:{}", idx, nextIdx);
 			return nextIdx;
 		} finally {
+			if (jfrEvent != null) {
+				int last = Math.min(idx, target.size() - 1);
+				ApnsJfr.RECORDER.endError(jfrEvent, connectionId, status, errorIdentifier,
+						windowStart <= last ? target.getIdentifier(windowStart) : 0, last >= 0 ? target.getIdentifier(last) : 0, resendCount);
+			}
 			// ソケットを再接続
-			reconnectNotificationSocket();
+			reconnectNotificationSocket(nextIdx);
 		}
 	}
 
+	/**
+	 * 識別子に該当する通知のIndexを検索
+	 *
+	 * <p>
+	 * 現在のソケットで送信した通知の範囲を、最後に送信した通知から遡って検索します。
+	 * </p>
+	 *
+	 * @param identifier 識別子
+	 * @param idx 最後に送信した通知のIndex
+	 * @param target 送信対象
+	 * @return 該当する通知のIndex。該当する通知がない場合は-1
+	 */
+	private int findIndex(int identifier, int idx, ApnsPushTarget target) {
+		int last = Math.min(idx, target.size() - 1);
+		for (int i = last; i >= windowStart; i--) {
+			if (target.getIdentifier(i) == identifier) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
 	/**
 	 * APNs通知結果生成
 	 *
@@ -443,26 +953,15 @@ public class ApnsNotificationService {
 	 * 状態に応じた送信結果を生成して返却します
 	 * </p>
 	 *
-	 * @param apnsNotificationList 送信データ
+	 * @param target 送信対象
 	 * @param isSuccess 正常フラグ
 	 * @param e 例外
 	 * @return 送信結果
 	 */
-	private ApnsResult createApnsSendResult(List<ApnsNotification> apnsNotificationList, boolean isSuccess, Exception e) {
-		ApnsResult apnsResult = new ApnsResult();
-		for (ApnsNotification apnsNotification : apnsNotificationList) {
-			switch (apnsNotification.getPushStatus()) {
-			case NONE:
-				apnsResult.addNone(apnsNotification);
-				break;
-			case DONE:
-				apnsResult.addDone(apnsNotification);
-				break;
-			case ERROR:
-				apnsResult.addError(apnsNotification);
-				break;
-			}
-		}
+	private ApnsResult createApnsSendResult(ApnsPushTarget target, boolean isSuccess, Exception e) {
+		ApnsResult apnsResult = new ApnsResult(resultMode);
+		target.collectResult(apnsResult);
+		apnsResult.setStatistics(statistics);
 		apnsResult.setSuccess(isSuccess);
 		apnsResult.setException(e);
 		return apnsResult;
@@ -484,6 +983,20 @@ public class ApnsNotificationService {
 		this.maxPacket = maxPacket;
 	}
 
+	/**
+	 * 最大ペイロードサイズの設定
+	 *
+	 * <p>
+	 * ペイロードがこのサイズを超える通知は送信せず、エラーにします。
+	 * デフォルトは{@link ApnsPayload#DEFAULT_MAX_PAYLOAD_SIZE}です。
+	 * </p>
+	 *
+	 * @param maxPayloadSize 最大ペイロードサイズ（バイト）
+	 */
+	public void setMaxPayloadSize(int maxPayloadSize) {
+		this.maxPayloadSize = maxPayloadSize;
+	}
+
 	/**
 	 * SOCKSプロキシの設定
 	 * @param socksProxy
@@ -492,6 +1005,108 @@ public class ApnsNotificationService {
 		this.socksProxy = socksProxy;
 	}
 
+	/**
+	 * ゲートウェイの設定
+	 *
+	 * <p>
+	 * 負荷試験用のゲートウェイなど、APNs以外に接続する場合に設定します。
+	 * </p>
+	 *
+	 * @param host ホスト。{@code null}の場合は製品フラグに応じたAPNsのゲートウェイに接続する
+	 * @param port ポート
+	 */
+	public void setGateway(String host, int port) {
+		this.gatewayHost = host;
+		this.gatewayPort = port;
+	}
+
+	/**
+	 * 送信結果の保持方法の設定
+	 *
+	 * <p>
+	 * 大量の通知を送信する場合は{@link ResultMode#SUMMARY}を設定すると、
+	 * 送信結果には件数とエラーリストのみが保持され、メモリ使用量がエラーの件数に比例するようになります。
+	 * </p>
+	 *
+	 * @param resultMode 送信結果の保持方法
+	 */
+	public void setResultMode(ResultMode resultMode) {
+		this.resultMode = resultMode;
+	}
+
+	/**
+	 * デバイストークンによるスレッド割り当ての設定
+	 *
+	 * <p>
+	 * 有効にすると、マルチスレッド送信で同じデバイストークンの通知を同じスレッド（接続）で、元の順序のまま送信します。
+	 * 無効の場合は連続した範囲で分割するため、同じデバイストークンの通知が複数の接続に分かれ、到着順序は保証されません。<br>
+	 * デバイストークンの偏りによっては、スレッドごとの件数が均等になりません。
+	 * </p>
+	 *
+	 * @param tokenAffinity 同じデバイストークンを同じスレッドで送信する場合はtrue
+	 */
+	public void setTokenAffinity(boolean tokenAffinity) {
+		this.tokenAffinity = tokenAffinity;
+	}
+
+	/**
+	 * 計測の設定
+	 *
+	 * <p>
+	 * マルチスレッド送信では、全てのスレッドで同じインスタンスが使用されます。
+	 * </p>
+	 *
+	 * @param metrics 計測。{@code null}の場合は計測しない
+	 */
+	public void setMetrics(ApnsMetrics metrics) {
+		this.metrics = metrics == null ? ApnsNoopMetrics.INSTANCE : metrics;
+	}
+
+	/**
+	 * レイテンシの計測の設定
+	 *
+	 * <p>
+	 * マルチスレッド送信では、全てのスレッドで同じインスタンスが使用されます。
+	 * </p>
+	 *
+	 * @param latencyTracer レイテンシの計測。{@code null}の場合は計測しない
+	 */
+	public void setLatencyTracer(ApnsLatencyTracer latencyTracer) {
+		this.latencyTracer = latencyTracer;
+	}
+
+	/**
+	 * 送信イベントの記録先の設定
+	 *
+	 * <p>
+	 * デフォルトでは{@link ApnsEventRing#DEFAULT_CAPACITY}件を記録するインスタンスが設定されています。
+	 * マルチスレッド送信では、各スレッドは{@link ApnsEventRing#lane(int)}で取得したスレッドごとのリングバッファに記録し、
+	 * 設定したインスタンスの{@link ApnsEventRing#dump()}で全スレッドのイベントが時刻順に出力されます。<br>
+	 * 1つのインスタンスに同時に記録できるのは1スレッドのみのため、同時に送信する複数のインスタンスで共有しないでください。
+	 * </p>
+	 *
+	 * @param eventRing 送信イベントの記録先。{@code null}の場合は記録しない
+	 */
+	public void setEventRing(ApnsEventRing eventRing) {
+		this.eventRing = eventRing;
+	}
+
+	/**
+	 * 送信イベントの記録先の取得
+	 * @return 送信イベントの記録先
+	 */
+	public ApnsEventRing getEventRing() {
+		return eventRing;
+	}
+
+	/**
+	 * 送信結果リスナの設定
+	 * @param resultListener 送信結果リスナ。{@code null}の場合は通知しない
+	 */
+	public void setResultListener(ApnsResultListener resultListener) {
+		this.resultListener = resultListener;
+	}
+
 	/**
 	 * APNs入力モニタリングスレッド
 	 * @author T.Inukai
@@ -566,27 +1181,43 @@ public class ApnsNotificationService {
 
 		// PUSH送信クラス
 		private ApnsNotificationService apnsNotificationService;
-		// PUSH送信データ
-		private List<ApnsNotification> apnsNotificationList;
+		// PUSH送信対象
+		private ApnsPushTarget target;
+		// 送信統計
+		private ApnsPushStatistics statistics;
+		// 送信処理の開始時刻
+		private long submitNanos;
 
 		/**
 		 * コンストラクタ
-		 * @param apnsNotificationList
+		 * @param target 送信対象
+		 * @param statistics 全スレッドで共有する送信統計
+		 * @param submitNanos 送信処理の開始時刻
+		 * @param eventRing このスレッドの送信イベントの記録先
 		 */
-		public ApnsNotificationPushCaller(List<ApnsNotification> apnsNotificationList) {
+		public ApnsNotificationPushCaller(ApnsPushTarget target, ApnsPushStatistics statistics, long submitNanos, ApnsEventRing eventRing) {
 			// 送信インスタンス生成
-			this.apnsNotificationService = new ApnsNotificationService(isProduction, certFileName, certPassword, socksProxy, pushIntervalMs, maxPacket);
-			// 対象リスト格納
-			this.apnsNotificationList = apnsNotificationList;
+			this.apnsNotificationService = new ApnsNotificationService(isProduction, factory, socksProxy, pushIntervalMs, maxPacket);
+			this.apnsNotificationService.setGateway(gatewayHost, gatewayPort);
+			this.apnsNotificationService.setMaxPayloadSize(maxPayloadSize);
+			this.apnsNotificationService.setResultMode(resultMode);
+			this.apnsNotificationService.setResultListener(resultListener);
+			this.apnsNotificationService.setMetrics(metrics);
+			this.apnsNotificationService.setLatencyTracer(latencyTracer);
+			this.apnsNotificationService.setEventRing(eventRing);
+			// 送信対象格納
+			this.target = target;
+			this.statistics = statistics;
+			this.submitNanos = submitNanos;
 		}
 
 		@Override
 		public ApnsResult call() throws Exception {
 			// 通知処理実行
 			try {
-				return this.apnsNotificationService.push(this.apnsNotificationList);
+				return this.apnsNotificationService.push(this.target, this.statistics, this.submitNanos);
 			} catch (Exception e) {
-				return this.apnsNotificationService.createApnsSendResult(apnsNotificationList, false, e);
+				return this.apnsNotificationService.createApnsSendResult(target, false, e);
 			}
 		}
 
@@ -0,0 +1,147 @@
+package japns;
+
+import japns.ApnsNotification.Priority;
+
+/**
+ * 連結済みデバイストークン
+ *
+ * <p>
+ * 同じバイト数のデバイストークンを、1つのbyte配列に連結して保持します。<br>
+ * デバイストークンごとのオブジェクトを生成しないため、大量のデバイストークンを少ないメモリで保持できます。
+ * {@link ApnsTokenFileLoader}で読み込んだ結果として生成され、形式が不正だった行の情報も保持します。
+ * </p>
+ *
+ * @author T.Inukai
+ */
+public final class ApnsPackedTokens {
+
+	/**
+	 * デバイストークン（{@link #tokenLength}バイトずつ連結）
+	 */
+	private final byte[] tokens;
+
+	/**
+	 * 件数
+	 */
+	private final int size;
+
+	/**
+	 * デバイストークンのバイト数
+	 */
+	private final int tokenLength;
+
+	/**
+	 * 形式が不正だった行の数
+	 */
+	private final long malformedLineCount;
+
+	/**
+	 * 形式が不正だった行の行番号（先頭から上限件数まで）
+	 */
+	private final long[] malformedLines;
+
+	/**
+	 * コンストラクタ
+	 * @param tokens デバイストークン（コピーせずに保持）
+	 * @param size 件数
+	 * @param tokenLength デバイストークンのバイト数
+	 * @param malformedLineCount 形式が不正だった行の数
+	 * @param malformedLines 形式が不正だった行の行番号（コピーせずに保持）
+	 */
+	ApnsPackedTokens(byte[] tokens, int size, int tokenLength, long malformedLineCount, long[] malformedLines) {
+		this.tokens = tokens;
+		this.size = size;
+		this.tokenLength = tokenLength;
+		this.malformedLineCount = malformedLineCount;
+		this.malformedLines = malformedLines;
+	}
+
+	/**
+	 * 件数の取得
+	 * @return デバイストークンの件数
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * デバイストークンのバイト数の取得
+	 * @return デバイストークンのバイト数
+	 */
+	public int getTokenLength() {
+		return tokenLength;
+	}
+
+	/**
+	 * デバイストークンのコピー
+	 * @param idx Index
+	 * @param buf コピー先
+	 * @param offset コピー先の開始位置
+	 */
+	public void copyToken(int idx, byte[] buf, int offset) {
+		checkIndex(idx);
+		System.arraycopy(tokens, idx * tokenLength, buf, offset, tokenLength);
+	}
+
+	/**
+	 * デバイストークンの取得
+	 * @param idx Index
+	 * @return デバイストークン
+	 */
+	public ApnsDeviceToken getDeviceToken(int idx) {
+		checkIndex(idx);
+		return new ApnsDeviceToken(tokens, idx * tokenLength, tokenLength);
+	}
+
+	/**
+	 * 形式が不正だった行の数の取得
+	 * @return 形式が不正だった行の数
+	 */
+	public long getMalformedLineCount() {
+		return malformedLineCount;
+	}
+
+	/**
+	 * 形式が不正だった行の行番号の取得
+	 *
+	 * <p>
+	 * 行番号は1から始まります。{@link ApnsTokenFileLoader#setMaxReportedMalformedLines(int)}の件数までを、先頭から順に返却します。
+	 * </p>
+	 *
+	 * @return 形式が不正だった行の行番号
+	 */
+	public long[] getMalformedLines() {
+		return malformedLines.clone();
+	}
+
+	/**
+	 * 全てのデバイストークンに同じペイロードを送信するPUSH通知バッチの生成
+	 *
+	 * <p>
+	 * デバイストークンの配列はコピーせずにバッチと共有されます。
+	 * </p>
+	 *
+	 * @param payload ペイロード
+	 * @param expiry 有効期限
+	 * @param priority 優先度
+	 * @return PUSH通知バッチ
+	 */
+	public ApnsNotificationBatch toNotificationBatch(ApnsEncodedPayload payload, int expiry, Priority priority) {
+		return ApnsNotificationBatch.ofPackedTokens(tokens, size, tokenLength, payload, expiry, priority);
+	}
+
+	/**
+	 * Indexの範囲チェック
+	 * @param idx Index
+	 */
+	private void checkIndex(int idx) {
+		if (idx < 0 || idx >= size) {
+			throw new IndexOutOfBoundsException("index=" + idx + ", size=" + size);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "{size:" + size + ",tokenLength:" + tokenLength + ",malformedLineCount:" + malformedLineCount + "}";
+	}
+}
@@ -1,8 +1,13 @@
 package japns;
 
-import java.util.HashMap;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 /**
@@ -11,7 +16,14 @@ import com.fasterxml.jackson.databind.ObjectMapper;
  * <p>
  * 各種setメソッドでペイロードの各項目を設定し、<br>
  * {@link #getPayload()}でペイロード文字列を取得できます。<br>
- * {@link #getPayloadBytes()}でByte配列のペイロードを取得することもできます。
+ * {@link #getPayloadBytes()}でByte配列のペイロードを取得することもできます。<br>
+ * 同じペイロードを複数の通知で使用する場合は、{@link #build()}で生成済みペイロードを取得して共有してください。
+ * </p>
+ *
+ * <p>
+ * ペイロードは中間の{@code Map}を経由せず、ストリーミングでUTF-8のJSONとして直接生成されます。<br>
+ * 送信先ごとにペイロードを生成する場合は、{@link #reset()}で1つのインスタンスを再利用することで、
+ * 生成用バッファも再利用されます。このクラスはスレッドセーフではありません。
  * </p>
  *
  * @author T.Inukai
@@ -20,19 +32,98 @@ public class ApnsPayload {
 
 	private static ObjectMapper mapper = new ObjectMapper();
 
-	private Map<String, Object> root;
-	private Map<String, Object> aps;
-	private Map<String, Object> customAlert;
+	/** JSON生成用ファクトリ（カスタムフィールドの値は{@link #mapper}でシリアライズ） */
+	private static JsonFactory factory = mapper.getFactory();
+
+	/** 生成用バッファの初期サイズ */
+	private static final int DEFAULT_BUFFER_SIZE = 256;
+
+	/**
+	 * デフォルト最大ペイロードサイズ（バイト）
+	 *
+	 * <p>
+	 * バイナリインターフェースでAPNsが受け付けるペイロードの最大サイズです。
+	 * </p>
+	 */
+	public static final int DEFAULT_MAX_PAYLOAD_SIZE = 2048;
+
+	/** 切り詰め時に付加する省略記号 */
+	private static final String ELLIPSIS = "\u2026";
+
+	/** aps辞書 badge */
+	private Integer badge;
+	/** aps辞書 sound */
+	private String sound;
+	/** aps辞書 content-available */
+	private boolean contentAvailable;
+
+	/** alert辞書 title */
+	private String title;
+	/** alert辞書 body */
+	private String body;
+	/** alert辞書 title-loc-key */
+	private String titleLocKey;
+	/** alert辞書 title-loc-args */
+	private String[] titleLocArgs;
+	/** alert辞書 action-loc-key */
+	private String actionLocKey;
+	/** alert辞書 loc-key */
+	private String locKey;
+	/** alert辞書 loc-args */
+	private String[] locArgs;
+	/** alert辞書 launch-image */
+	private String launchImage;
+
+	/** カスタムフィールド（設定された場合のみ生成） */
+	private Map<String, Object> customFields;
+
+	/** 最大ペイロードサイズ（バイト） */
+	private int maxPayloadSize = DEFAULT_MAX_PAYLOAD_SIZE;
+	/** 最大ペイロードサイズを超える場合にalert本文を切り詰めるか */
+	private boolean truncateAlertBody;
+
+	/** alert本文のエスケープ用バッファ（再利用） */
+	private byte[] bodyBuffer;
+	/** 直前に書き出したalert本文のバイト数 */
+	private int bodyLength;
+	/** 直前の生成でalert本文を切り詰めたか */
+	private boolean bodyTruncated;
+
+	/** 生成済みペイロード（項目の設定でクリア） */
+	private ApnsEncodedPayload encoded;
+
+	/** 生成用バッファ（生成のたびにリセットして再利用） */
+	private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(DEFAULT_BUFFER_SIZE);
 
 	/**
 	 * コンストラクタ
 	 */
 	public ApnsPayload() {
-		root = new HashMap<String, Object>();
-		aps = new HashMap<String, Object>();
-		customAlert = new HashMap<String, Object>();
+	}
 
-		root.put("aps", aps);
+	/**
+	 * 設定内容のクリア
+	 *
+	 * <p>
+	 * 全ての項目を未設定の状態に戻します。生成用バッファは再利用されます。
+	 * </p>
+	 */
+	public void reset() {
+		badge = null;
+		sound = null;
+		contentAvailable = false;
+		title = null;
+		body = null;
+		titleLocKey = null;
+		titleLocArgs = null;
+		actionLocKey = null;
+		locKey = null;
+		locArgs = null;
+		launchImage = null;
+		if (customFields != null) {
+			customFields.clear();
+		}
+		encoded = null;
 	}
 
 	/**
@@ -47,7 +138,8 @@ public class ApnsPayload {
 	 * @param n {@code badge}に設定する値
 	 */
 	public void setBadge(int n) {
-		aps.put("badge", n);
+		badge = n;
+		encoded = null;
 	}
 
 	/**
@@ -63,7 +155,8 @@ public class ApnsPayload {
 	 * @param s {@code sound}に設定する値
 	 */
 	public void setSound(String s) {
-		aps.put("sound", s);
+		sound = s;
+		encoded = null;
 	}
 
 	/**
@@ -77,13 +170,8 @@ public class ApnsPayload {
 	 * @param contentAvilable {@code sound}に設定する値
 	 */
 	public void setContentAvailable(boolean contentAvilable) {
-		if (contentAvilable) {
-			aps.put("content-available", 1);
-		} else {
-			if (aps.containsKey("content-available")) {
-				aps.remove("content-available");
-			}
-		}
+		contentAvailable = contentAvilable;
+		encoded = null;
 	}
 
 	/**
@@ -98,7 +186,8 @@ public class ApnsPayload {
 	 * @param title {@code sound}に設定する値
 	 */
 	public void setTitle(String title) {
-		customAlert.put("title", title);
+		this.title = title;
+		encoded = null;
 	}
 
 	/**
@@ -115,7 +204,8 @@ public class ApnsPayload {
 	 * @param s PUSHメッセージ
 	 */
 	public void setAlertBody(String s) {
-		customAlert.put("body", s);
+		body = s;
+		encoded = null;
 	}
 
 	/**
@@ -130,7 +220,8 @@ public class ApnsPayload {
 	 * @param s {@code title-loc-key}に設定する値
 	 */
 	public void setTitleLocKey(String s) {
-		customAlert.put("title-loc-key", s);
+		titleLocKey = s;
+		encoded = null;
 	}
 
 	/**
@@ -143,7 +234,8 @@ public class ApnsPayload {
 	 * @param s {@code title-loc-args}に設定する値
 	 */
 	public void setTitleLocArgs(String... s) {
-		customAlert.put("title-loc-args", s);
+		titleLocArgs = s;
+		encoded = null;
 	}
 
 	/**
@@ -158,7 +250,8 @@ public class ApnsPayload {
 	 * @param s "action-loc-key"に設定する値
 	 */
 	public void setActionLocKey(String s) {
-		customAlert.put("action-loc-key", s);
+		actionLocKey = s;
+		encoded = null;
 	}
 
 	/**
@@ -174,7 +267,8 @@ public class ApnsPayload {
 	 * @param s {@code loc-key}に設定する値
 	 */
 	public void setLocKey(String s) {
-		customAlert.put("loc-key", s);
+		locKey = s;
+		encoded = null;
 	}
 
 	/**
@@ -187,7 +281,8 @@ public class ApnsPayload {
 	 * @param s {@code loc-args}に設定する値
 	 */
 	public void setLocArgs(String... s) {
-		customAlert.put("loc-args", s);
+		locArgs = s;
+		encoded = null;
 	}
 
 	/**
@@ -206,7 +301,8 @@ public class ApnsPayload {
 	 * @param s {@code launch-image}に設定する値
 	 */
 	public void setLaunchImage(String s) {
-		customAlert.put("launch-image", s);
+		launchImage = s;
+		encoded = null;
 	}
 
 	/**
@@ -221,7 +317,8 @@ public class ApnsPayload {
 	 * @param value 値
 	 */
 	public void putCustomField(String key, Object value) {
-		root.put(key, value);
+		getCustomFields().put(key, value);
+		encoded = null;
 	}
 
 	/**
@@ -235,48 +332,306 @@ public class ApnsPayload {
 	 * @param values カスタムフィールドMap
 	 */
 	public void putCustomFields(Map<String, ? extends Object> values) {
-		root.putAll(values);
+		getCustomFields().putAll(values);
+		encoded = null;
+	}
+
+	/**
+	 * 最大ペイロードサイズの設定
+	 *
+	 * <p>
+	 * このサイズを超えるペイロードは生成できません（{@link #build()}は{@link ApnsException}をスローします）。
+	 * {@link #setTruncateAlertBody(boolean)}で切り詰めを有効にした場合は、alert本文を切り詰めてこのサイズに収めます。
+	 * デフォルトは{@link #DEFAULT_MAX_PAYLOAD_SIZE}です。
+	 * </p>
+	 *
+	 * @param maxPayloadSize 最大ペイロードサイズ（UTF-8のバイト数）
+	 */
+	public void setMaxPayloadSize(int maxPayloadSize) {
+		this.maxPayloadSize = maxPayloadSize;
+		encoded = null;
+	}
+
+	/**
+	 * 最大ペイロードサイズの取得
+	 * @return 最大ペイロードサイズ（UTF-8のバイト数）
+	 */
+	public int getMaxPayloadSize() {
+		return maxPayloadSize;
+	}
+
+	/**
+	 * alert本文の切り詰めの設定
+	 *
+	 * <p>
+	 * {@code true}の場合、ペイロードが最大ペイロードサイズを超えるときは、
+	 * PUSHメッセージ（alert本文）を文字の境界で切り詰めて末尾に省略記号（…）を付加し、最大ペイロードサイズに収めます。<br>
+	 * alert本文以外の項目だけで最大ペイロードサイズを超える場合は、ペイロードを生成できません（{@link #getPayload()}は{@code null}を返します）。
+	 * 設定したalert本文自体は変更されません。
+	 * </p>
+	 *
+	 * @param truncateAlertBody 切り詰める場合は{@code true}
+	 */
+	public void setTruncateAlertBody(boolean truncateAlertBody) {
+		this.truncateAlertBody = truncateAlertBody;
+		encoded = null;
+	}
+
+	/**
+	 * ペイロードサイズの取得
+	 *
+	 * <p>
+	 * alert本文の切り詰めが有効な場合は、切り詰め後のサイズを返します。
+	 * </p>
+	 *
+	 * @return ペイロードのUTF-8のバイト数。生成できない場合は-1
+	 */
+	public int getPayloadSize() {
+		ApnsEncodedPayload encodedPayload = buildOrNull();
+		return encodedPayload == null ? -1 : encodedPayload.length();
+	}
+
+	/**
+	 * 生成済みペイロードの取得
+	 *
+	 * <p>
+	 * ペイロードは最初の呼び出しで一度だけシリアライズされ、項目を変更するまでは同じインスタンスが返却されます。<br>
+	 * 返却された{@link ApnsEncodedPayload}は不変で、複数の{@link ApnsNotification}で共有できます。
+	 * {@link #putCustomField(String, Object)}で設定した値を後から直接変更した場合は、変更は反映されません。
+	 * </p>
+	 *
+	 * @return 生成済みペイロード
+	 * @throws ApnsException ペイロードを生成できない場合、または、切り詰めても最大ペイロードサイズを超える場合
+	 */
+	public ApnsEncodedPayload build() {
+		if (encoded == null) {
+			try {
+				writePayload();
+			} catch (IOException e) {
+				throw new ApnsException("ペイロードの生成に失敗しました。", e);
+			}
+			encoded = ApnsEncodedPayload.wrap(buffer.toByteArray());
+		}
+		return encoded;
+	}
+
+	/**
+	 * 直前の{@link #build()}でalert本文を切り詰めたかどうか
+	 * @return 切り詰めた場合はtrue
+	 */
+	boolean isAlertBodyTruncated() {
+		return bodyTruncated;
 	}
 
 	/**
 	 * ペイロードの取得
-	 * @return ペイロード文字列
+	 * @return ペイロード文字列。生成できない場合は{@code null}
 	 */
 	public String getPayload() {
+		ApnsEncodedPayload encodedPayload = buildOrNull();
+		return encodedPayload == null ? null : encodedPayload.getPayload();
+	}
+
+	/**
+	 * ペイロードバイトデータ取得
+	 * @return ペイロードデータ。生成できない場合は{@code null}
+	 */
+	public byte[] getPayloadBytes() {
+		ApnsEncodedPayload encodedPayload = buildOrNull();
+		return encodedPayload == null ? null : encodedPayload.getBytes();
+	}
+
+	/**
+	 * 生成済みペイロードの取得（生成できない場合は{@code null}）
+	 * @return 生成済みペイロード。生成できない場合は{@code null}
+	 */
+	private ApnsEncodedPayload buildOrNull() {
 		try {
-			adjustCustomAlert();
-			return mapper.writeValueAsString(root);
+			return build();
 		} catch (Exception e) {
 			return null;
 		}
 	}
 
 	/**
-	 * ペイロードバイトデータ取得
-	 * @return ペイロードデータ
+	 * カスタムフィールドMapの取得（未生成の場合は生成）
+	 * @return カスタムフィールドMap
 	 */
-	public byte[] getPayloadBytes() {
-		return ApnsUtil.convertStringToUTF8Bytes(getPayload());
+	private Map<String, Object> getCustomFields() {
+		if (customFields == null) {
+			customFields = new LinkedHashMap<String, Object>();
+		}
+		return customFields;
+	}
+
+	/**
+	 * 生成用バッファにペイロードを書き出す
+	 *
+	 * <p>
+	 * alert本文の切り詰めが有効で最大ペイロードサイズを超える場合は、
+	 * alert本文以外のバイト数から本文に使えるバイト数を求め、本文を1回の走査で切り詰めて書き出し直します。
+	 * </p>
+	 *
+	 * @throws IOException JSONの生成に失敗した場合
+	 * @throws ApnsException 最大ペイロードサイズに収められない場合
+	 */
+	private void writePayload() throws IOException {
+		bodyTruncated = false;
+		writePayload(body);
+		if (buffer.size() <= maxPayloadSize) {
+			return;
+		}
+		if (!truncateAlertBody || body == null) {
+			throw new ApnsException("最大ペイロードサイズを超えています。size=" + buffer.size() + ", max=" + maxPayloadSize);
+		}
+
+		// alert本文に使えるバイト数（省略記号の分を除く）
+		int fixedLength = buffer.size() - bodyLength;
+		int budget = maxPayloadSize - fixedLength - ApnsUtil.getJsonEscapedUTF8Length(ELLIPSIS);
+		if (budget < 0) {
+			throw new ApnsException("alert本文以外の項目で最大ペイロードサイズを超えています。size=" + fixedLength + ", max=" + maxPayloadSize);
+		}
+		int end = ApnsUtil.getJsonEscapedUTF8Prefix(body, budget);
+		writePayload(body.substring(0, end) + ELLIPSIS);
+		bodyTruncated = true;
 	}
 
 	/**
-	 * alert辞書の調整処理
+	 * 生成用バッファにペイロードを書き出す
+	 * @param alertBody 書き出すalert本文
+	 * @throws IOException JSONの生成に失敗した場合
 	 */
-	private void adjustCustomAlert() {
-		switch (customAlert.size()) {
-		case 0:
-			// alert辞書無しの場合はalertを削除
-			aps.remove("alert");
-			break;
-		case 1:
-			// alert辞書が"body"のみの場合は"alert"に"body"の値を設定
-			if (customAlert.containsKey("body")) {
-				aps.put("alert", customAlert.get("body"));
-				break;
+	private void writePayload(String alertBody) throws IOException {
+		buffer.reset();
+		bodyLength = 0;
+		JsonGenerator g = factory.createGenerator(buffer, JsonEncoding.UTF8);
+		try {
+			g.writeStartObject();
+
+			// aps辞書（カスタムフィールドで"aps"が設定されている場合はそちらを優先）
+			if (customFields == null || !customFields.containsKey("aps")) {
+				g.writeFieldName("aps");
+				writeAps(g, alertBody);
+			}
+
+			// カスタムフィールド
+			if (customFields != null) {
+				for (Map.Entry<String, Object> entry : customFields.entrySet()) {
+					g.writeFieldName(entry.getKey());
+					g.writeObject(entry.getValue());
+				}
 			}
-		default:
+
+			g.writeEndObject();
+		} finally {
+			g.close();
+		}
+	}
+
+	/**
+	 * aps辞書の書き出し
+	 * @param g JSONジェネレータ
+	 * @param alertBody 書き出すalert本文
+	 * @throws IOException JSONの生成に失敗した場合
+	 */
+	private void writeAps(JsonGenerator g, String alertBody) throws IOException {
+		g.writeStartObject();
+		if (badge != null) {
+			g.writeNumberField("badge", badge);
+		}
+		if (sound != null) {
+			g.writeStringField("sound", sound);
+		}
+		if (contentAvailable) {
+			g.writeNumberField("content-available", 1);
+		}
+
+		int alertFields = countAlertFields();
+		if (body != null && alertFields == 1) {
+			// alert辞書が"body"のみの場合は"alert"に"body"の値を設定
+			g.writeFieldName("alert");
+			writeBody(g, alertBody);
+		} else if (alertFields > 0) {
 			// それ以外はalert辞書を"alert"に設定
-			aps.put("alert", customAlert);
+			g.writeFieldName("alert");
+			writeAlert(g, alertBody);
+		}
+		g.writeEndObject();
+	}
+
+	/**
+	 * alert辞書の書き出し
+	 * @param g JSONジェネレータ
+	 * @param alertBody 書き出すalert本文
+	 * @throws IOException JSONの生成に失敗した場合
+	 */
+	private void writeAlert(JsonGenerator g, String alertBody) throws IOException {
+		g.writeStartObject();
+		writeStringField(g, "title", title);
+		if (alertBody != null) {
+			g.writeFieldName("body");
+			writeBody(g, alertBody);
+		}
+		writeStringField(g, "title-loc-key", titleLocKey);
+		writeArrayField(g, "title-loc-args", titleLocArgs);
+		writeStringField(g, "action-loc-key", actionLocKey);
+		writeStringField(g, "loc-key", locKey);
+		writeArrayField(g, "loc-args", locArgs);
+		writeStringField(g, "launch-image", launchImage);
+		g.writeEndObject();
+	}
+
+	/**
+	 * alert本文の書き出し
+	 *
+	 * <p>
+	 * 切り詰め時のバイト数計算と一致させるため、本文は{@link ApnsUtil#writeJsonEscapedUTF8(CharSequence, byte[], int)}でエスケープして書き出します。
+	 * </p>
+	 *
+	 * @param g JSONジェネレータ
+	 * @param alertBody alert本文
+	 * @throws IOException JSONの生成に失敗した場合
+	 */
+	private void writeBody(JsonGenerator g, String alertBody) throws IOException {
+		int length = ApnsUtil.getJsonEscapedUTF8Length(alertBody);
+		if (bodyBuffer == null || bodyBuffer.length < length) {
+			bodyBuffer = new byte[Math.max(length, DEFAULT_BUFFER_SIZE)];
+		}
+		ApnsUtil.writeJsonEscapedUTF8(alertBody, bodyBuffer, 0);
+		g.writeRawUTF8String(bodyBuffer, 0, length);
+		bodyLength = length;
+	}
+
+	/**
+	 * alert辞書に設定された項目数
+	 * @return 項目数
+	 */
+	private int countAlertFields() {
+		int n = 0;
+		n += title != null ? 1 : 0;
+		n += body != null ? 1 : 0;
+		n += titleLocKey != null ? 1 : 0;
+		n += titleLocArgs != null ? 1 : 0;
+		n += actionLocKey != null ? 1 : 0;
+		n += locKey != null ? 1 : 0;
+		n += locArgs != null ? 1 : 0;
+		n += launchImage != null ? 1 : 0;
+		return n;
+	}
+
+	private static void writeStringField(JsonGenerator g, String name, String value) throws IOException {
+		if (value != null) {
+			g.writeStringField(name, value);
+		}
+	}
+
+	private static void writeArrayField(JsonGenerator g, String name, String[] values) throws IOException {
+		if (values != null) {
+			g.writeArrayFieldStart(name);
+			for (String value : values) {
+				g.writeString(value);
+			}
+			g.writeEndArray();
 		}
 	}
 
@@ -0,0 +1,325 @@
+package japns;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * APNsペイロードテンプレート
+ *
+ * <p>
+ * 送信先ごとに一部の文字列のみが異なるペイロードを高速に生成するためのテンプレートです。<br>
+ * {@link ApnsPayload}の文字列項目に<code>${名前}</code>形式のプレースホルダを含めて{@link #compile(ApnsPayload)}すると、
+ * ペイロードはプレースホルダの前後でJSONエスケープ済みのUTF-8バイト列に分割して保持されます。<br>
+ * {@link #render(String...)}は置換文字列をJSONエスケープしながらバイト列の間に書き込むだけで、
+ * JSONのシリアライズは行いません。生成されるペイロードのバイト数は書き込み前に正確に計算されます。
+ * </p>
+ *
+ * <pre>
+ * ApnsPayload payload = new ApnsPayload();
+ * payload.setAlertBody("${nickname}さん！新しいお知らせが届いているよ！");
+ * payload.setBadge(1);
+ * ApnsPayloadTemplate template = ApnsPayloadTemplate.compile(payload);
+ *
+ * byte[] payloadBytes = template.render(nickname);
+ * </pre>
+ *
+ * <p>
+ * プレースホルダの名前に使用できる文字は英数字、'_'、'.'、'-'です。
+ * 置換文字列はJSON文字列の中に書き込まれるため、プレースホルダは文字列の値の中でのみ認識され、オブジェクトのキーの中ではそのまま出力されます。
+ * 文字列の値の中で<code>$${</code>と記述すると、プレースホルダではなく<code>${</code>として出力されます。
+ * このクラスは不変で、スレッドセーフです。
+ * </p>
+ *
+ * <p>
+ * 生成したペイロードが最大ペイロードサイズを超える場合、{@link #render(String...)}は{@link ApnsException}をスローします。
+ * 送信先ごとの置換文字列の長さが大きく異なる場合は、{@link #getRenderedLength(String...)}で事前に確認してください。
+ * </p>
+ *
+ * @author T.Inukai
+ */
+public final class ApnsPayloadTemplate {
+
+	/**
+	 * 固定部分（プレースホルダの数＋1個）
+	 */
+	private final byte[][] segments;
+
+	/**
+	 * 固定部分の合計バイト数
+	 */
+	private final int segmentsLength;
+
+	/**
+	 * プレースホルダごとの置換文字列のIndex（{@link #names}のIndex）
+	 */
+	private final int[] slots;
+
+	/**
+	 * プレースホルダ名（重複なし、出現順）
+	 */
+	private final List<String> names;
+
+	/**
+	 * 最大ペイロードサイズ（バイト）
+	 */
+	private final int maxPayloadSize;
+
+	private ApnsPayloadTemplate(byte[][] segments, int[] slots, List<String> names, int maxPayloadSize) {
+		this.segments = segments;
+		this.slots = slots;
+		this.names = Collections.unmodifiableList(names);
+		this.maxPayloadSize = maxPayloadSize;
+		int length = 0;
+		for (byte[] segment : segments) {
+			length += segment.length;
+		}
+		this.segmentsLength = length;
+	}
+
+	/**
+	 * ペイロードからテンプレートを生成します
+	 *
+	 * <p>
+	 * 最大ペイロードサイズはペイロードの設定を引き継ぎます。<br>
+	 * alert本文の切り詰めが有効で、生成時にalert本文が切り詰められた場合は、
+	 * 切り詰めた位置のプレースホルダが失われるためテンプレートを生成できません。
+	 * 切り詰めは置換後の長さでしか判断できないため、{@link #render(String...)}でサイズを確認してください。
+	 * </p>
+	 *
+	 * @param payload プレースホルダを含むペイロード
+	 * @return テンプレート
+	 * @throws ApnsException ペイロードを生成できない場合、または、alert本文が切り詰められた場合
+	 */
+	public static ApnsPayloadTemplate compile(ApnsPayload payload) {
+		ApnsEncodedPayload encoded = payload.build();
+		if (payload.isAlertBodyTruncated()) {
+			throw new ApnsException("alert本文が切り詰められたペイロードからはテンプレートを生成できません。size=" + encoded.length()
+					+ ", max=" + payload.getMaxPayloadSize());
+		}
+		return compile(encoded.getBytesUnsafe(), payload.getMaxPayloadSize());
+	}
+
+	/**
+	 * ペイロード（UTF-8バイト配列）からテンプレートを生成します
+	 *
+	 * <p>
+	 * 最大ペイロードサイズは{@link ApnsPayload#DEFAULT_MAX_PAYLOAD_SIZE}になります。
+	 * </p>
+	 *
+	 * @param payloadBytes プレースホルダを含むペイロード（UTF-8バイト配列）
+	 * @return テンプレート
+	 */
+	public static ApnsPayloadTemplate compile(byte[] payloadBytes) {
+		return compile(payloadBytes, ApnsPayload.DEFAULT_MAX_PAYLOAD_SIZE);
+	}
+
+	/**
+	 * ペイロード（UTF-8バイト配列）、最大ペイロードサイズを指定してテンプレートを生成します
+	 *
+	 * <p>
+	 * JSONの構造をたどり、オブジェクトのキー以外の文字列の中にあるプレースホルダのみを認識します。
+	 * </p>
+	 *
+	 * @param payloadBytes プレースホルダを含むペイロード（UTF-8バイト配列）
+	 * @param maxPayloadSize 最大ペイロードサイズ（バイト）
+	 * @return テンプレート
+	 */
+	public static ApnsPayloadTemplate compile(byte[] payloadBytes, int maxPayloadSize) {
+		List<byte[]> segmentList = new ArrayList<byte[]>();
+		List<Integer> slotList = new ArrayList<Integer>();
+		List<String> names = new ArrayList<String>();
+		ByteArrayOutputStream segment = new ByteArrayOutputStream(payloadBytes.length);
+
+		// オブジェクト・配列の入れ子（true:オブジェクト）
+		boolean[] containers = new boolean[8];
+		int depth = 0;
+		// 次の文字列がオブジェクトのキーか
+		boolean expectKey = false;
+
+		int length = payloadBytes.length;
+		int i = 0;
+		while (i < length) {
+			byte b = payloadBytes[i];
+			if (b != '"') {
+				if (b == '{' || b == '[') {
+					if (depth == containers.length) {
+						containers = Arrays.copyOf(containers, depth * 2);
+					}
+					containers[depth++] = b == '{';
+					expectKey = b == '{';
+				} else if (b == '}' || b == ']') {
+					depth = Math.max(depth - 1, 0);
+				} else if (b == ',') {
+					expectKey = depth > 0 && containers[depth - 1];
+				} else if (b == ':') {
+					expectKey = false;
+				}
+				segment.write(b);
+				i++;
+				continue;
+			}
+
+			// 文字列（キーの中ではプレースホルダを認識しない）
+			boolean isValue = !expectKey;
+			segment.write(b);
+			i++;
+			while (i < length && payloadBytes[i] != '"') {
+				b = payloadBytes[i];
+				if (b == '\\' && i + 1 < length) {
+					// エスケープシーケンス（Unicodeエスケープの16進部分は通常の文字として扱われる）
+					segment.write(payloadBytes, i, 2);
+					i += 2;
+					continue;
+				}
+				if (isValue && b == '$') {
+					if (i + 2 < length && payloadBytes[i + 1] == '$' && payloadBytes[i + 2] == '{') {
+						// "$${"は"${"として出力
+						segment.write('$');
+						segment.write('{');
+						i += 3;
+						continue;
+					}
+					int nameEnd = findPlaceholderEnd(payloadBytes, i);
+					if (nameEnd >= 0) {
+						String name = new String(payloadBytes, i + 2, nameEnd - i - 2, StandardCharsets.US_ASCII);
+						int slot = names.indexOf(name);
+						if (slot < 0) {
+							slot = names.size();
+							names.add(name);
+						}
+						segmentList.add(segment.toByteArray());
+						segment.reset();
+						slotList.add(slot);
+						i = nameEnd + 1;
+						continue;
+					}
+				}
+				segment.write(b);
+				i++;
+			}
+			if (i < length) {
+				segment.write('"');
+				i++;
+			}
+		}
+		segmentList.add(segment.toByteArray());
+
+		int[] slots = new int[slotList.size()];
+		for (int j = 0; j < slots.length; j++) {
+			slots[j] = slotList.get(j);
+		}
+		return new ApnsPayloadTemplate(segmentList.toArray(new byte[segmentList.size()][]), slots, names, maxPayloadSize);
+	}
+
+	/**
+	 * プレースホルダの終端の検索
+	 * @param bytes ペイロード
+	 * @param start '$'の位置
+	 * @return プレースホルダを閉じる'}'の位置。プレースホルダではない場合は-1
+	 */
+	private static int findPlaceholderEnd(byte[] bytes, int start) {
+		if (start + 1 >= bytes.length || bytes[start + 1] != '{') {
+			return -1;
+		}
+		int nameStart = start + 2;
+		int nameEnd = nameStart;
+		while (nameEnd < bytes.length && isNameChar(bytes[nameEnd])) {
+			nameEnd++;
+		}
+		if (nameEnd == nameStart || nameEnd >= bytes.length || bytes[nameEnd] != '}') {
+			return -1;
+		}
+		return nameEnd;
+	}
+
+	/**
+	 * プレースホルダ名の取得
+	 * @return プレースホルダ名のリスト（重複なし、出現順）。{@link #render(String...)}の引数の順序になります
+	 */
+	public List<String> getPlaceholderNames() {
+		return names;
+	}
+
+	/**
+	 * 生成されるペイロードのバイト数の計算
+	 * @param values 置換文字列（{@link #getPlaceholderNames()}の順）
+	 * @return ペイロードのバイト数
+	 */
+	public int getRenderedLength(String... values) {
+		checkValues(values);
+		int length = segmentsLength;
+		for (int slot : slots) {
+			length += ApnsUtil.getJsonEscapedUTF8Length(values[slot]);
+		}
+		return length;
+	}
+
+	/**
+	 * 最大ペイロードサイズの取得
+	 * @return 最大ペイロードサイズ（バイト）
+	 */
+	public int getMaxPayloadSize() {
+		return maxPayloadSize;
+	}
+
+	/**
+	 * ペイロードの生成
+	 * @param values 置換文字列（{@link #getPlaceholderNames()}の順）
+	 * @return ペイロード（UTF-8バイト配列）
+	 * @throws ApnsException 生成したペイロードが最大ペイロードサイズを超える場合
+	 */
+	public byte[] render(String... values) {
+		int length = getRenderedLength(values);
+		if (length > maxPayloadSize) {
+			throw new ApnsException("最大ペイロードサイズを超えています。size=" + length + ", max=" + maxPayloadSize);
+		}
+		byte[] buf = new byte[length];
+		int pos = 0;
+		for (int i = 0; i < slots.length; i++) {
+			System.arraycopy(segments[i], 0, buf, pos, segments[i].length);
+			pos += segments[i].length;
+			pos = ApnsUtil.writeJsonEscapedUTF8(values[slots[i]], buf, pos);
+		}
+		byte[] last = segments[slots.length];
+		System.arraycopy(last, 0, buf, pos, last.length);
+		return buf;
+	}
+
+	/**
+	 * ペイロードの生成
+	 * @param values 置換文字列（Key:プレースホルダ名, value:置換文字列）
+	 * @return ペイロード（UTF-8バイト配列）
+	 * @throws ApnsException 生成したペイロードが最大ペイロードサイズを超える場合
+	 */
+	public byte[] render(Map<String, String> values) {
+		String[] array = new String[names.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = values.get(names.get(i));
+		}
+		return render(array);
+	}
+
+	/**
+	 * 置換文字列のチェック
+	 * @param values 置換文字列
+	 */
+	private void checkValues(String[] values) {
+		if (values.length != names.size()) {
+			throw new ApnsException("置換文字列の数がプレースホルダの数と一致しません。placeholders=" + names);
+		}
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] == null) {
+				throw new ApnsException("置換文字列が指定されていません。placeholder=" + names.get(i));
+			}
+		}
+	}
+
+	private static boolean isNameChar(byte b) {
+		return ('a' <= b && b <= 'z') || ('A' <= b && b <= 'Z') || ('0' <= b && b <= '9') || b == '_' || b == '.' || b == '-';
+	}
+}
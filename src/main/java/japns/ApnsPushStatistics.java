@@ -0,0 +1,189 @@
+package japns;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * PUSH通知の送信統計
+ *
+ * <p>
+ * APNsから受信したエラー通知のステータスごとの件数、原因ごとの再接続回数、再送した通知の件数を集計します。<br>
+ * マルチスレッド送信では全てのスレッドで1つのインスタンスを共有し、ロックを使用せずに加算します。
+ * エラーリストを走査せずに、ステータスごとの失敗件数を取得できます。
+ * </p>
+ *
+ * @author T.Inukai
+ */
+public class ApnsPushStatistics {
+
+	/**
+	 * 再接続の原因
+	 *
+	 * <p>
+	 * MAX_PACKET - 最大パケットサイズ超過<br>
+	 * WRITE_ERROR - 送信エラー<br>
+	 * ERROR_RESPONSE - APNsからのエラー通知（ステータス10以外）<br>
+	 * SHUTDOWN - APNsのシャットダウン（ステータス10）<br>
+	 * UNKNOWN_IDENTIFIER - エラー通知の識別子に該当する通知なし<br>
+	 * READ_ERROR - エラー通知の読み込みエラー
+	 * </p>
+	 */
+	public enum ReconnectCause {
+		// 最大パケットサイズ超過
+		MAX_PACKET,
+		// 送信エラー
+		WRITE_ERROR,
+		// エラー通知
+		ERROR_RESPONSE,
+		// シャットダウン
+		SHUTDOWN,
+		// 識別子に該当する通知なし
+		UNKNOWN_IDENTIFIER,
+		// エラー通知の読み込みエラー
+		READ_ERROR
+	}
+
+	/**
+	 * ステータスの種類数（ステータスは1バイト）
+	 */
+	private static final int STATUS_RANGE = 256;
+
+	/**
+	 * エラー通知のステータスごとの件数
+	 */
+	private final AtomicLongArray statusCounts = new AtomicLongArray(STATUS_RANGE);
+
+	/**
+	 * 原因ごとの再接続回数
+	 */
+	private final AtomicLongArray reconnectCounts = new AtomicLongArray(ReconnectCause.values().length);
+
+	/**
+	 * 再送した通知の件数
+	 */
+	private final AtomicLong resendCount = new AtomicLong();
+
+	/**
+	 * エラー通知の件数の取得
+	 * @param status ステータス（0～255）
+	 * @return 指定されたステータスのエラー通知の件数
+	 */
+	public long getStatusCount(int status) {
+		if (status < 0 || status >= STATUS_RANGE) {
+			return 0;
+		}
+		return statusCounts.get(status);
+	}
+
+	/**
+	 * ステータスごとのエラー通知の件数の取得
+	 * @return ステータスごとの件数（Key:ステータス, value:件数）。件数が0のステータスは含まれません
+	 */
+	public Map<Integer, Long> getStatusCounts() {
+		Map<Integer, Long> counts = new TreeMap<Integer, Long>();
+		for (int status = 0; status < STATUS_RANGE; status++) {
+			long count = statusCounts.get(status);
+			if (count != 0) {
+				counts.put(status, count);
+			}
+		}
+		return counts;
+	}
+
+	/**
+	 * 再接続回数の取得
+	 * @param cause 再接続の原因
+	 * @return 指定された原因の再接続回数
+	 */
+	public long getReconnectCount(ReconnectCause cause) {
+		return reconnectCounts.get(cause.ordinal());
+	}
+
+	/**
+	 * 再接続回数の合計の取得
+	 * @return 再接続回数の合計
+	 */
+	public long getTotalReconnectCount() {
+		long total = 0;
+		for (int i = 0; i < reconnectCounts.length(); i++) {
+			total += reconnectCounts.get(i);
+		}
+		return total;
+	}
+
+	/**
+	 * 再送した通知の件数の取得
+	 *
+	 * <p>
+	 * エラー通知を受けて未送信に戻し、再度送信した通知の延べ件数です。
+	 * </p>
+	 *
+	 * @return 再送した通知の件数
+	 */
+	public long getResendCount() {
+		return resendCount.get();
+	}
+
+	/**
+	 * エラー通知の記録
+	 * @param status ステータス
+	 */
+	void recordStatus(int status) {
+		statusCounts.incrementAndGet(status & 0xff);
+	}
+
+	/**
+	 * 再接続の記録
+	 * @param cause 再接続の原因
+	 */
+	void recordReconnect(ReconnectCause cause) {
+		reconnectCounts.incrementAndGet(cause.ordinal());
+	}
+
+	/**
+	 * 再送件数の加算
+	 * @param count 再送する通知の件数
+	 */
+	void addResendCount(int count) {
+		if (count > 0) {
+			resendCount.addAndGet(count);
+		}
+	}
+
+	/**
+	 * 送信統計のマージ
+	 * @param s マージする送信統計
+	 */
+	void merge(ApnsPushStatistics s) {
+		for (int i = 0; i < STATUS_RANGE; i++) {
+			long count = s.statusCounts.get(i);
+			if (count != 0) {
+				statusCounts.addAndGet(i, count);
+			}
+		}
+		for (int i = 0; i < reconnectCounts.length(); i++) {
+			reconnectCounts.addAndGet(i, s.reconnectCounts.get(i));
+		}
+		resendCount.addAndGet(s.resendCount.get());
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("{");
+		sb.append("statusCounts:").append(getStatusCounts()).append(",");
+		sb.append("reconnectCounts:{");
+		for (ReconnectCause cause : ReconnectCause.values()) {
+			if (cause.ordinal() > 0) {
+				sb.append(",");
+			}
+			sb.append(cause).append(":").append(getReconnectCount(cause));
+		}
+		sb.append("},");
+		sb.append("resendCount:").append(getResendCount());
+		sb.append("}");
+		return sb.toString();
+	}
+}
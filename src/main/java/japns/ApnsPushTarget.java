@@ -0,0 +1,110 @@
+package japns;
+
+import japns.ApnsNotification.PushStatus;
+
+/**
+ * PUSH通知の送信対象
+ *
+ * <p>
+ * {@link ApnsNotificationService}の送信処理が、送信データをIndexで参照するためのインターフェースです。<br>
+ * {@link ApnsNotification}のリストと{@link ApnsNotificationBatch}のどちらも同じ送信処理で扱えるようにします。
+ * </p>
+ *
+ * @author T.Inukai
+ */
+interface ApnsPushTarget {
+
+	/**
+	 * 送信データ件数の取得
+	 * @return 送信データ件数
+	 */
+	int size();
+
+	/**
+	 * 通知識別子の取得
+	 * @param idx Index
+	 * @return 通知識別子
+	 */
+	int getIdentifier(int idx);
+
+	/**
+	 * 通知バイナリデータ長の取得
+	 * @param idx Index
+	 * @return 通知バイナリデータのバイト数。生成できない場合は-1
+	 */
+	int getNotificationLength(int idx);
+
+	/**
+	 * ペイロード長の取得
+	 * @param idx Index
+	 * @return ペイロードのバイト数。ペイロードがない場合は-1
+	 */
+	int getPayloadLength(int idx);
+
+	/**
+	 * 通知バイナリデータを指定されたbyte配列に書き込む
+	 * @param idx Index
+	 * @param buf 書き込み先
+	 * @param offset 書き込み開始位置
+	 * @return 書き込んだバイト数
+	 */
+	int encodeNotificationBytes(int idx, byte[] buf, int offset);
+
+	/**
+	 * PUSHステータスの取得
+	 * @param idx Index
+	 * @return PUSHステータス
+	 */
+	PushStatus getPushStatus(int idx);
+
+	/**
+	 * PUSHステータスの設定
+	 * @param idx Index
+	 * @param pushStatus PUSHステータス
+	 */
+	void setPushStatus(int idx, PushStatus pushStatus);
+
+	/**
+	 * リトライ回数を加算して返却
+	 * @param idx Index
+	 * @return リトライ回数
+	 */
+	int getAndAddRetryCount(int idx);
+
+	/**
+	 * PUSH通知エラー情報の設定
+	 * @param idx Index
+	 * @param apnsNotificationErrorResponse PUSH通知エラー情報
+	 */
+	void setApnsNotificationErrorData(int idx, ApnsNotificationErrorResponse apnsNotificationErrorResponse);
+
+	/**
+	 * ログ出力用の文字列の取得
+	 * @param idx Index
+	 * @return デバイストークン、ペイロードを含む文字列
+	 */
+	String describe(int idx);
+
+	/**
+	 * 送信結果の通知
+	 *
+	 * <p>
+	 * 状態が確定した送信データを送信結果リスナに通知します。
+	 * </p>
+	 *
+	 * @param idx Index
+	 * @param listener 送信結果リスナ
+	 */
+	void notifyResult(int idx, ApnsResultListener listener);
+
+	/**
+	 * 送信結果の格納
+	 *
+	 * <p>
+	 * 各送信データの状態を送信結果に格納します。
+	 * </p>
+	 *
+	 * @param apnsResult 格納先の送信結果
+	 */
+	void collectResult(ApnsResult apnsResult);
+}
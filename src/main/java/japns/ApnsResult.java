@@ -5,10 +5,35 @@ import java.util.List;
 
 /**
  * APNs送信結果
+ *
+ * <p>
+ * {@link ResultMode#SUMMARY}の場合は件数とエラーリストのみを保持し、未送信・送信済リストは空になります。
+ * </p>
+ *
  * @author T.Inukai
  */
 public class ApnsResult {
 
+	/**
+	 * 送信結果の保持方法
+	 *
+	 * <p>
+	 * FULL - 未送信・送信済・エラーの各リストを保持<br>
+	 * SUMMARY - 件数とエラーリストのみを保持
+	 * </p>
+	 */
+	public enum ResultMode {
+		// 全て保持
+		FULL,
+		// 件数とエラーのみ保持
+		SUMMARY
+	}
+
+	/**
+	 * 送信結果の保持方法
+	 */
+	private final ResultMode resultMode;
+
 	/**
 	 * 正常終了フラグ
 	 */
@@ -32,6 +57,52 @@ public class ApnsResult {
 	 */
 	private List<ApnsNotification> errorList = new ArrayList<ApnsNotification>();
 
+	/**
+	 * 未送信件数
+	 */
+	private int noneCount;
+	/**
+	 * 送信済件数
+	 */
+	private int doneCount;
+	/**
+	 * 送信エラー件数
+	 */
+	private int errorCount;
+
+	/**
+	 * 送信したPUSH通知バッチ
+	 */
+	private ApnsNotificationBatch notificationBatch;
+
+	/**
+	 * 送信統計
+	 */
+	private ApnsPushStatistics statistics;
+
+	/**
+	 * 全ての送信結果を保持するインスタンスを生成します
+	 */
+	public ApnsResult() {
+		this(ResultMode.FULL);
+	}
+
+	/**
+	 * 送信結果の保持方法を指定してインスタンスを生成します
+	 * @param resultMode 送信結果の保持方法
+	 */
+	public ApnsResult(ResultMode resultMode) {
+		this.resultMode = resultMode;
+	}
+
+	/**
+	 * 送信結果の保持方法の取得
+	 * @return 送信結果の保持方法
+	 */
+	public ResultMode getResultMode() {
+		return resultMode;
+	}
+
 	/**
 	 * 正常終了フラグの取得
 	 * @return success true:正常、false:異常
@@ -53,7 +124,7 @@ public class ApnsResult {
 	 * @return 未送信件数
 	 */
 	public int getNoneCount() {
-		return noneList.size();
+		return noneCount;
 	}
 
 	/**
@@ -61,7 +132,7 @@ public class ApnsResult {
 	 * @return 送信済件数
 	 */
 	public int getDoneCount() {
-		return doneList.size();
+		return doneCount;
 	}
 
 	/**
@@ -69,7 +140,7 @@ public class ApnsResult {
 	 * @return 送信エラー数
 	 */
 	public int getErrorCount() {
-		return errorList.size();
+		return errorCount;
 	}
 
 	/**
@@ -77,7 +148,10 @@ public class ApnsResult {
 	 * @param d
 	 */
 	public void addNone(ApnsNotification d) {
-		this.noneList.add(d);
+		if (resultMode == ResultMode.FULL) {
+			this.noneList.add(d);
+		}
+		this.noneCount++;
 	}
 
 	/**
@@ -85,7 +159,10 @@ public class ApnsResult {
 	 * @param l 設定する未送信リスト
 	 */
 	public void addAllNone(List<ApnsNotification> l) {
-		this.noneList.addAll(l);
+		if (resultMode == ResultMode.FULL) {
+			this.noneList.addAll(l);
+		}
+		this.noneCount += l.size();
 	}
 
 	/**
@@ -102,7 +179,10 @@ public class ApnsResult {
 	 * @param d 設定する送信済の{@link ApnsNotification}
 	 */
 	public void addDone(ApnsNotification d) {
-		this.doneList.add(d);
+		if (resultMode == ResultMode.FULL) {
+			this.doneList.add(d);
+		}
+		this.doneCount++;
 	}
 
 	/**
@@ -110,7 +190,10 @@ public class ApnsResult {
 	 * @param l 設定する送信済リスト
 	 */
 	public void addAllDone(List<ApnsNotification> l) {
-		this.doneList.addAll(l);
+		if (resultMode == ResultMode.FULL) {
+			this.doneList.addAll(l);
+		}
+		this.doneCount += l.size();
 	}
 
 	/**
@@ -127,6 +210,7 @@ public class ApnsResult {
 	 */
 	public void addError(ApnsNotification d) {
 		this.errorList.add(d);
+		this.errorCount++;
 	}
 
 	/**
@@ -135,6 +219,7 @@ public class ApnsResult {
 	 */
 	public void addAllError(List<ApnsNotification> l) {
 		this.errorList.addAll(l);
+		this.errorCount += l.size();
 	}
 
 	/**
@@ -146,6 +231,95 @@ public class ApnsResult {
 		return this.errorList;
 	}
 
+	/**
+	 * 件数の加算
+	 *
+	 * <p>
+	 * {@link ApnsNotification}のリストを持たない送信結果（{@link ApnsNotificationBatch}の送信）で使用します。
+	 * </p>
+	 *
+	 * @param none 未送信件数
+	 * @param done 送信済件数
+	 * @param error 送信エラー件数
+	 */
+	void addCount(int none, int done, int error) {
+		this.noneCount += none;
+		this.doneCount += done;
+		this.errorCount += error;
+	}
+
+	/**
+	 * 送信結果のマージ
+	 *
+	 * <p>
+	 * マルチスレッド送信で、各スレッドの送信結果を集約するために使用します。
+	 * </p>
+	 *
+	 * @param r マージする送信結果
+	 */
+	void merge(ApnsResult r) {
+		if (resultMode == ResultMode.FULL) {
+			this.noneList.addAll(r.noneList);
+			this.doneList.addAll(r.doneList);
+		}
+		this.errorList.addAll(r.errorList);
+		addCount(r.noneCount, r.doneCount, r.errorCount);
+		if (r.notificationBatch != null) {
+			this.notificationBatch = r.notificationBatch;
+		}
+		// マルチスレッド送信では送信統計を共有しているため、同一インスタンスはマージしない
+		if (r.statistics != null && r.statistics != this.statistics) {
+			if (this.statistics == null) {
+				this.statistics = new ApnsPushStatistics();
+			}
+			this.statistics.merge(r.statistics);
+		}
+	}
+
+	/**
+	 * 送信統計の設定
+	 * @param statistics 送信統計
+	 */
+	void setStatistics(ApnsPushStatistics statistics) {
+		this.statistics = statistics;
+	}
+
+	/**
+	 * 送信統計の取得
+	 *
+	 * <p>
+	 * APNsのエラー通知のステータスごとの件数、原因ごとの再接続回数などを取得できます。
+	 * マルチスレッド送信の場合は全スレッドの合計です。
+	 * </p>
+	 *
+	 * @return 送信統計
+	 */
+	public ApnsPushStatistics getStatistics() {
+		return this.statistics;
+	}
+
+	/**
+	 * 送信したPUSH通知バッチの設定
+	 * @param notificationBatch 送信したPUSH通知バッチ
+	 */
+	void setNotificationBatch(ApnsNotificationBatch notificationBatch) {
+		this.notificationBatch = notificationBatch;
+	}
+
+	/**
+	 * 送信したPUSH通知バッチの取得
+	 *
+	 * <p>
+	 * {@link ApnsNotificationBatch}を送信した場合、未送信・送信済・エラーの各リストは空になります。
+	 * 各通知の状態はPUSH通知バッチから取得してください。
+	 * </p>
+	 *
+	 * @return 送信したPUSH通知バッチ。{@link ApnsNotification}のリストを送信した場合は{@code null}
+	 */
+	public ApnsNotificationBatch getNotificationBatch() {
+		return this.notificationBatch;
+	}
+
 	/**
 	 * 例外の設定
 	 * @param exception 接位する例外
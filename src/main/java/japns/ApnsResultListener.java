@@ -0,0 +1,44 @@
+package japns;
+
+/**
+ * 送信結果リスナ
+ *
+ * <p>
+ * {@link ApnsNotificationService#setResultListener(ApnsResultListener)}で設定すると、
+ * 各送信データの状態が確定した時点で呼び出されます。<br>
+ * 状態は、APNsからのエラー通知で変わることがなくなった時点（再接続時、または送信処理の終了時）で確定します。
+ * 送信処理が途中で終了した場合、未送信のデータは{@link ApnsNotification.PushStatus#NONE}のまま通知されます。
+ * </p>
+ *
+ * <p>
+ * マルチスレッド送信では複数のスレッドから同時に呼び出されるため、実装はスレッドセーフでなければなりません。
+ * </p>
+ *
+ * @author T.Inukai
+ */
+public interface ApnsResultListener {
+
+	/**
+	 * 送信データの状態の確定
+	 *
+	 * <p>
+	 * {@link ApnsNotification}のリストを送信した場合に呼び出されます。
+	 * </p>
+	 *
+	 * @param apnsNotification 状態が確定した送信データ
+	 */
+	void onNotificationResult(ApnsNotification apnsNotification);
+
+	/**
+	 * PUSH通知バッチの通知の状態の確定
+	 *
+	 * <p>
+	 * {@link ApnsNotificationBatch}を送信した場合に呼び出されます。
+	 * 状態は{@link ApnsNotificationBatch#getPushStatus(int)}などで取得してください。
+	 * </p>
+	 *
+	 * @param notificationBatch PUSH通知バッチ
+	 * @param idx 状態が確定した通知のIndex
+	 */
+	void onBatchResult(ApnsNotificationBatch notificationBatch, int idx);
+}
@@ -0,0 +1,411 @@
+package japns;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * デバイストークンファイルの読み込み
+ *
+ * <p>
+ * 1行に1件、16進文字列のデバイストークンを記載したファイルを読み込み、{@link ApnsPackedTokens}を生成します。<br>
+ * ファイルはメモリマップして行の区切りで分割し、分割単位ごとにマルチスレッドで解析します。
+ * 16進文字列は行ごとの{@code String}を生成せずに、連結済みのbyte配列へ直接変換します。
+ * </p>
+ *
+ * <p>
+ * 空白（制御文字を含む）、ハイフンは読み飛ばされ、空行は無視されます。
+ * 16進文字以外を含む行と、デバイストークンのバイト数が一致しない行は、形式が不正な行として読み飛ばします。
+ * 先頭のUTF-8のBOMは無視されます。
+ * </p>
+ *
+ * <pre>
+ * ApnsPackedTokens tokens = new ApnsTokenFileLoader().load("tokens.txt");
+ * ApnsNotificationBatch batch = tokens.toNotificationBatch(payload.build(), Integer.MAX_VALUE, Priority.HIGH);
+ * ApnsResult result = apnsNotificationService.push(batch, threadCount);
+ * </pre>
+ *
+ * @author T.Inukai
+ */
+public class ApnsTokenFileLoader {
+	private static Logger logger = LoggerFactory.getLogger(ApnsTokenFileLoader.class);
+
+	/**
+	 * デフォルトの分割単位（バイト数）
+	 */
+	public static final long DEFAULT_CHUNK_SIZE = 64L * 1024 * 1024;
+
+	/**
+	 * 最小の分割単位（バイト数）
+	 */
+	public static final long MIN_CHUNK_SIZE = 64L * 1024;
+
+	/**
+	 * デフォルトのデバイストークンのバイト数
+	 */
+	public static final int DEFAULT_TOKEN_LENGTH = 32;
+
+	/**
+	 * デフォルトの形式が不正な行の行番号の保持件数
+	 */
+	public static final int DEFAULT_MAX_REPORTED_MALFORMED_LINES = 1000;
+
+	/**
+	 * 連結済みデバイストークンの最大バイト数（配列の最大長）
+	 */
+	private static final long MAX_PACKED_SIZE = Integer.MAX_VALUE - 8;
+
+	/**
+	 * 分割単位の境界を探すときの読み込みバイト数
+	 */
+	private static final int PROBE_SIZE = 4096;
+
+	/**
+	 * スレッド数
+	 */
+	private int threadCount = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * 分割単位（バイト数）
+	 */
+	private long chunkSize = DEFAULT_CHUNK_SIZE;
+
+	/**
+	 * デバイストークンのバイト数
+	 */
+	private int tokenLength = DEFAULT_TOKEN_LENGTH;
+
+	/**
+	 * 形式が不正な行の行番号の保持件数
+	 */
+	private int maxReportedMalformedLines = DEFAULT_MAX_REPORTED_MALFORMED_LINES;
+
+	/**
+	 * デバイストークンファイルの読み込み
+	 * @param fileName ファイル名
+	 * @return 連結済みデバイストークン
+	 * @throws ApnsException 読み込みに失敗した場合、またはデバイストークンが多すぎて1つの配列に格納できない場合
+	 */
+	public ApnsPackedTokens load(String fileName) {
+		RandomAccessFile file = null;
+		ExecutorService service = null;
+		try {
+			file = new RandomAccessFile(fileName, "r");
+			FileChannel channel = file.getChannel();
+			List<Chunk> chunks = split(channel);
+
+			service = Executors.newFixedThreadPool(Math.max(Math.min(threadCount, chunks.size()), 1));
+
+			// 1回目：分割単位ごとにデバイストークンの件数と行数を数える
+			invokeAll(service, chunks, null);
+
+			// 分割単位ごとの書き込み位置と行番号の開始位置を決定
+			long total = 0;
+			long lines = 0;
+			long malformedCount = 0;
+			for (Chunk chunk : chunks) {
+				chunk.tokenStart = total;
+				chunk.lineStart = lines;
+				total += chunk.tokenCount;
+				lines += chunk.lineCount;
+				malformedCount += chunk.malformedCount;
+			}
+			if (total * tokenLength > MAX_PACKED_SIZE) {
+				throw new ApnsException("デバイストークンが多すぎます。件数=" + total);
+			}
+
+			// 2回目：連結済みデバイストークンに直接変換
+			byte[] tokens = new byte[(int) (total * tokenLength)];
+			invokeAll(service, chunks, tokens);
+
+			// 形式が不正な行の行番号
+			long[] malformedLines = new long[(int) Math.min(malformedCount, maxReportedMalformedLines)];
+			int n = 0;
+			for (Chunk chunk : chunks) {
+				for (int i = 0; i < chunk.malformedLineSize && n < malformedLines.length; i++) {
+					malformedLines[n++] = chunk.lineStart + chunk.malformedLines[i];
+				}
+			}
+			if (malformedCount > 0) {
+				logger.info("形式が不正な行を読み飛ばしました。件数={}, 行番号={}", malformedCount, Arrays.toString(malformedLines));
+			}
+			return new ApnsPackedTokens(tokens, (int) total, tokenLength, malformedCount, malformedLines);
+		} catch (IOException e) {
+			throw new ApnsException("デバイストークンファイルの読み込みに失敗しました。file=" + fileName, e);
+		} finally {
+			if (service != null) {
+				service.shutdownNow();
+			}
+			if (file != null) {
+				try {
+					file.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	/**
+	 * 行の区切りでの分割
+	 * @param channel ファイル
+	 * @return 分割単位のリスト
+	 * @throws IOException
+	 */
+	private List<Chunk> split(FileChannel channel) throws IOException {
+		long size = channel.size();
+		ByteBuffer probe = ByteBuffer.allocate(PROBE_SIZE);
+		List<Chunk> chunks = new ArrayList<Chunk>();
+
+		// UTF-8のBOMを読み飛ばす
+		long start = 0;
+		channel.read(probe, 0);
+		if (probe.position() >= 3 && (probe.get(0) & 0xff) == 0xef && (probe.get(1) & 0xff) == 0xbb && (probe.get(2) & 0xff) == 0xbf) {
+			start = 3;
+		}
+
+		while (start < size) {
+			long end = Math.min(start + chunkSize, size);
+			// 分割位置を次の改行の直後に合わせる
+			while (end < size) {
+				probe.clear();
+				int read = channel.read(probe, end);
+				int newline = -1;
+				for (int i = 0; i < read; i++) {
+					if (probe.get(i) == '\n') {
+						newline = i;
+						break;
+					}
+				}
+				if (newline >= 0) {
+					end += newline + 1;
+					break;
+				}
+				end += Math.max(read, 0);
+			}
+			end = Math.min(end, size);
+			if (end - start > Integer.MAX_VALUE) {
+				throw new ApnsException("行が長すぎるため分割できません。position=" + start);
+			}
+			chunks.add(new Chunk(channel, start, end));
+			start = end;
+		}
+		return chunks;
+	}
+
+	/**
+	 * 分割単位ごとの解析の実行
+	 * @param service ExecutorService
+	 * @param chunks 分割単位のリスト
+	 * @param tokens 書き込み先。{@code null}の場合は件数を数える
+	 * @throws IOException
+	 */
+	private void invokeAll(ExecutorService service, List<Chunk> chunks, final byte[] tokens) throws IOException {
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		for (final Chunk chunk : chunks) {
+			futures.add(service.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws IOException {
+					chunk.parse(tokens);
+					return null;
+				}
+			}));
+		}
+		try {
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ApnsException("デバイストークンファイルの読み込みが中断されました。", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new ApnsException(e.getCause());
+		}
+	}
+
+	/**
+	 * スレッド数の設定
+	 * @param threadCount スレッド数（デフォルトは利用可能なプロセッサ数）
+	 */
+	public void setThreadCount(int threadCount) {
+		this.threadCount = threadCount;
+	}
+
+	/**
+	 * 分割単位の設定
+	 * @param chunkSize 分割単位（バイト数）。{@link #MIN_CHUNK_SIZE}未満の場合は{@link #MIN_CHUNK_SIZE}。実際の分割位置は次の改行の直後になります
+	 */
+	public void setChunkSize(long chunkSize) {
+		this.chunkSize = Math.max(chunkSize, MIN_CHUNK_SIZE);
+	}
+
+	/**
+	 * 下限なしの分割単位の設定
+	 *
+	 * <p>
+	 * 分割単位の境界の処理を小さなファイルで確認するためのものです。
+	 * </p>
+	 *
+	 * @param chunkSize 分割単位（バイト数、1以上）
+	 */
+	void setChunkSizeUnchecked(long chunkSize) {
+		this.chunkSize = Math.max(chunkSize, 1);
+	}
+
+	/**
+	 * デバイストークンのバイト数の設定
+	 * @param tokenLength デバイストークンのバイト数（デフォルトは32）。一致しない行は形式が不正な行になります
+	 */
+	public void setTokenLength(int tokenLength) {
+		if (tokenLength <= 0) {
+			throw new ApnsException("デバイストークンのバイト数が不正です。tokenLength=" + tokenLength);
+		}
+		this.tokenLength = tokenLength;
+	}
+
+	/**
+	 * 形式が不正な行の行番号の保持件数の設定
+	 * @param maxReportedMalformedLines 保持件数（件数自体は全て数えます）
+	 */
+	public void setMaxReportedMalformedLines(int maxReportedMalformedLines) {
+		this.maxReportedMalformedLines = Math.max(maxReportedMalformedLines, 0);
+	}
+
+	/**
+	 * 分割単位
+	 */
+	private class Chunk {
+		/** ファイル */
+		private final FileChannel channel;
+		/** 開始位置 */
+		private final long start;
+		/** 終了位置（含まない） */
+		private final long end;
+		/** メモリマップしたファイルの範囲 */
+		private MappedByteBuffer buffer;
+
+		/** デバイストークンの件数 */
+		private int tokenCount;
+		/** 行数 */
+		private long lineCount;
+		/** 形式が不正な行の数 */
+		private long malformedCount;
+		/** 形式が不正な行の行番号（分割単位内、1から） */
+		private long[] malformedLines = new long[0];
+		/** 形式が不正な行の行番号の保持件数 */
+		private int malformedLineSize;
+
+		/** 書き込み開始位置（デバイストークンの件数） */
+		private long tokenStart;
+		/** 行番号の開始位置（前の分割単位までの行数） */
+		private long lineStart;
+
+		Chunk(FileChannel channel, long start, long end) {
+			this.channel = channel;
+			this.start = start;
+			this.end = end;
+		}
+
+		/**
+		 * 解析
+		 *
+		 * <p>
+		 * 書き込み先が{@code null}の場合は、件数と行数を数えて形式が不正な行を記録します。
+		 * 書き込み先を指定した場合は、1回目に数えた件数の範囲にデバイストークンを書き込みます。
+		 * </p>
+		 *
+		 * @param tokens 書き込み先
+		 * @throws IOException
+		 */
+		void parse(byte[] tokens) throws IOException {
+			if (buffer == null) {
+				buffer = channel.map(MapMode.READ_ONLY, start, end - start);
+			}
+			final boolean counting = tokens == null;
+			final int hexLength = tokenLength * 2;
+			final int limit = buffer.limit();
+			int outPos = counting ? 0 : (int) (tokenStart * tokenLength);
+			int count = 0;
+			long line = 0;
+			int pos = 0;
+			while (pos < limit) {
+				line++;
+				int digits = 0;
+				boolean invalid = false;
+				int hi = 0;
+				int w = outPos;
+				// 書き込みは1回目に数えた件数の範囲のみ（後続の分割単位の領域を上書きしない）
+				boolean writable = !counting && count < tokenCount;
+				while (pos < limit) {
+					int b = buffer.get(pos++) & 0xff;
+					if (b == '\n') {
+						break;
+					}
+					int v = ApnsUtil.hexValue(b);
+					if (v >= 0) {
+						if (writable && digits < hexLength) {
+							if ((digits & 1) == 0) {
+								hi = v;
+							} else {
+								tokens[w++] = (byte) ((hi << 4) | v);
+							}
+						}
+						digits++;
+					} else if (b > ' ' && b != '-') {
+						invalid = true;
+					}
+				}
+				if (!invalid && digits == 0) {
+					// 空行
+					continue;
+				}
+				if (invalid || digits != hexLength) {
+					if (counting) {
+						addMalformedLine(line);
+					}
+					continue;
+				}
+				count++;
+				outPos += tokenLength;
+			}
+			if (counting) {
+				tokenCount = count;
+				lineCount = line;
+			} else {
+				// 2回目の書き込みが終わればマップは不要
+				buffer = null;
+			}
+		}
+
+		/**
+		 * 形式が不正な行の記録
+		 * @param line 分割単位内の行番号
+		 */
+		private void addMalformedLine(long line) {
+			malformedCount++;
+			if (malformedLineSize >= maxReportedMalformedLines) {
+				return;
+			}
+			if (malformedLineSize == malformedLines.length) {
+				malformedLines = Arrays.copyOf(malformedLines, Math.min(Math.max(malformedLineSize * 2, 16), maxReportedMalformedLines));
+			}
+			malformedLines[malformedLineSize++] = line;
+		}
+	}
+}
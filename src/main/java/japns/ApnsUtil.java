@@ -1,5 +1,6 @@
 package japns;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
@@ -7,9 +8,14 @@ import java.net.InetSocketAddress;
 import java.net.Proxy;
 import java.net.Socket;
 import java.security.KeyStore;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.regex.Pattern;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
@@ -51,6 +57,9 @@ public class ApnsUtil {
 	/** APNS Productionフィードバックポート */
 	public static final int PRODUCTION_FEEDBACK_PORT = 2196;
 
+	/** 共有SSLSocketFactory（Key:証明書ファイル名） */
+	private static final ConcurrentMap<String, SharedSSLSocketFactory> sharedFactories = new ConcurrentHashMap<String, SharedSSLSocketFactory>();
+
 	/**
 	 * スリープ処理
 	 * @param millis スリープする時間（ミリ秒）
@@ -84,31 +93,77 @@ public class ApnsUtil {
 
 	/**
 	 * 16進文字列のbyte配列への変換
+	 *
+	 * <p>
+	 * 空白、ハイフンは読み飛ばされます。
+	 * </p>
+	 *
 	 * @param s 16進文字列
 	 * @return 変換されたbyte配列
+	 * @throws ApnsException 16進文字列として不正な場合
 	 */
 	public static byte[] convertHexToBytes(String s) {
-		String hex = pattern.matcher(s).replaceAll("");
+		final int len = s.length();
+
+		// 16進文字数のカウント
+		int digits = 0;
+		for (int i = 0; i < len; i++) {
+			int v = hexValue(s.charAt(i));
+			if (v >= 0) {
+				digits++;
+			} else if (v == HEX_INVALID) {
+				throw new ApnsException("Invalid hex character: " + s.charAt(i));
+			}
+		}
+		if ((digits & 1) != 0) {
+			throw new ApnsException("Invalid hex length: " + digits);
+		}
 
-		byte[] bts = new byte[hex.length() / 2];
-		for (int i = 0; i < bts.length; i++) {
-			bts[i] = (byte) (charval(hex.charAt(2 * i)) * 16 + charval(hex.charAt(2 * i + 1)));
+		byte[] bts = new byte[digits / 2];
+		int hi = -1;
+		int pos = 0;
+		for (int i = 0; i < len; i++) {
+			int v = hexValue(s.charAt(i));
+			if (v < 0) {
+				continue;
+			}
+			if (hi < 0) {
+				hi = v;
+			} else {
+				bts[pos++] = (byte) ((hi << 4) | v);
+				hi = -1;
+			}
 		}
 		return bts;
 	}
 
-	private static final Pattern pattern = Pattern.compile("[ -]");
-
-	private static int charval(char a) {
-		if ('0' <= a && a <= '9') {
-			return (a - '0');
-		} else if ('a' <= a && a <= 'f') {
-			return (a - 'a') + 10;
-		} else if ('A' <= a && a <= 'F') {
-			return (a - 'A') + 10;
-		} else {
-			throw new RuntimeException("Invalid hex character: " + a);
+	/** 16進変換テーブル：読み飛ばし文字 */
+	private static final byte HEX_SKIP = -2;
+	/** 16進変換テーブル：不正文字 */
+	private static final byte HEX_INVALID = -1;
+
+	/** 16進変換テーブル（ASCII文字→値） */
+	private static final byte[] HEX_VALUES = new byte[128];
+	static {
+		Arrays.fill(HEX_VALUES, HEX_INVALID);
+		for (int i = 0; i < 10; i++) {
+			HEX_VALUES['0' + i] = (byte) i;
 		}
+		for (int i = 0; i < 6; i++) {
+			HEX_VALUES['a' + i] = (byte) (10 + i);
+			HEX_VALUES['A' + i] = (byte) (10 + i);
+		}
+		HEX_VALUES[' '] = HEX_SKIP;
+		HEX_VALUES['-'] = HEX_SKIP;
+	}
+
+	/**
+	 * 16進文字の値を取得
+	 * @param c 文字
+	 * @return 0～15:16進文字の値、{@link #HEX_SKIP}:読み飛ばし文字、{@link #HEX_INVALID}:不正文字
+	 */
+	static int hexValue(int c) {
+		return c < 128 ? HEX_VALUES[c] : HEX_INVALID;
 	}
 
 	/**
@@ -143,6 +198,191 @@ public class ApnsUtil {
 		}
 	}
 
+	/**
+	 * UTF8のByte配列を文字列に変換
+	 * @param bytes 変換するbyte配列
+	 * @return 変換後の文字列
+	 */
+	public static String convertUTF8BytesToString(byte[] bytes) {
+		try {
+			return new String(bytes, "UTF-8");
+		} catch (final UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * JSON文字列としてエスケープしたUTF-8のバイト数の計算
+	 *
+	 * <p>
+	 * 前後のダブルクォートは含みません。
+	 * エスケープ規則は{@link #writeJsonEscapedUTF8(String, byte[], int)}と同じです。
+	 * </p>
+	 *
+	 * @param s 文字列
+	 * @return バイト数
+	 */
+	static int getJsonEscapedUTF8Length(CharSequence s) {
+		int length = 0;
+		final int len = s.length();
+		for (int i = 0; i < len; i++) {
+			int n = getJsonEscapedUTF8Length(s, i);
+			if (n == 4) {
+				// サロゲートペアは2文字分
+				i++;
+			}
+			length += n;
+		}
+		return length;
+	}
+
+	/**
+	 * 指定バイト数に収まる、JSON文字列としてエスケープしたUTF-8の最長の先頭部分の計算
+	 *
+	 * <p>
+	 * サロゲートペアの途中では切り詰めません。
+	 * </p>
+	 *
+	 * @param s 文字列
+	 * @param maxBytes 最大バイト数
+	 * @return 先頭部分の終了位置（{@code s}の文字Index、含まない）
+	 */
+	static int getJsonEscapedUTF8Prefix(CharSequence s, int maxBytes) {
+		int length = 0;
+		final int len = s.length();
+		int i = 0;
+		while (i < len) {
+			int n = getJsonEscapedUTF8Length(s, i);
+			if (length + n > maxBytes) {
+				break;
+			}
+			length += n;
+			i += (n == 4) ? 2 : 1;
+		}
+		return i;
+	}
+
+	/**
+	 * 1文字（サロゲートペアの場合は2文字）をJSON文字列としてエスケープしたUTF-8のバイト数
+	 * @param s 文字列
+	 * @param i 文字Index
+	 * @return バイト数。サロゲートペアの場合は4
+	 */
+	private static int getJsonEscapedUTF8Length(CharSequence s, int i) {
+		char c = s.charAt(i);
+		if (c < 0x80) {
+			return JSON_ESCAPE_LENGTH[c];
+		} else if (c < 0x800) {
+			return 2;
+		} else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+			return 4;
+		} else if (Character.isSurrogate(c)) {
+			// 不正なサロゲートは'?'に置換
+			return 1;
+		} else {
+			return 3;
+		}
+	}
+
+	/**
+	 * 文字列をJSON文字列としてエスケープしてUTF-8で書き込む
+	 *
+	 * <p>
+	 * ダブルクォート、バックスラッシュ、制御文字をエスケープします。前後のダブルクォートは書き込みません。<br>
+	 * 不正なサロゲートは'?'に置換します。
+	 * </p>
+	 *
+	 * @param s 文字列
+	 * @param buf 書き込み先。{@link #getJsonEscapedUTF8Length(CharSequence)}バイトの領域が必要
+	 * @param offset 書き込み開始位置
+	 * @return 次の書き込み位置
+	 */
+	static int writeJsonEscapedUTF8(CharSequence s, byte[] buf, int offset) {
+		int pos = offset;
+		final int len = s.length();
+		for (int i = 0; i < len; i++) {
+			char c = s.charAt(i);
+			if (c < 0x80) {
+				if (JSON_ESCAPE_LENGTH[c] == 1) {
+					buf[pos++] = (byte) c;
+				} else {
+					pos = writeJsonEscape(c, buf, pos);
+				}
+			} else if (c < 0x800) {
+				buf[pos++] = (byte) (0xc0 | (c >> 6));
+				buf[pos++] = (byte) (0x80 | (c & 0x3f));
+			} else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+				int cp = Character.toCodePoint(c, s.charAt(++i));
+				buf[pos++] = (byte) (0xf0 | (cp >> 18));
+				buf[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+				buf[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+				buf[pos++] = (byte) (0x80 | (cp & 0x3f));
+			} else if (Character.isSurrogate(c)) {
+				buf[pos++] = '?';
+			} else {
+				buf[pos++] = (byte) (0xe0 | (c >> 12));
+				buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+				buf[pos++] = (byte) (0x80 | (c & 0x3f));
+			}
+		}
+		return pos;
+	}
+
+	/**
+	 * ASCII文字のエスケープの書き込み
+	 * @param c 文字
+	 * @param buf 書き込み先
+	 * @param pos 書き込み位置
+	 * @return 次の書き込み位置
+	 */
+	private static int writeJsonEscape(char c, byte[] buf, int pos) {
+		buf[pos++] = '\\';
+		switch (c) {
+		case '"':
+		case '\\':
+			buf[pos++] = (byte) c;
+			break;
+		case '\b':
+			buf[pos++] = 'b';
+			break;
+		case '\t':
+			buf[pos++] = 't';
+			break;
+		case '\n':
+			buf[pos++] = 'n';
+			break;
+		case '\f':
+			buf[pos++] = 'f';
+			break;
+		case '\r':
+			buf[pos++] = 'r';
+			break;
+		default:
+			buf[pos++] = 'u';
+			buf[pos++] = '0';
+			buf[pos++] = '0';
+			buf[pos++] = (byte) base[c >> 4];
+			buf[pos++] = (byte) base[c & 0xf];
+		}
+		return pos;
+	}
+
+	/** JSONエスケープ後のバイト数（ASCII文字） */
+	private static final byte[] JSON_ESCAPE_LENGTH = new byte[128];
+	static {
+		Arrays.fill(JSON_ESCAPE_LENGTH, (byte) 1);
+		for (int i = 0; i < 0x20; i++) {
+			JSON_ESCAPE_LENGTH[i] = 6;
+		}
+		JSON_ESCAPE_LENGTH['\b'] = 2;
+		JSON_ESCAPE_LENGTH['\t'] = 2;
+		JSON_ESCAPE_LENGTH['\n'] = 2;
+		JSON_ESCAPE_LENGTH['\f'] = 2;
+		JSON_ESCAPE_LENGTH['\r'] = 2;
+		JSON_ESCAPE_LENGTH['"'] = 2;
+		JSON_ESCAPE_LENGTH['\\'] = 2;
+	}
+
 	/**
 	 * Listオブジェクトを分割する
 	 *
@@ -158,7 +398,9 @@ public class ApnsUtil {
 	 * @param lst 分割元のリスト
 	 * @param count 分割数
 	 * @return 分割されたListオブジェクト
+	 * @deprecated 全要素をコピーするため、{@link #partitionList(List, int)}または{@link #partitionByToken(List, int)}を使用してください
 	 */
+	@Deprecated
 	public synchronized static <T> List<List<T>> splitList(List<T> lst, int count) {
 		// 分割元のリストが分割数より少ない場合
 		if (lst.size() < count) {
@@ -180,6 +422,124 @@ public class ApnsUtil {
 		return result;
 	}
 
+	/**
+	 * Listオブジェクトを連続した範囲に分割する
+	 *
+	 * <p>
+	 * {@code lst}で指定したリストを{@code count}で指定した分割数で、連続した範囲のビュー（{@link List#subList(int, int)}）に分割します。
+	 * 要素はコピーされません。要素数10のリストを3分割する場合、[0]～[2]、[3]～[5]、[6]～[9]となります。<br>
+	 * 空の範囲は返却されません。分割後は元のリストの構造を変更してはいけません。
+	 * </p>
+	 *
+	 * @param lst 分割元のリスト（{@link java.util.RandomAccess}を実装するリストを推奨）
+	 * @param count 分割数
+	 * @return 分割されたListオブジェクト
+	 */
+	public static <T> List<List<T>> partitionList(List<T> lst, int count) {
+		int size = lst.size();
+		count = Math.max(Math.min(count, size), 1);
+		List<List<T>> result = new ArrayList<List<T>>(count);
+		for (int i = 0; i < count; i++) {
+			int from = (int) ((long) size * i / count);
+			int to = (int) ((long) size * (i + 1) / count);
+			if (from < to) {
+				result.add(lst.subList(from, to));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * PUSH通知のリストをデバイストークンのハッシュ値で分割する
+	 *
+	 * <p>
+	 * 同じデバイストークンの通知は必ず同じ分割先になり、分割先の中では元のリストの順序が保たれます。
+	 * マルチスレッド送信で分割先ごとに1つの接続で送信するため、デバイスごとの送信順序が保たれます。<br>
+	 * 各分割先は元のリストのIndexを保持するビューで、通知はコピーされません。空の分割先は返却されません。
+	 * 16進文字列として不正なデバイストークンの通知は、最初の分割先になります。
+	 * </p>
+	 *
+	 * @param lst 分割元のリスト
+	 * @param count 分割数
+	 * @return 分割されたListオブジェクト
+	 */
+	public static List<List<ApnsNotification>> partitionByToken(List<ApnsNotification> lst, int count) {
+		int size = lst.size();
+		count = Math.max(count, 1);
+
+		// 分割先ごとの件数
+		int[] partitions = new int[size];
+		int[] counts = new int[count];
+		int i = 0;
+		for (ApnsNotification n : lst) {
+			ApnsDeviceToken token = n.getDeviceToken();
+			int p = token == null ? 0 : partitionOf(token.hashCode(), count);
+			partitions[i++] = p;
+			counts[p]++;
+		}
+
+		// 分割先ごとのIndex
+		int[][] indexes = new int[count][];
+		for (int p = 0; p < count; p++) {
+			indexes[p] = new int[counts[p]];
+			counts[p] = 0;
+		}
+		for (i = 0; i < size; i++) {
+			int p = partitions[i];
+			indexes[p][counts[p]++] = i;
+		}
+
+		List<List<ApnsNotification>> result = new ArrayList<List<ApnsNotification>>(count);
+		List<ApnsNotification> source = lst instanceof RandomAccess ? lst : new ArrayList<ApnsNotification>(lst);
+		for (int p = 0; p < count; p++) {
+			if (indexes[p].length > 0) {
+				result.add(new IndexedList<ApnsNotification>(source, indexes[p]));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * デバイストークンのハッシュ値に対応する分割先の取得
+	 *
+	 * <p>
+	 * {@link ApnsNotification}のリストと{@link ApnsNotificationBatch}で、同じデバイストークンが同じ分割先になります。
+	 * </p>
+	 *
+	 * @param tokenHash デバイストークンのハッシュ値（{@link ApnsDeviceToken#hashCode()}）
+	 * @param count 分割数
+	 * @return 分割先（0～{@code count - 1}）
+	 */
+	static int partitionOf(int tokenHash, int count) {
+		int h = tokenHash ^ (tokenHash >>> 16);
+		return (h & Integer.MAX_VALUE) % count;
+	}
+
+	/**
+	 * 元のリストのIndexを保持するビュー
+	 */
+	private static class IndexedList<T> extends AbstractList<T> implements RandomAccess {
+		/** 元のリスト */
+		private final List<T> source;
+		/** 元のリストのIndex */
+		private final int[] indexes;
+
+		private IndexedList(List<T> source, int[] indexes) {
+			this.source = source;
+			this.indexes = indexes;
+		}
+
+		@Override
+		public T get(int index) {
+			return source.get(indexes[index]);
+		}
+
+		@Override
+		public int size() {
+			return indexes.length;
+		}
+	}
+
 	/**
 	 * APNs通信用SSLSocketFactoryの取得
 	 * @param certFileName 証明書ファイル名
@@ -216,6 +576,80 @@ public class ApnsUtil {
 		}
 	}
 
+	/**
+	 * 共有するAPNs通信用SSLSocketFactoryの取得
+	 *
+	 * <p>
+	 * 証明書ファイルごとに1度だけ{@link #getSSLSocketFactory(String, String)}で生成し、以降は同じインスタンスを返却します。
+	 * 複数のサービスで同じ証明書を使用する場合に、証明書の読み込みとSSLContextの初期化を共有できます。<br>
+	 * 証明書パスワード、または、証明書ファイルの更新日時かサイズが生成時から変わっている場合は、生成し直します。
+	 * 更新日時とサイズが変わらないまま証明書ファイルを差し替えた場合は、{@link #clearSharedSSLSocketFactory(String)}で破棄してください。
+	 * </p>
+	 *
+	 * @param certFileName 証明書ファイル名
+	 * @param certPassword 証明書パスワード
+	 * @return 共有する{@link SSLSocketFactory}オブジェクト
+	 */
+	public static SSLSocketFactory getSharedSSLSocketFactory(String certFileName, String certPassword) {
+		File file = new File(certFileName);
+		long lastModified = file.lastModified();
+		long length = file.length();
+		SharedSSLSocketFactory shared = sharedFactories.get(certFileName);
+		if (shared == null || !shared.matches(certPassword, lastModified, length)) {
+			SharedSSLSocketFactory created = new SharedSSLSocketFactory(certPassword, lastModified, length, getSSLSocketFactory(certFileName, certPassword));
+			if (shared == null) {
+				shared = sharedFactories.putIfAbsent(certFileName, created);
+				if (shared == null) {
+					shared = created;
+				}
+			} else {
+				sharedFactories.put(certFileName, created);
+				shared = created;
+			}
+		}
+		return shared.factory;
+	}
+
+	/**
+	 * 共有するSSLSocketFactoryの破棄
+	 * @param certFileName 証明書ファイル名
+	 */
+	public static void clearSharedSSLSocketFactory(String certFileName) {
+		sharedFactories.remove(certFileName);
+	}
+
+	/**
+	 * 共有SSLSocketFactory
+	 */
+	private static class SharedSSLSocketFactory {
+		/** 証明書パスワード */
+		private final String certPassword;
+		/** 生成時の証明書ファイルの更新日時 */
+		private final long lastModified;
+		/** 生成時の証明書ファイルのサイズ */
+		private final long length;
+		/** SSLSocketFactory */
+		private final SSLSocketFactory factory;
+
+		private SharedSSLSocketFactory(String certPassword, long lastModified, long length, SSLSocketFactory factory) {
+			this.certPassword = certPassword;
+			this.lastModified = lastModified;
+			this.length = length;
+			this.factory = factory;
+		}
+
+		/**
+		 * 生成時と同じ証明書かどうか
+		 * @param certPassword 証明書パスワード
+		 * @param lastModified 証明書ファイルの更新日時
+		 * @param length 証明書ファイルのサイズ
+		 * @return 証明書パスワード、更新日時、サイズが全て生成時と同じ場合はtrue
+		 */
+		private boolean matches(String certPassword, long lastModified, long length) {
+			return Objects.equals(this.certPassword, certPassword) && this.lastModified == lastModified && this.length == length;
+		}
+	}
+
 	/**
 	 * Push通知ゲートウェイ接続用Socket生成
 	 * @param isProduction productionホストに接続するかどうか
@@ -265,6 +699,8 @@ public class ApnsUtil {
 	 * @return {@link Socket}
 	 */
 	public static Socket createSocket(SSLSocketFactory factory, Proxy socksProxy, String host, int port) {
+		Object jfrEvent = ApnsJfr.ENABLED ? ApnsJfr.RECORDER.beginConnect() : null;
+		boolean connected = false;
 		Socket socket;
 		try {
 			if (socksProxy == null) {
@@ -286,10 +722,15 @@ public class ApnsUtil {
 					}
 				}
 			}
+			connected = true;
 			return socket;
 		} catch (Exception e) {
 			logger.error("Socketの生成に失敗しました。", e);
 			throw new ApnsException(e);
+		} finally {
+			if (jfrEvent != null) {
+				ApnsJfr.RECORDER.endConnect(jfrEvent, host, port, socksProxy != null, connected);
+			}
 		}
 	}
 
@@ -0,0 +1,199 @@
+package japns;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Java Flight Recorderのイベント（{@link ApnsJfrRecorder}の実装）
+ *
+ * <p>
+ * 接続、TLSハンドシェイク、通知の書き込み、エラー通知の処理、再接続の各時点でJFRのイベントを記録します。<br>
+ * JFRで記録していない場合、各メソッドはほとんど処理を行いません。
+ * 通知の書き込みは件数が多いため、デフォルトでは1ミリ秒以上かかったもののみ記録します（JFRの設定で変更できます）。
+ * </p>
+ *
+ * <p>
+ * このクラスは{@code jdk.jfr}パッケージに依存するため、Java 8でビルドできるように{@code src/main/jfr}に置き、
+ * JDK 9以降でのビルド時のみ別にコンパイルします（pom.xmlの{@code jfr}プロファイル）。
+ * {@link ApnsJfr}がリフレクションで生成するため、呼び出し元は{@code jdk.jfr}パッケージにもこのクラスにも依存しません。
+ * </p>
+ *
+ * @author T.Inukai
+ */
+final class ApnsJfrEvents implements ApnsJfrRecorder {
+
+	@Override
+	public Object beginConnect() {
+		ConnectEvent event = new ConnectEvent();
+		event.begin();
+		return event;
+	}
+
+	@Override
+	public void endConnect(Object e, String host, int port, boolean proxy, boolean success) {
+		ConnectEvent event = (ConnectEvent) e;
+		event.end();
+		if (event.shouldCommit()) {
+			event.host = host;
+			event.port = port;
+			event.proxy = proxy;
+			event.success = success;
+			event.commit();
+		}
+	}
+
+	@Override
+	public Object beginHandshake() {
+		HandshakeEvent event = new HandshakeEvent();
+		event.begin();
+		return event;
+	}
+
+	@Override
+	public void endHandshake(Object e, long connectionId, boolean success) {
+		HandshakeEvent event = (HandshakeEvent) e;
+		event.end();
+		if (event.shouldCommit()) {
+			event.connectionId = connectionId;
+			event.success = success;
+			event.commit();
+		}
+	}
+
+	@Override
+	public Object beginWrite() {
+		WriteEvent event = new WriteEvent();
+		event.begin();
+		return event;
+	}
+
+	@Override
+	public void endWrite(Object e, long connectionId, int identifier, int bytes) {
+		WriteEvent event = (WriteEvent) e;
+		event.end();
+		if (event.shouldCommit()) {
+			event.connectionId = connectionId;
+			event.identifier = identifier;
+			event.bytes = bytes;
+			event.commit();
+		}
+	}
+
+	@Override
+	public Object beginError() {
+		ErrorEvent event = new ErrorEvent();
+		event.begin();
+		return event;
+	}
+
+	@Override
+	public void endError(Object e, long connectionId, int status, int errorIdentifier, int firstIdentifier, int lastIdentifier, int resendCount) {
+		ErrorEvent event = (ErrorEvent) e;
+		event.end();
+		if (event.shouldCommit()) {
+			event.connectionId = connectionId;
+			event.status = status;
+			event.errorIdentifier = errorIdentifier;
+			event.firstIdentifier = firstIdentifier;
+			event.lastIdentifier = lastIdentifier;
+			event.resendCount = resendCount;
+			event.commit();
+		}
+	}
+
+	@Override
+	public void reconnect(long previousConnectionId, String cause, int nextIndex, long previousBytes) {
+		ReconnectEvent event = new ReconnectEvent();
+		if (event.shouldCommit()) {
+			event.previousConnectionId = previousConnectionId;
+			event.cause = cause;
+			event.nextIndex = nextIndex;
+			event.previousBytes = previousBytes;
+			event.commit();
+		}
+	}
+
+	@Name("japns.Connect")
+	@Label("APNs Connect")
+	@Category("APNs")
+	@Description("APNsまたはフィードバックサービスへのソケット接続")
+	static class ConnectEvent extends Event {
+		@Label("Host")
+		String host;
+		@Label("Port")
+		int port;
+		@Label("SOCKS Proxy")
+		boolean proxy;
+		@Label("Success")
+		boolean success;
+	}
+
+	@Name("japns.Handshake")
+	@Label("APNs TLS Handshake")
+	@Category("APNs")
+	@Description("APNsゲートウェイとのTLSハンドシェイク")
+	static class HandshakeEvent extends Event {
+		@Label("Connection Id")
+		long connectionId;
+		@Label("Success")
+		boolean success;
+	}
+
+	@Name("japns.Write")
+	@Label("APNs Write")
+	@Category("APNs")
+	@Description("通知バイナリデータの書き込み")
+	@Threshold("1 ms")
+	@StackTrace(false)
+	static class WriteEvent extends Event {
+		@Label("Connection Id")
+		long connectionId;
+		@Label("Identifier")
+		int identifier;
+		@Label("Bytes")
+		@DataAmount
+		int bytes;
+	}
+
+	@Name("japns.Error")
+	@Label("APNs Error Recovery")
+	@Category("APNs")
+	@Description("送信エラーまたはAPNsのエラー通知の処理")
+	static class ErrorEvent extends Event {
+		@Label("Connection Id")
+		long connectionId;
+		@Label("Status")
+		int status;
+		@Label("Error Identifier")
+		int errorIdentifier;
+		@Label("First Identifier")
+		int firstIdentifier;
+		@Label("Last Identifier")
+		int lastIdentifier;
+		@Label("Resend Count")
+		int resendCount;
+	}
+
+	@Name("japns.Reconnect")
+	@Label("APNs Reconnect")
+	@Category("APNs")
+	@Description("APNsゲートウェイへの再接続")
+	@StackTrace(false)
+	static class ReconnectEvent extends Event {
+		@Label("Previous Connection Id")
+		long previousConnectionId;
+		@Label("Cause")
+		String cause;
+		@Label("Next Index")
+		int nextIndex;
+		@Label("Previous Bytes")
+		@DataAmount
+		long previousBytes;
+	}
+}
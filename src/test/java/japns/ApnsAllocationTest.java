@@ -0,0 +1,361 @@
+package japns;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import japns.ApnsNotification.Priority;
+import japns.ApnsResult.ResultMode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketException;
+
+import javax.net.ssl.SSLSocketFactory;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 送信処理のメモリ割り当て量の回帰テスト
+ *
+ * <p>
+ * メモリ上のソケットに対して送信処理を実行し、通知1件あたりの割り当てバイト数が上限以内であることを確認します。
+ * 割り当てバイト数は{@code push()}を呼び出したスレッドについて計測します（エラー通知の受信スレッドは含みません）。
+ * 接続ごとの割り当て（ソケット、受信スレッドなど）は通知件数で按分されます。
+ * </p>
+ *
+ * @author T.Inukai
+ */
+public class ApnsAllocationTest {
+
+	/** 通知件数 */
+	private static final int COUNT = 50000;
+
+	/** 生成の上限（バイト/件） */
+	private static final double ENCODE_BUDGET = 1;
+	/** 送信の上限（バイト/件） */
+	private static final double SUCCESS_BUDGET = 4;
+	/** 計測を有効にした送信の上限（バイト/件。書き込み時刻は未確定の通知分のリングバッファに保持し、送信処理をまたいで再利用） */
+	private static final double INSTRUMENTED_BUDGET = 4;
+	/** エラー通知からの回復を含む送信の上限（バイト/件。再接続1回あたり約8KBを按分） */
+	private static final double ERROR_RECOVERY_BUDGET = 16;
+
+	/** ウォームアップの回数 */
+	private static final int WARMUP_COUNT = 3;
+
+	/** エラー通知を返す間隔（通知件数） */
+	private static final int ERROR_INTERVAL = 1000;
+
+	/** スレッドごとの割り当てバイト数の計測 */
+	private com.sun.management.ThreadMXBean threads;
+
+	/** 送信バッチ */
+	private ApnsNotificationBatch batch;
+
+	@Before
+	public void setUp() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+		threads = (com.sun.management.ThreadMXBean) bean;
+		Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+		threads.setThreadAllocatedMemoryEnabled(true);
+
+		ApnsPayload payload = new ApnsPayload();
+		payload.setAlertBody("割り当てテスト");
+		payload.setBadge(1);
+		batch = new ApnsNotificationBatch(COUNT);
+		int payloadIndex = batch.addPayload(payload.build());
+		byte[] token = new byte[32];
+		for (int i = 0; i < COUNT; i++) {
+			token[0] = (byte) i;
+			token[1] = (byte) (i >>> 8);
+			batch.add(token, 0, token.length, payloadIndex, Integer.MAX_VALUE, Priority.HIGH);
+		}
+	}
+
+	@Test
+	public void encode() {
+		byte[] buf = new byte[batch.getNotificationLength(0)];
+		for (int i = 0; i < COUNT; i++) {
+			batch.encodeNotificationBytes(i, buf, 0);
+		}
+		long before = allocatedBytes();
+		for (int i = 0; i < COUNT; i++) {
+			batch.encodeNotificationBytes(i, buf, 0);
+		}
+		assertBudget("encode", allocatedBytes() - before, ENCODE_BUDGET);
+	}
+
+	@Test
+	public void success() {
+		InMemoryGateway gateway = new InMemoryGateway(0);
+		ApnsNotificationService service = createService(gateway);
+		assertBudget("success", measurePush(service), SUCCESS_BUDGET);
+		assertEquals(0, gateway.errorCount);
+	}
+
+	@Test
+	public void instrumentedWrite() {
+		InMemoryGateway gateway = new InMemoryGateway(0);
+		ApnsNotificationService service = createService(gateway);
+		service.setMetrics(new ApnsJmxMetrics());
+		service.setLatencyTracer(new ApnsLatencyTracer());
+		assertBudget("instrumentedWrite", measurePush(service), INSTRUMENTED_BUDGET);
+	}
+
+	@Test
+	public void errorRecovery() {
+		InMemoryGateway gateway = new InMemoryGateway(ERROR_INTERVAL);
+		ApnsNotificationService service = createService(gateway);
+		assertBudget("errorRecovery", measurePush(service), ERROR_RECOVERY_BUDGET);
+		assertTrue(gateway.errorCount > 0);
+	}
+
+	/**
+	 * メモリ上のゲートウェイに接続するサービスの生成
+	 * @param gateway ゲートウェイ
+	 * @return サービス
+	 */
+	private ApnsNotificationService createService(InMemoryGateway gateway) {
+		ApnsNotificationService service = new ApnsNotificationService(false, gateway, null, 0, 0);
+		service.setGateway("localhost", 2195);
+		service.setResultMode(ResultMode.SUMMARY);
+		return service;
+	}
+
+	/**
+	 * 送信処理の割り当てバイト数の計測（JITコンパイルが済むまでウォームアップしてから計測）
+	 * @param service サービス
+	 * @return 割り当てバイト数
+	 */
+	private long measurePush(ApnsNotificationService service) {
+		for (int i = 0; i < WARMUP_COUNT; i++) {
+			assertTrue(service.push(batch).isSuccess());
+		}
+		long before = allocatedBytes();
+		ApnsResult result = service.push(batch);
+		long allocated = allocatedBytes() - before;
+		assertTrue(result.isSuccess());
+		assertEquals(COUNT, result.getDoneCount() + result.getErrorCount());
+		return allocated;
+	}
+
+	/**
+	 * 割り当てバイト数の確認
+	 * @param name 処理名
+	 * @param allocated 割り当てバイト数
+	 * @param budget 通知1件あたりの上限
+	 */
+	private static void assertBudget(String name, long allocated, double budget) {
+		double perNotification = allocated / (double) COUNT;
+		assertTrue(String.format("%s: %.2f bytes/notification (budget %.2f)", name, perNotification, budget), perNotification <= budget);
+	}
+
+	/**
+	 * 現在のスレッドの割り当てバイト数の取得
+	 * @return 割り当てバイト数
+	 */
+	private long allocatedBytes() {
+		return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * メモリ上のゲートウェイ
+	 *
+	 * <p>
+	 * {@link SSLSocketFactory}として、書き込まれた通知を読み捨てる{@link InMemorySocket}を生成します。
+	 * エラー通知の間隔を指定すると、1接続で指定件数目の通知に対してステータス8のエラー通知を返します。
+	 * </p>
+	 */
+	private static class InMemoryGateway extends SSLSocketFactory {
+		/** エラー通知を返す間隔（0の場合は返さない） */
+		private final int errorInterval;
+		/** エラー通知を返した回数 */
+		private volatile int errorCount;
+
+		InMemoryGateway(int errorInterval) {
+			this.errorInterval = errorInterval;
+		}
+
+		@Override
+		public Socket createSocket(String host, int port) {
+			return new InMemorySocket(this);
+		}
+
+		@Override
+		public Socket createSocket(Socket s, String host, int port, boolean autoClose) {
+			return new InMemorySocket(this);
+		}
+
+		@Override
+		public Socket createSocket(String host, int port, InetAddress localHost, int localPort) {
+			return new InMemorySocket(this);
+		}
+
+		@Override
+		public Socket createSocket(InetAddress host, int port) {
+			return new InMemorySocket(this);
+		}
+
+		@Override
+		public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) {
+			return new InMemorySocket(this);
+		}
+
+		@Override
+		public String[] getDefaultCipherSuites() {
+			return new String[0];
+		}
+
+		@Override
+		public String[] getSupportedCipherSuites() {
+			return new String[0];
+		}
+	}
+
+	/**
+	 * メモリ上のソケット
+	 */
+	private static class InMemorySocket extends Socket {
+		/** ゲートウェイ */
+		private final InMemoryGateway gateway;
+		/** エラー通知 */
+		private final byte[] response = new byte[6];
+		/** エラー通知の有無 */
+		private boolean hasResponse;
+		/** エラー通知が読み込まれたか */
+		private boolean responseRead;
+		/** クローズ済みか */
+		private boolean closed;
+		/** この接続で受け付けた通知の件数 */
+		private int frameCount;
+
+		/** 書き込まれた通知を読み捨てるストリーム */
+		private final OutputStream out = new OutputStream() {
+			@Override
+			public void write(int b) {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				onFrame(b, off, len);
+			}
+		};
+
+		/** エラー通知を返すストリーム */
+		private final InputStream in = new InputStream() {
+			@Override
+			public int read() {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				return readResponse(b, off, len);
+			}
+		};
+
+		InMemorySocket(InMemoryGateway gateway) {
+			this.gateway = gateway;
+		}
+
+		/**
+		 * 通知の受信（1回の書き込みで1件）
+		 */
+		private synchronized void onFrame(byte[] b, int off, int len) throws IOException {
+			if (closed) {
+				throw new SocketException("Socket is closed");
+			}
+			if (hasResponse) {
+				// エラー通知後の通知は、エラー通知が読み込まれるまで待機してから破棄
+				while (!responseRead && !closed) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						throw new SocketException("interrupted");
+					}
+				}
+				return;
+			}
+			frameCount++;
+			if (gateway.errorInterval > 0 && frameCount % gateway.errorInterval == 0) {
+				int identifier = findIdentifier(b, off, len);
+				response[0] = 8;
+				response[1] = 8;
+				response[2] = (byte) (identifier >>> 24);
+				response[3] = (byte) (identifier >>> 16);
+				response[4] = (byte) (identifier >>> 8);
+				response[5] = (byte) identifier;
+				hasResponse = true;
+				gateway.errorCount++;
+				notifyAll();
+			}
+		}
+
+		/**
+		 * エラー通知の読み込み（エラー通知またはクローズまで待機）
+		 */
+		private synchronized int readResponse(byte[] b, int off, int len) throws IOException {
+			while (!hasResponse && !closed) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					throw new SocketException("interrupted");
+				}
+			}
+			if (!hasResponse) {
+				throw new SocketException("Socket is closed");
+			}
+			int n = Math.min(len, response.length);
+			System.arraycopy(response, 0, b, off, n);
+			responseRead = true;
+			notifyAll();
+			return n;
+		}
+
+		/**
+		 * 通知の識別子の取得
+		 */
+		private static int findIdentifier(byte[] b, int off, int len) {
+			int pos = off + 5;
+			int end = off + len;
+			while (pos + 3 <= end) {
+				int itemId = b[pos] & 0xff;
+				int itemLength = ((b[pos + 1] & 0xff) << 8) | (b[pos + 2] & 0xff);
+				if (itemId == 3) {
+					return ApnsUtil.parseBytesToInt(b[pos + 3], b[pos + 4], b[pos + 5], b[pos + 6]);
+				}
+				pos += 3 + itemLength;
+			}
+			return 0;
+		}
+
+		@Override
+		public OutputStream getOutputStream() {
+			return out;
+		}
+
+		@Override
+		public InputStream getInputStream() {
+			return in;
+		}
+
+		@Override
+		public synchronized boolean isClosed() {
+			return closed;
+		}
+
+		@Override
+		public synchronized void close() {
+			closed = true;
+			notifyAll();
+		}
+	}
+}
@@ -0,0 +1,220 @@
+package japns;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import japns.ApnsNotification.Priority;
+import japns.ApnsPushStatistics.ReconnectCause;
+import japns.ApnsResult.ResultMode;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * 証明書の差し替えのテスト
+ *
+ * <p>
+ * {@link ApnsMockGateway}に対して送信中に証明書を差し替え、送信中の接続が切断されずに使用され続け、
+ * 以降の接続から新しい証明書が使用されることを確認します。
+ * </p>
+ *
+ * @author T.Inukai
+ */
+public class ApnsCertificateWatcherTest {
+
+	/** 通知件数 */
+	private static final int COUNT = 20000;
+	/** 最大パケットサイズ（1接続あたり約4000件） */
+	private static final long MAX_PACKET = 400000;
+	/** ゲートウェイの受信速度（送信に約2秒かかる速度） */
+	private static final long READ_BYTES_PER_SECOND = 1000000;
+
+	/** 差し替え前のクライアント証明書のCN */
+	private static final String OLD_CN = "client-1";
+	/** 差し替え後のクライアント証明書のCN */
+	private static final String NEW_CN = "client-rotated";
+
+	/** 変更するシステムプロパティ */
+	private static final String[] TRUST_PROPERTIES = { "javax.net.ssl.trustStore", "javax.net.ssl.trustStorePassword", "javax.net.ssl.trustStoreType" };
+
+	/** 変更前のシステムプロパティ */
+	private final String[] savedProperties = new String[TRUST_PROPERTIES.length];
+
+	/** モックサーバのTLS設定 */
+	private static ApnsMockTls tls;
+	/** 差し替え前のクライアント証明書 */
+	private static File oldCert;
+	/** 差し替え後のクライアント証明書 */
+	private static File newCert;
+
+	private ApnsMockGateway gateway;
+	private File certFile;
+	private ApnsCertificateWatcher watcher;
+
+	@BeforeClass
+	public static void setUpClass() {
+		tls = ApnsMockTls.create();
+		oldCert = ApnsMockTls.createKeyStoreFile(OLD_CN);
+		newCert = ApnsMockTls.createKeyStoreFile(NEW_CN);
+	}
+
+	@Before
+	public void setUp() throws IOException {
+		gateway = new ApnsMockGateway(tls).start();
+
+		// ApnsUtil#getSSLSocketFactoryはデフォルトのトラストストアを使用するため、モックサーバの証明書を信頼させる
+		String[] values = { tls.getKeyStoreFile().getPath(), ApnsMockTls.PASSWORD, "PKCS12" };
+		for (int i = 0; i < TRUST_PROPERTIES.length; i++) {
+			savedProperties[i] = System.getProperty(TRUST_PROPERTIES[i]);
+			System.setProperty(TRUST_PROPERTIES[i], values[i]);
+		}
+
+		certFile = File.createTempFile("japns-cert", ".p12");
+		certFile.deleteOnExit();
+		Files.copy(oldCert.toPath(), certFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		watcher = new ApnsCertificateWatcher(certFile.getPath(), ApnsMockTls.PASSWORD);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		for (int i = 0; i < TRUST_PROPERTIES.length; i++) {
+			if (savedProperties[i] == null) {
+				System.clearProperty(TRUST_PROPERTIES[i]);
+			} else {
+				System.setProperty(TRUST_PROPERTIES[i], savedProperties[i]);
+			}
+		}
+		if (watcher != null) {
+			watcher.stop();
+		}
+		if (gateway != null) {
+			gateway.close();
+		}
+	}
+
+	@Test
+	public void rotateDuringPush() throws Exception {
+		gateway.setReadBytesPerSecond(READ_BYTES_PER_SECOND);
+		ApnsNotificationService service = new ApnsNotificationService(false, watcher, null, 0, MAX_PACKET);
+		service.setGateway("localhost", gateway.getPort());
+		service.setResultMode(ResultMode.SUMMARY);
+		ApnsNotificationBatch batch = createBatch(COUNT);
+
+		// 3分の1を受信した時点で証明書を差し替える
+		final AtomicLong connectionsBeforeRotation = new AtomicLong();
+		final Exception[] rotationError = new Exception[1];
+		Thread rotation = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					while (gateway.getFrameCount() < COUNT / 3) {
+						ApnsUtil.sleep(5);
+					}
+					connectionsBeforeRotation.set(gateway.getConnectionCount());
+					Files.copy(newCert.toPath(), certFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+					watcher.reload();
+				} catch (Exception e) {
+					rotationError[0] = e;
+				}
+			}
+		});
+		rotation.start();
+		ApnsResult result = service.push(batch);
+		rotation.join();
+
+		assertEquals(null, rotationError[0]);
+		assertEquals(2, watcher.getGeneration());
+		assertTrue(result.isSuccess());
+		assertEquals(COUNT, result.getDoneCount());
+
+		// 全ての通知がちょうど1回受け付けられている
+		Map<Integer, AtomicInteger> accepted = gateway.getAccepted();
+		assertEquals(COUNT, accepted.size());
+		for (AtomicInteger n : accepted.values()) {
+			assertEquals(1, n.get());
+		}
+
+		// 再接続は最大パケットサイズ超過のみ（差し替えによる再接続はない）
+		ApnsPushStatistics statistics = result.getStatistics();
+		long reconnects = 0;
+		for (ReconnectCause cause : ReconnectCause.values()) {
+			reconnects += statistics.getReconnectCount(cause);
+		}
+		assertEquals(statistics.getReconnectCount(ReconnectCause.MAX_PACKET), reconnects);
+		assertEquals(reconnects + 1, gateway.getConnectionCount());
+
+		// 差し替え時の接続は古い証明書のまま使用され、以降の接続は新しい証明書を使用する
+		List<String> subjects = gateway.getClientSubjects();
+		int oldCount = 0;
+		while (oldCount < subjects.size() && subjects.get(oldCount).equals("CN=" + OLD_CN)) {
+			oldCount++;
+		}
+		assertTrue(oldCount >= connectionsBeforeRotation.get());
+		assertTrue(oldCount < subjects.size());
+		for (int i = oldCount; i < subjects.size(); i++) {
+			assertEquals("CN=" + NEW_CN, subjects.get(i));
+		}
+	}
+
+	@Test
+	public void checkForUpdate() throws Exception {
+		assertFalse(watcher.checkForUpdate());
+		assertEquals(1, watcher.getGeneration());
+
+		Files.copy(newCert.toPath(), certFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		assertTrue(certFile.setLastModified(certFile.lastModified() + 10000));
+		assertTrue(watcher.checkForUpdate());
+		assertEquals(2, watcher.getGeneration());
+
+		// 読み込めないファイルに差し替えられた場合は現在の証明書を使用し続ける
+		FileOutputStream out = new FileOutputStream(certFile);
+		try {
+			out.write(new byte[] { 1, 2, 3 });
+		} finally {
+			out.close();
+		}
+		assertFalse(watcher.checkForUpdate());
+		assertEquals(2, watcher.getGeneration());
+
+		ApnsNotificationService service = new ApnsNotificationService(false, watcher, null, 0, 0);
+		service.setGateway("localhost", gateway.getPort());
+		ApnsResult result = service.push(createBatch(10));
+		assertTrue(result.isSuccess());
+		assertEquals(10, result.getDoneCount());
+		List<String> subjects = gateway.getClientSubjects();
+		assertEquals("CN=" + NEW_CN, subjects.get(subjects.size() - 1));
+	}
+
+	/**
+	 * 送信バッチの生成
+	 * @param count 件数
+	 * @return 送信バッチ
+	 */
+	private static ApnsNotificationBatch createBatch(int count) {
+		ApnsPayload payload = new ApnsPayload();
+		payload.setAlertBody("証明書の差し替え");
+		payload.setBadge(1);
+		ApnsNotificationBatch batch = new ApnsNotificationBatch(count);
+		int payloadIndex = batch.addPayload(payload.build());
+		byte[] token = new byte[32];
+		for (int i = 0; i < count; i++) {
+			token[0] = (byte) i;
+			token[1] = (byte) (i >>> 8);
+			batch.add(token, 0, token.length, payloadIndex, Integer.MAX_VALUE, Priority.HIGH);
+		}
+		return batch;
+	}
+}
@@ -0,0 +1,142 @@
+package japns;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import japns.ApnsEventRing.EventType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * 送信イベントのリングバッファのテスト
+ *
+ * @author T.Inukai
+ */
+public class ApnsEventRingTest {
+
+	@Test
+	public void keepsLatestEventsAfterWrap() {
+		ApnsEventRing ring = new ApnsEventRing(4);
+		for (int i = 0; i < 10; i++) {
+			ring.record(EventType.WRITE, 1, i, i);
+		}
+		assertEquals(10, ring.getRecordedCount());
+		String[] lines = ring.dump().split("\n");
+		assertEquals(4, lines.length);
+		for (int i = 0; i < lines.length; i++) {
+			assertTrue(lines[i], lines[i].startsWith((6 + i) + " "));
+			assertTrue(lines[i], lines[i].endsWith(" WRITE conn=1 a=" + (6 + i) + " b=" + (6 + i)));
+		}
+
+		ring.clear();
+		assertEquals("", ring.dump());
+	}
+
+	@Test
+	public void mergesLanesInTimeOrder() {
+		ApnsEventRing ring = new ApnsEventRing(8);
+		ApnsEventRing lane0 = ring.lane(0);
+		ApnsEventRing lane1 = ring.lane(1);
+		assertTrue(lane0 == ring.lane(0));
+		assertEquals(8, lane1.getCapacity());
+
+		lane1.record(EventType.PUSH_START, 0, 1, 0);
+		ApnsUtil.sleep(1);
+		lane0.record(EventType.PUSH_START, 0, 2, 0);
+		ApnsUtil.sleep(1);
+		lane1.record(EventType.PUSH_END, 3, 1, 0);
+
+		String[] lines = ring.dump().split("\n");
+		assertEquals(3, lines.length);
+		assertTrue(lines[0], lines[0].startsWith("2:0 ") && lines[0].contains(" PUSH_START ") && lines[0].endsWith(" a=1 b=0"));
+		assertTrue(lines[1], lines[1].startsWith("1:0 ") && lines[1].contains(" PUSH_START ") && lines[1].endsWith(" a=2 b=0"));
+		assertTrue(lines[2], lines[2].startsWith("2:1 ") && lines[2].contains(" PUSH_END conn=3 "));
+	}
+
+	@Test
+	public void dumpWhileRecordingHasNoTornEvents() throws Exception {
+		final ApnsEventRing ring = new ApnsEventRing(16);
+		final AtomicBoolean running = new AtomicBoolean(true);
+		Thread writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				for (long i = 0; running.get(); i++) {
+					ring.record(EventType.WRITE, i, i, i);
+				}
+			}
+		});
+		writer.start();
+		try {
+			for (int n = 0; n < 20000; n++) {
+				for (String line : ring.dump().split("\n")) {
+					if (line.isEmpty()) {
+						continue;
+					}
+					// 記録順、接続ID、値a、値bは全て同じ値で記録している
+					String seq = line.substring(0, line.indexOf(' '));
+					assertTrue(line, line.endsWith(" WRITE conn=" + seq + " a=" + seq + " b=" + seq));
+				}
+			}
+		} finally {
+			running.set(false);
+			writer.join();
+		}
+	}
+
+	@Test
+	public void concurrentReadersAndWritersSeeNoTornEvents() throws Exception {
+		final ApnsEventRing ring = new ApnsEventRing(4);
+		final AtomicBoolean running = new AtomicBoolean(true);
+		final AtomicReference<String> torn = new AtomicReference<String>();
+		List<Thread> threads = new ArrayList<Thread>();
+		// 共通のリングバッファとスレッドごとのリングバッファに並行して記録する
+		for (int w = 0; w < 3; w++) {
+			final ApnsEventRing target = w == 0 ? ring : ring.lane(w - 1);
+			threads.add(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (long i = 0; running.get(); i++) {
+						target.record(EventType.WRITE, i, i, i);
+					}
+				}
+			}));
+		}
+		for (int r = 0; r < 3; r++) {
+			threads.add(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					while (running.get() && torn.get() == null) {
+						for (String line : ring.dump().split("\n")) {
+							if (line.isEmpty()) {
+								continue;
+							}
+							// 記録順（リングバッファの番号を除く）、接続ID、値a、値bは全て同じ値で記録している
+							String seq = line.substring(line.indexOf(':') + 1, line.indexOf(' '));
+							if (!line.endsWith(" WRITE conn=" + seq + " a=" + seq + " b=" + seq)) {
+								torn.compareAndSet(null, line);
+							}
+						}
+					}
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		try {
+			ApnsUtil.sleep(2000);
+		} finally {
+			running.set(false);
+			for (Thread thread : threads) {
+				thread.join();
+			}
+		}
+		assertEquals(null, torn.get());
+		assertTrue(ring.getRecordedCount() > 0);
+	}
+}
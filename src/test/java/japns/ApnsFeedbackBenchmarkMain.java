@@ -0,0 +1,178 @@
+package japns;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * フィードバック読み込みのベンチマーク
+ *
+ * <p>
+ * {@link ApnsMockFeedbackServer}を起動し、指定件数ごとに{@link ApnsFeedbackService#feedback()}（リスト取得）と
+ * {@link ApnsFeedbackService#feedback(ApnsFeedbackListener)}（リスナ通知）の処理時間、割り当てバイト数、
+ * リストの保持に必要なヒープ使用量を出力します。リスナ通知では受信内容も検証します。
+ * </p>
+ *
+ * @author T.Inukai
+ */
+public class ApnsFeedbackBenchmarkMain {
+	private static Logger logger = LoggerFactory.getLogger(ApnsFeedbackBenchmarkMain.class);
+
+	/**
+	 * メイン
+	 * @param args
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args == null || args.length > 3) {
+			logger.error("Usage: japns.ApnsFeedbackBenchmarkMain [<counts>] [<chunk-size>] [<bytes-per-second>]\njapns.ApnsFeedbackBenchmarkMain 1000,100000,1000000 8192 0");
+			System.exit(1);
+		}
+
+		// 第1引数：件数（カンマ区切り）
+		String counts = args.length > 0 ? args[0] : "1000,100000,1000000";
+		// 第2引数：1回の書き込みのバイト数
+		int chunkSize = args.length > 1 ? Integer.parseInt(args[1]) : 8192;
+		// 第3引数：1秒あたりの送信バイト数の上限
+		long bytesPerSecond = args.length > 2 ? Long.parseLong(args[2]) : 0;
+
+		ApnsMockTls tls = ApnsMockTls.create();
+		ApnsMockFeedbackServer server = new ApnsMockFeedbackServer(tls).start();
+		try {
+			server.setChunkSize(chunkSize);
+			server.setBytesPerSecond(bytesPerSecond);
+			ApnsFeedbackService service = new ApnsFeedbackService(false, tls.getClientSocketFactory(), null);
+			service.setFeedbackServer("localhost", server.getPort());
+
+			// ウォームアップ
+			server.setEntryCount(10000);
+			for (int i = 0; i < 5; i++) {
+				service.feedback();
+				service.feedback(new VerifyingListener());
+			}
+
+			for (String s : counts.split(",")) {
+				int count = Integer.parseInt(s.trim());
+				server.setEntryCount(count);
+				runList(service, count);
+				runListener(service, count);
+			}
+		} finally {
+			server.close();
+		}
+	}
+
+	/**
+	 * リスト取得の計測
+	 * @param service フィードバックサービス
+	 * @param count 件数
+	 */
+	private static void runList(ApnsFeedbackService service, int count) {
+		long heapBefore = usedHeapAfterGc();
+		long allocatedBefore = allocatedBytes();
+		long start = System.nanoTime();
+		List<ApnsFeedback> list = service.feedback();
+		long elapsed = System.nanoTime() - start;
+		long allocated = allocatedBytes() - allocatedBefore;
+		long retained = usedHeapAfterGc() - heapBefore;
+		if (list.size() != count) {
+			throw new ApnsException("件数が一致しません。expected=" + count + ", actual=" + list.size());
+		}
+		report("feedback()", count, elapsed, allocated);
+		logger.info("  保持ヒープ:{}バイト ({}バイト/件)", retained, retained / Math.max(count, 1));
+		list.clear();
+	}
+
+	/**
+	 * リスナ通知の計測
+	 * @param service フィードバックサービス
+	 * @param count 件数
+	 */
+	private static void runListener(ApnsFeedbackService service, int count) {
+		VerifyingListener listener = new VerifyingListener();
+		long allocatedBefore = allocatedBytes();
+		long start = System.nanoTime();
+		int n = service.feedback(listener);
+		long elapsed = System.nanoTime() - start;
+		long allocated = allocatedBytes() - allocatedBefore;
+		if (n != count || listener.count != count) {
+			throw new ApnsException("件数が一致しません。expected=" + count + ", actual=" + n);
+		}
+		if (listener.mismatch != 0) {
+			throw new ApnsException("受信内容が一致しません。件数=" + listener.mismatch);
+		}
+		report("feedback(listener)", count, elapsed, allocated);
+	}
+
+	/**
+	 * 計測結果の出力
+	 * @param name 処理名
+	 * @param count 件数
+	 * @param elapsed 経過時間（ナノ秒）
+	 * @param allocated 割り当てバイト数（計測できない場合は負の値）
+	 */
+	private static void report(String name, int count, long elapsed, long allocated) {
+		double seconds = elapsed / (double) TimeUnit.SECONDS.toNanos(1);
+		logger.info("{} 件数:{}, 経過時間:{}ミリ秒, スループット:{}件/秒, 割り当て:{}バイト ({}バイト/件)",
+				name, count, TimeUnit.NANOSECONDS.toMillis(elapsed), String.format("%.0f", count / seconds),
+				allocated, allocated / Math.max(count, 1));
+	}
+
+	/**
+	 * GC後のヒープ使用量の取得
+	 * @return ヒープ使用量（バイト）
+	 */
+	private static long usedHeapAfterGc() {
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return memory.getHeapMemoryUsage().getUsed();
+	}
+
+	/**
+	 * 現在のスレッドの割り当てバイト数の取得
+	 * @return 割り当てバイト数。計測できない場合は-1
+	 */
+	private static long allocatedBytes() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	/**
+	 * 受信内容を検証するリスナ
+	 */
+	private static class VerifyingListener implements ApnsFeedbackListener {
+		/** 受信件数 */
+		private int count;
+		/** 内容が一致しない件数 */
+		private int mismatch;
+		/** 期待するデバイストークン */
+		private final byte[] expected = new byte[ApnsMockFeedbackServer.TOKEN_LENGTH];
+		/** 受信したデバイストークン */
+		private final byte[] actual = new byte[ApnsMockFeedbackServer.TOKEN_LENGTH];
+
+		@Override
+		public void onFeedback(ApnsFeedback apnsFeedback) {
+			int index = (int) (apnsFeedback.getTimestampSeconds() - ApnsMockFeedbackServer.BASE_TIMESTAMP);
+			ApnsMockFeedbackServer.fillToken(index, expected, 0);
+			if (index != count || apnsFeedback.getTokenLength() != actual.length) {
+				mismatch++;
+			} else {
+				apnsFeedback.copyToken(actual, 0);
+				if (!Arrays.equals(expected, actual)) {
+					mismatch++;
+				}
+			}
+			count++;
+		}
+	}
+}
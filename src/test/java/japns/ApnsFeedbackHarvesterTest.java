@@ -0,0 +1,75 @@
+package japns;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 複数アプリケーションのフィードバック情報の一括取得のテスト
+ *
+ * @author T.Inukai
+ */
+public class ApnsFeedbackHarvesterTest {
+
+	/** フィードバック情報の件数 */
+	private static final int COUNT = 50;
+	/** 切断するまでに送信する件数 */
+	private static final int DROP_AFTER = 10;
+
+	private ApnsMockFeedbackServer server;
+	private ApnsFeedbackHarvester harvester;
+
+	@Before
+	public void setUp() throws IOException {
+		ApnsMockTls tls = ApnsMockTls.create();
+		server = new ApnsMockFeedbackServer(tls).start();
+		server.setEntryCount(COUNT);
+		ApnsFeedbackService service = new ApnsFeedbackService(false, tls.getClientSocketFactory(), null);
+		service.setFeedbackServer("localhost", server.getPort());
+		harvester = new ApnsFeedbackHarvester(2);
+		harvester.addApplication("app", service);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		if (server != null) {
+			server.close();
+		}
+	}
+
+	@Test
+	public void returnsEntriesReceivedBeforeFailure() {
+		// 全ての再試行で送信途中に切断される
+		server.setDropAfter(DROP_AFTER);
+		Map<String, List<ApnsFeedback>> result = harvester.harvest();
+		assertTrue(result.isEmpty());
+		assertTrue(harvester.getFailures().containsKey("app"));
+		assertEquals(3, server.getConnectionCount());
+		assertEquals(DROP_AFTER, harvester.getStore("app").size());
+
+		// 失敗までに受信した情報も次の取得で返却される
+		server.setDropAfter(-1);
+		result = harvester.harvest();
+		assertTrue(harvester.getFailures().isEmpty());
+		List<ApnsFeedback> feedbacks = result.get("app");
+		assertEquals(COUNT, feedbacks.size());
+		byte[] token = new byte[ApnsMockFeedbackServer.TOKEN_LENGTH];
+		for (int i = 0; i < COUNT; i++) {
+			ApnsMockFeedbackServer.fillToken(i, token, 0);
+			assertEquals((int) (ApnsMockFeedbackServer.BASE_TIMESTAMP + i), feedbacks.get(i).getTimestampSeconds());
+			assertArrayEquals(token, feedbacks.get(i).getApnsDeviceToken().getBytes());
+		}
+
+		// 返却済みの情報は再度返却されない
+		result = harvester.harvest();
+		assertTrue(result.get("app").isEmpty());
+	}
+}
@@ -0,0 +1,158 @@
+package japns;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * フィードバック情報の読み込みのテスト
+ *
+ * <p>
+ * 1回の読み込みで1～7バイトしか返さないストリームで、組が読み込みをまたぐ場合を確認します。
+ * </p>
+ *
+ * @author T.Inukai
+ */
+public class ApnsFeedbackReaderTest {
+
+	@Test
+	public void tuplesSplitAcrossReads() throws IOException {
+		int count = 100;
+		byte[] data = createStream(count, 32);
+		for (int bufferSize : new int[] { 6, 38, 39, 100, ApnsFeedbackReader.DEFAULT_BUFFER_SIZE }) {
+			List<ApnsFeedback> received = new ArrayList<ApnsFeedback>();
+			int n = new ApnsFeedbackReader(bufferSize).read(new SmallReadInputStream(data), collector(received));
+			assertEquals("bufferSize=" + bufferSize, count, n);
+			assertReceived(count, 32, received);
+		}
+	}
+
+	@Test
+	public void growsBufferForLongTokens() throws IOException {
+		// 1組（6 + 300バイト）がバッファに収まらない
+		byte[] data = createStream(5, 300);
+		List<ApnsFeedback> received = new ArrayList<ApnsFeedback>();
+		int n = new ApnsFeedbackReader(16).read(new SmallReadInputStream(data), collector(received));
+		assertEquals(5, n);
+		assertReceived(5, 300, received);
+	}
+
+	@Test
+	public void ignoresTruncatedTuple() throws IOException {
+		byte[] data = createStream(3, 32);
+		byte[] truncated = new byte[data.length - 10];
+		System.arraycopy(data, 0, truncated, 0, truncated.length);
+		List<ApnsFeedback> received = new ArrayList<ApnsFeedback>();
+		int n = new ApnsFeedbackReader(8).read(new SmallReadInputStream(truncated), collector(received));
+		assertEquals(2, n);
+		assertReceived(2, 32, received);
+	}
+
+	/**
+	 * フィードバックサービスのストリームの生成
+	 * @param count 件数
+	 * @param tokenLength デバイストークンのバイト数
+	 * @return ストリームの内容
+	 */
+	private static byte[] createStream(int count, int tokenLength) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for (int i = 0; i < count; i++) {
+			int timestamp = timestamp(i);
+			out.write(timestamp >>> 24);
+			out.write(timestamp >>> 16);
+			out.write(timestamp >>> 8);
+			out.write(timestamp);
+			out.write(tokenLength >>> 8);
+			out.write(tokenLength);
+			byte[] token = token(i, tokenLength);
+			out.write(token, 0, token.length);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * 連番からタイムスタンプを生成（上位ビットが立つ値を含む）
+	 * @param index 連番
+	 * @return タイムスタンプ
+	 */
+	private static int timestamp(int index) {
+		return 0x80000000 + index * 1000003;
+	}
+
+	/**
+	 * 連番からデバイストークンを生成
+	 * @param index 連番
+	 * @param length バイト数
+	 * @return デバイストークン
+	 */
+	private static byte[] token(int index, int length) {
+		byte[] token = new byte[length];
+		for (int i = 0; i < length; i++) {
+			token[i] = (byte) (index * 7 + i);
+		}
+		return token;
+	}
+
+	/**
+	 * 受信したフィードバック情報を保持するリスナ
+	 *
+	 * <p>
+	 * リスナに渡されるインスタンスは再利用されるため、コピーを保持します。
+	 * </p>
+	 *
+	 * @param received 保持先
+	 * @return リスナ
+	 */
+	private static ApnsFeedbackListener collector(final List<ApnsFeedback> received) {
+		return new ApnsFeedbackListener() {
+			@Override
+			public void onFeedback(ApnsFeedback apnsFeedback) {
+				received.add(new ApnsFeedback(apnsFeedback.getTimestampSeconds(), apnsFeedback.getApnsDeviceToken()));
+			}
+		};
+	}
+
+	private static void assertReceived(int count, int tokenLength, List<ApnsFeedback> received) {
+		assertEquals(count, received.size());
+		for (int i = 0; i < count; i++) {
+			assertEquals(timestamp(i), received.get(i).getTimestampSeconds());
+			assertArrayEquals(token(i, tokenLength), received.get(i).getApnsDeviceToken().getBytes());
+		}
+	}
+
+	/**
+	 * 1回の読み込みで1～7バイトを順に返却するInputStream
+	 */
+	private static class SmallReadInputStream extends InputStream {
+		private final byte[] data;
+		private int pos;
+		private int reads;
+
+		SmallReadInputStream(byte[] data) {
+			this.data = data;
+		}
+
+		@Override
+		public int read() {
+			return pos < data.length ? data[pos++] & 0xff : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (pos >= data.length) {
+				return -1;
+			}
+			int n = Math.min(Math.min(len, reads++ % 7 + 1), data.length - pos);
+			System.arraycopy(data, pos, b, off, n);
+			pos += n;
+			return n;
+		}
+	}
+}
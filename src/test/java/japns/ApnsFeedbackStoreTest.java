@@ -0,0 +1,99 @@
+package japns;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * フィードバック情報ストアのテスト
+ *
+ * @author T.Inukai
+ */
+public class ApnsFeedbackStoreTest {
+
+	@Test
+	public void keepsLatestTimestampPerToken() {
+		ApnsFeedbackStore store = new ApnsFeedbackStore(1);
+		assertTrue(store.merge(new ApnsFeedback(100, token(1, 32))));
+		assertFalse(store.merge(new ApnsFeedback(100, token(1, 32))));
+		assertFalse(store.merge(new ApnsFeedback(99, token(1, 32))));
+		assertTrue(store.merge(new ApnsFeedback(101, token(1, 32))));
+		// 符号なし32ビット値として比較
+		assertTrue(store.merge(new ApnsFeedback(0x80000000, token(1, 32))));
+
+		assertEquals(1, store.size());
+		assertEquals(3, store.getCursor());
+		assertEquals(0x80000000, store.get(ApnsDeviceToken.wrap(token(1, 32))).getTimestampSeconds());
+		assertNull(store.get(ApnsDeviceToken.wrap(token(2, 32))));
+	}
+
+	@Test
+	public void changesSinceCursorInSequenceOrder() {
+		ApnsFeedbackStore store = new ApnsFeedbackStore();
+		store.merge(new ApnsFeedback(10, token(1, 32)));
+		store.merge(new ApnsFeedback(10, token(2, 32)));
+		store.merge(new ApnsFeedback(10, token(3, 32)));
+		long cursor = store.getCursor();
+		assertTrue(store.getChangesSince(cursor).isEmpty());
+
+		// 更新されたデバイストークンは最新の情報が1件だけ返却される
+		store.merge(new ApnsFeedback(20, token(1, 32)));
+		store.merge(new ApnsFeedback(20, token(4, 32)));
+		store.merge(new ApnsFeedback(30, token(1, 32)));
+		List<ApnsFeedback> changes = store.getChangesSince(cursor);
+		assertEquals(2, changes.size());
+		assertFeedback(20, token(4, 32), changes.get(0));
+		assertFeedback(30, token(1, 32), changes.get(1));
+
+		List<ApnsFeedback> all = store.getChangesSince(0);
+		assertEquals(4, all.size());
+		assertFeedback(10, token(2, 32), all.get(0));
+		assertFeedback(10, token(3, 32), all.get(1));
+		assertFeedback(20, token(4, 32), all.get(2));
+		assertFeedback(30, token(1, 32), all.get(3));
+	}
+
+	@Test
+	public void growsWithManyTokensOfDifferentLengths() {
+		ApnsFeedbackStore store = new ApnsFeedbackStore(1);
+		int count = 5000;
+		for (int round = 0; round < 3; round++) {
+			for (int i = 0; i < count; i++) {
+				store.merge(new ApnsFeedback(round, token(i, 16 + i % 32)));
+			}
+		}
+		assertEquals(count, store.size());
+		assertEquals(count * 3, store.getCursor());
+		for (int i = 0; i < count; i++) {
+			assertFeedback(2, token(i, 16 + i % 32), store.get(ApnsDeviceToken.wrap(token(i, 16 + i % 32))));
+		}
+		List<ApnsFeedback> changes = store.getChangesSince(count * 2 + count / 2);
+		assertEquals(count / 2, changes.size());
+		assertFeedback(2, token(count / 2, 16 + (count / 2) % 32), changes.get(0));
+	}
+
+	/**
+	 * 連番からデバイストークンを生成
+	 * @param index 連番
+	 * @param length 長さ
+	 * @return デバイストークン
+	 */
+	private static byte[] token(int index, int length) {
+		byte[] token = new byte[length];
+		for (int i = 0; i < length; i++) {
+			token[i] = (byte) (i < 4 ? index >>> (i * 8) : index * 31 + i);
+		}
+		return token;
+	}
+
+	private static void assertFeedback(int timestamp, byte[] token, ApnsFeedback actual) {
+		assertEquals(timestamp, actual.getTimestampSeconds());
+		assertArrayEquals(token, actual.getApnsDeviceToken().getBytes());
+	}
+}
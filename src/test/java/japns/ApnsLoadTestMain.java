@@ -0,0 +1,131 @@
+package japns;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * モックゲートウェイに対する負荷試験
+ *
+ * <p>
+ * {@link ApnsMockGateway}を起動し、エラーを注入しながら{@link ApnsNotificationService}で送信して、
+ * スループットと、エラー通知からの回復が正しいか（全ての通知がちょうど1回受け付けられたかエラーになったか）を出力します。
+ * </p>
+ *
+ * @author T.Inukai
+ */
+public class ApnsLoadTestMain {
+	private static Logger logger = LoggerFactory.getLogger(ApnsLoadTestMain.class);
+
+	/**
+	 * メイン
+	 * @param args
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args == null || args.length != 5) {
+			logger.error("Usage: japns.ApnsLoadTestMain <count> <thread-count> <error-rate> <shutdown-after> <read-bytes-per-second>\njapns.ApnsLoadTestMain 100000 4 0.001 5000 0");
+			System.exit(1);
+		}
+
+		// 第1引数：通知件数
+		int count = Integer.parseInt(args[0]);
+		// 第2引数：スレッド数
+		int threadCount = Integer.parseInt(args[1]);
+		// 第3引数：エラーにする割合
+		double errorRate = Double.parseDouble(args[2]);
+		// 第4引数：シャットダウンを通知するまでに1接続で受け付ける件数
+		int shutdownAfter = Integer.parseInt(args[3]);
+		// 第5引数：1秒あたりの受信バイト数の上限
+		long readBytesPerSecond = Long.parseLong(args[4]);
+
+		ApnsMockTls tls = ApnsMockTls.create();
+		ApnsMockGateway gateway = new ApnsMockGateway(tls).start();
+		try {
+			gateway.setErrorRate(errorRate, ApnsMockGateway.STATUS_INVALID_TOKEN);
+			gateway.setShutdownAfter(shutdownAfter);
+			gateway.setReadBytesPerSecond(readBytesPerSecond);
+
+			// 通知データを作る
+			ApnsPayload payload = new ApnsPayload();
+			payload.setAlertBody("負荷試験");
+			payload.setBadge(1);
+			ApnsEncodedPayload encoded = payload.build();
+			ApnsNotificationBatch batch = new ApnsNotificationBatch(count);
+			int payloadIndex = batch.addPayload(encoded);
+			byte[] token = new byte[32];
+			for (int i = 0; i < count; i++) {
+				ThreadLocalRandom.current().nextBytes(token);
+				batch.add(token, 0, token.length, payloadIndex, Integer.MAX_VALUE, ApnsNotification.Priority.HIGH);
+			}
+
+			ApnsNotificationService service = new ApnsNotificationService(false, tls.getClientSocketFactory(), null, 0, 0);
+			service.setGateway("localhost", gateway.getPort());
+
+			long start = System.nanoTime();
+			ApnsResult result = service.push(batch, threadCount);
+			long elapsed = System.nanoTime() - start;
+
+			// 回復の検証
+			Map<Integer, AtomicInteger> accepted = gateway.getAccepted();
+			Set<Integer> rejected = gateway.getRejected();
+			int duplicated = 0;
+			for (AtomicInteger n : accepted.values()) {
+				if (n.get() > 1) {
+					duplicated++;
+				}
+			}
+			int doneMismatch = 0;
+			int errorMismatch = 0;
+			Set<Integer> doneIdentifiers = new HashSet<Integer>();
+			for (int i = 0; i < batch.size(); i++) {
+				int identifier = batch.getIdentifier(i);
+				switch (batch.getPushStatus(i)) {
+				case DONE:
+					doneIdentifiers.add(identifier);
+					if (!accepted.containsKey(identifier)) {
+						doneMismatch++;
+					}
+					break;
+				case ERROR:
+					if (!rejected.contains(identifier)) {
+						errorMismatch++;
+					}
+					break;
+				default:
+					break;
+				}
+			}
+			List<Integer> lost = new ArrayList<Integer>();
+			for (Integer identifier : accepted.keySet()) {
+				if (!doneIdentifiers.contains(identifier)) {
+					lost.add(identifier);
+				}
+			}
+
+			double seconds = elapsed / (double) TimeUnit.SECONDS.toNanos(1);
+			logger.info("件数:{}, スレッド数:{}, 経過時間:{}秒, スループット:{}件/秒",
+					count, threadCount, String.format("%.3f", seconds), String.format("%.0f", count / seconds));
+			logger.info("成否:{}, 実行済:{}, エラー:{}, 未実行:{}", result.isSuccess(), result.getDoneCount(), result.getErrorCount(), result.getNoneCount());
+			logger.info("ゲートウェイ 接続数:{}, 受信件数:{}, 受付件数:{}, エラー件数:{}, シャットダウン:{}, 読み捨てバイト数:{}",
+					gateway.getConnectionCount(), gateway.getFrameCount(), accepted.size(), rejected.size(),
+					gateway.getShutdownCount(), gateway.getDiscardedBytes());
+			logger.info("送信統計:{}", result.getStatistics());
+			boolean correct = duplicated == 0 && doneMismatch == 0 && errorMismatch == 0 && lost.isEmpty() && result.getNoneCount() == 0;
+			logger.info("回復の検証:{} 重複受付:{}, 未受付の実行済:{}, 未拒否のエラー:{}, 受付済の未実行:{}",
+					correct ? "OK" : "NG", duplicated, doneMismatch, errorMismatch, lost.size());
+			if (!correct) {
+				System.exit(2);
+			}
+		} finally {
+			gateway.close();
+		}
+	}
+}
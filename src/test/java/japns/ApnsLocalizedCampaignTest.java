@@ -0,0 +1,65 @@
+package japns;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * ローカライズ配信のテスト
+ *
+ * @author T.Inukai
+ */
+public class ApnsLocalizedCampaignTest {
+
+	private static final String JA = "{\"aps\":{\"alert\":\"ja\"}}";
+	private static final String EN = "{\"aps\":{\"alert\":\"en\"}}";
+
+	@Test
+	public void keepsRecipientOrder() {
+		ApnsLocalizedCampaign campaign = createCampaign();
+
+		List<ApnsNotification> list = campaign.toNotificationList();
+		assertEquals(5, list.size());
+		for (int i = 0; i < list.size(); i++) {
+			assertEquals(token(i), list.get(i).getToken());
+			assertEquals(i % 2 == 0 ? JA : EN, list.get(i).getPayload());
+		}
+
+		ApnsNotificationBatch batch = campaign.toNotificationBatch();
+		assertEquals(5, batch.size());
+		for (int i = 0; i < batch.size(); i++) {
+			assertEquals(token(i), batch.getDeviceToken(i).toHex());
+			assertEquals(i % 2 == 0 ? JA : EN, batch.getPayload(i));
+		}
+		// ペイロードテーブルにはバリアントごとに1件だけ登録される
+		assertEquals(0, batch.getPayloadIndex(0));
+		assertEquals(1, batch.getPayloadIndex(1));
+		assertEquals(0, batch.getPayloadIndex(4));
+	}
+
+	/**
+	 * グループとデバイストークンの形式が交互になるように送信先を追加
+	 */
+	private static ApnsLocalizedCampaign createCampaign() {
+		ApnsLocalizedCampaign campaign = new ApnsLocalizedCampaign();
+		campaign.putVariant("ja", ApnsEncodedPayload.fromString(JA));
+		campaign.putVariant("en", ApnsEncodedPayload.fromString(EN));
+		campaign.setDefaultVariantKey("en");
+		campaign.addRecipient(token(0), "ja_JP");
+		campaign.addRecipient(ApnsDeviceToken.fromHex(token(1)), "en");
+		campaign.addRecipient(ApnsDeviceToken.fromHex(token(2)), "ja");
+		campaign.addRecipient(token(3), "fr");
+		campaign.addRecipient(token(4), "ja_JP");
+		return campaign;
+	}
+
+	private static String token(int n) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 32; i++) {
+			sb.append(String.format("%02x", n));
+		}
+		return sb.toString();
+	}
+}
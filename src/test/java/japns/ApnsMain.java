@@ -54,20 +54,23 @@ public class ApnsMain {
 
 			// 通知データを作る
 			List<ApnsNotification> apnsNotificationList = new ArrayList<ApnsNotification>();
+			// ペイロードはテンプレートとして一度だけ生成する（ニックネーム部分をプレースホルダにする）
+			ApnsPayload payload = new ApnsPayload();
+			// メッセージ
+			payload.setAlertBody("${nickname}さん！新しいお知らせが届いているよ！新しいお知らせが届いているよ！");
+			// バッジ
+			payload.setBadge(1);
+			// サウンド
+			payload.setSound("default");
+			// ボタン
+			payload.setActionLocKey("見る");
+			ApnsPayloadTemplate template = ApnsPayloadTemplate.compile(payload);
+
 			for (String deviceToken : tokenList) {
 				// 適当にランダムな数値を発行（可変要素であるニックネームを想定）
 				int rdm = (int) (Math.random() * 1000000);
 
-				ApnsPayload payload = new ApnsPayload();
-				// メッセージ
-				payload.setAlertBody("" + rdm + "さん！新しいお知らせが届いているよ！新しいお知らせが届いているよ！");
-				// バッジ
-				payload.setBadge(1);
-				// サウンド
-				payload.setSound("default");
-				// ボタン
-				payload.setActionLocKey("見る");
-				ApnsNotification apnsNotificationData = new ApnsNotification(deviceToken, payload.getPayload());
+				ApnsNotification apnsNotificationData = new ApnsNotification(deviceToken, template.render("" + rdm), Integer.MAX_VALUE, ApnsNotification.Priority.HIGH);
 				apnsNotificationList.add(apnsNotificationData);
 			}
 
@@ -0,0 +1,264 @@
+package japns;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 試験用のモックAPNsフィードバックサーバ
+ *
+ * <p>
+ * TLSで待ち受け、接続ごとに指定件数のフィードバック情報（タイムスタンプ4バイト、トークン長2バイト、トークン32バイト）を送信して切断します。<br>
+ * フィードバック情報は送信時に連番から生成するため、件数が多くてもメモリを使用しません。
+ * 1回の書き込みのバイト数と、1秒あたりの送信バイト数を指定できます。
+ * 指定件数を送信した時点で接続をリセットし、送信途中の切断を再現することもできます。
+ * </p>
+ *
+ * @author T.Inukai
+ */
+public class ApnsMockFeedbackServer implements Closeable {
+	private static Logger logger = LoggerFactory.getLogger(ApnsMockFeedbackServer.class);
+
+	/** デバイストークンのバイト数 */
+	public static final int TOKEN_LENGTH = 32;
+
+	/** フィードバック情報1件のバイト数 */
+	public static final int TUPLE_LENGTH = 4 + 2 + TOKEN_LENGTH;
+
+	/** 最初のフィードバック情報のタイムスタンプ（秒） */
+	public static final long BASE_TIMESTAMP = 1500000000L;
+
+	/** TLS設定 */
+	private final ApnsMockTls tls;
+
+	/** サーバソケット */
+	private ServerSocket serverSocket;
+
+	/** 送信するフィードバック情報の件数 */
+	private volatile int entryCount;
+	/** 1回の書き込みのバイト数 */
+	private volatile int chunkSize = 8192;
+	/** 1秒あたりの送信バイト数の上限（0の場合は制限しない） */
+	private volatile long bytesPerSecond;
+	/** 接続をリセットするまでに送信する件数（負の場合はリセットしない） */
+	private volatile int dropAfter = -1;
+
+	/** 接続数 */
+	private final AtomicLong connectionCount = new AtomicLong();
+
+	/**
+	 * インスタンスを生成します
+	 * @param tls TLS設定
+	 */
+	public ApnsMockFeedbackServer(ApnsMockTls tls) {
+		this.tls = tls;
+	}
+
+	/**
+	 * 待ち受けの開始
+	 * @return このインスタンス
+	 * @throws IOException
+	 */
+	public ApnsMockFeedbackServer start() throws IOException {
+		// 送信途中の切断で元のソケットを直接閉じるため、TLSは受け付けたソケットに重ねる
+		serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+		Thread acceptThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				acceptLoop();
+			}
+		}, "ApnsMockFeedbackServer-accept");
+		acceptThread.setDaemon(true);
+		acceptThread.start();
+		return this;
+	}
+
+	/**
+	 * 待ち受けポートの取得
+	 * @return ポート
+	 */
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (serverSocket != null) {
+			serverSocket.close();
+		}
+	}
+
+	/**
+	 * 送信するフィードバック情報の件数の設定
+	 * @param entryCount 件数
+	 */
+	public void setEntryCount(int entryCount) {
+		this.entryCount = entryCount;
+	}
+
+	/**
+	 * 1回の書き込みのバイト数の設定
+	 *
+	 * <p>
+	 * フィードバック情報の途中で分割されるバイト数を指定すると、クライアントの分割読み込みを試験できます。
+	 * </p>
+	 *
+	 * @param chunkSize 1回の書き込みのバイト数
+	 */
+	public void setChunkSize(int chunkSize) {
+		this.chunkSize = Math.max(chunkSize, 1);
+	}
+
+	/**
+	 * 送信速度の制限
+	 * @param bytesPerSecond 1秒あたりの送信バイト数の上限（0の場合は制限しない）
+	 */
+	public void setBytesPerSecond(long bytesPerSecond) {
+		this.bytesPerSecond = bytesPerSecond;
+	}
+
+	/**
+	 * 送信途中の切断の設定
+	 *
+	 * <p>
+	 * 指定件数を送信した後、close_notifyを送らずに接続をリセットします。クライアントには読み込みエラーになります。
+	 * </p>
+	 *
+	 * @param dropAfter 接続をリセットするまでに送信する件数（負の場合はリセットしない）
+	 */
+	public void setDropAfter(int dropAfter) {
+		this.dropAfter = dropAfter;
+	}
+
+	/**
+	 * 接続数の取得
+	 * @return 接続数
+	 */
+	public long getConnectionCount() {
+		return connectionCount.get();
+	}
+
+	/**
+	 * フィードバック情報のデバイストークンの生成
+	 * @param index フィードバック情報の連番
+	 * @param buf 書き込み先
+	 * @param offset 書き込み開始位置
+	 */
+	public static void fillToken(int index, byte[] buf, int offset) {
+		for (int i = 0; i < TOKEN_LENGTH; i += 4) {
+			int v = index * 31 + i;
+			buf[offset + i] = (byte) (v >>> 24);
+			buf[offset + i + 1] = (byte) (v >>> 16);
+			buf[offset + i + 2] = (byte) (v >>> 8);
+			buf[offset + i + 3] = (byte) v;
+		}
+	}
+
+	/**
+	 * 接続の受付
+	 */
+	private void acceptLoop() {
+		while (!serverSocket.isClosed()) {
+			final Socket socket;
+			try {
+				socket = serverSocket.accept();
+			} catch (IOException e) {
+				if (!serverSocket.isClosed()) {
+					logger.info("接続の受付に失敗しました。", e);
+				}
+				return;
+			}
+			connectionCount.incrementAndGet();
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					handle(socket);
+				}
+			}, "ApnsMockFeedbackServer-" + socket.getPort());
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	/**
+	 * 1接続の処理
+	 * @param socket ソケット
+	 */
+	private void handle(Socket rawSocket) {
+		Socket socket = null;
+		try {
+			socket = tls.wrapServerSocket(rawSocket);
+			OutputStream out = socket.getOutputStream();
+			int drop = dropAfter;
+			int count = drop >= 0 ? Math.min(entryCount, drop) : entryCount;
+			int size = chunkSize;
+			byte[] tuple = new byte[TUPLE_LENGTH];
+			byte[] chunk = new byte[size];
+			int filled = 0;
+			long sent = 0;
+			long startNanos = System.nanoTime();
+			for (int index = 0; index < count; index++) {
+				int timestamp = (int) (BASE_TIMESTAMP + index);
+				tuple[0] = (byte) (timestamp >>> 24);
+				tuple[1] = (byte) (timestamp >>> 16);
+				tuple[2] = (byte) (timestamp >>> 8);
+				tuple[3] = (byte) timestamp;
+				tuple[4] = 0;
+				tuple[5] = TOKEN_LENGTH;
+				fillToken(index, tuple, 6);
+				for (int pos = 0; pos < TUPLE_LENGTH;) {
+					int n = Math.min(TUPLE_LENGTH - pos, size - filled);
+					System.arraycopy(tuple, pos, chunk, filled, n);
+					pos += n;
+					filled += n;
+					if (filled == size) {
+						out.write(chunk, 0, filled);
+						out.flush();
+						sent += filled;
+						filled = 0;
+						throttle(startNanos, sent);
+					}
+				}
+			}
+			if (filled > 0) {
+				out.write(chunk, 0, filled);
+				out.flush();
+			}
+			if (drop >= 0) {
+				// クライアントが受信済みのデータを読み終えてから、close_notifyを送らずにリセットする
+				ApnsUtil.sleep(200);
+				rawSocket.setSoLinger(true, 0);
+				rawSocket.close();
+			}
+		} catch (IOException e) {
+			logger.debug("接続が切断されました。", e);
+		} finally {
+			ApnsUtil.close(socket != null ? socket : rawSocket);
+		}
+	}
+
+	/**
+	 * 送信速度の制限
+	 * @param startNanos 接続の開始時刻
+	 * @param sent 接続で送信したバイト数
+	 */
+	private void throttle(long startNanos, long sent) {
+		long limit = bytesPerSecond;
+		if (limit <= 0) {
+			return;
+		}
+		long expectedNanos = sent * TimeUnit.SECONDS.toNanos(1) / limit;
+		long waitNanos = expectedNanos - (System.nanoTime() - startNanos);
+		if (waitNanos > 0) {
+			ApnsUtil.sleep(TimeUnit.NANOSECONDS.toMillis(waitNanos));
+		}
+	}
+}
@@ -0,0 +1,429 @@
+package japns;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSocket;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 負荷試験用のモックAPNsゲートウェイ
+ *
+ * <p>
+ * TLSで待ち受け、バイナリインターフェースのコマンド2の通知を解析して、受け付けた通知の識別子を記録します。<br>
+ * 以下のエラーを注入できます。エラー通知（6バイト）を送信した後は、クライアントが切断するまで受信データを読み捨てます。
+ * </p>
+ *
+ * <ul>
+ * <li>指定した識別子の通知をエラーにする（{@link #failIdentifier(int, int)}）</li>
+ * <li>一定の割合の通知をエラーにする（{@link #setErrorRate(double, int)}）</li>
+ * <li>1接続で指定件数を受け付けた後にシャットダウン（ステータス10）を通知する（{@link #setShutdownAfter(int)}）</li>
+ * <li>受信速度を制限する（{@link #setReadBytesPerSecond(long)}）</li>
+ * </ul>
+ *
+ * <p>
+ * デバイストークンが32バイトでない場合はステータス5、ペイロードが2048バイトを超える場合はステータス7を通知します。
+ * </p>
+ *
+ * @author T.Inukai
+ */
+public class ApnsMockGateway implements Closeable {
+	private static Logger logger = LoggerFactory.getLogger(ApnsMockGateway.class);
+
+	/** ステータス:処理エラー */
+	public static final int STATUS_PROCESSING_ERROR = 1;
+	/** ステータス:デバイストークンのサイズ不正 */
+	public static final int STATUS_INVALID_TOKEN_SIZE = 5;
+	/** ステータス:ペイロードのサイズ不正 */
+	public static final int STATUS_INVALID_PAYLOAD_SIZE = 7;
+	/** ステータス:デバイストークン不正 */
+	public static final int STATUS_INVALID_TOKEN = 8;
+	/** ステータス:シャットダウン */
+	public static final int STATUS_SHUTDOWN = 10;
+
+	/** エラー通知後に読み捨てる時間の上限（ミリ秒） */
+	private static final int DRAIN_TIMEOUT_MS = 5000;
+
+	/** TLS設定 */
+	private final ApnsMockTls tls;
+
+	/** サーバソケット */
+	private ServerSocket serverSocket;
+
+	/** 識別子ごとのエラーステータス */
+	private final Map<Integer, Integer> identifierErrors = new ConcurrentHashMap<Integer, Integer>();
+	/** エラーにする割合 */
+	private volatile double errorRate;
+	/** 割合でエラーにする場合のステータス */
+	private volatile int errorRateStatus = STATUS_INVALID_TOKEN;
+	/** シャットダウンを通知するまでに1接続で受け付ける件数（0の場合は通知しない） */
+	private volatile int shutdownAfter;
+	/** 1秒あたりの受信バイト数の上限（0の場合は制限しない） */
+	private volatile long readBytesPerSecond;
+
+	/** 識別子ごとの受付回数 */
+	private final ConcurrentMap<Integer, AtomicInteger> accepted = new ConcurrentHashMap<Integer, AtomicInteger>();
+	/** エラーにした通知の識別子 */
+	private final Set<Integer> rejected = ConcurrentHashMap.newKeySet();
+	/** 接続数 */
+	private final AtomicLong connectionCount = new AtomicLong();
+	/** 受信した通知の件数（読み捨てを除く） */
+	private final AtomicLong frameCount = new AtomicLong();
+	/** 受信したバイト数 */
+	private final AtomicLong byteCount = new AtomicLong();
+	/** エラー通知後に読み捨てたバイト数 */
+	private final AtomicLong discardedBytes = new AtomicLong();
+	/** シャットダウンの通知回数 */
+	private final AtomicLong shutdownCount = new AtomicLong();
+	/** 接続ごとのクライアント証明書のサブジェクト（接続順） */
+	private final List<String> clientSubjects = new CopyOnWriteArrayList<String>();
+
+	/**
+	 * インスタンスを生成します
+	 * @param tls TLS設定
+	 */
+	public ApnsMockGateway(ApnsMockTls tls) {
+		this.tls = tls;
+	}
+
+	/**
+	 * 待ち受けの開始
+	 * @return このインスタンス
+	 * @throws IOException
+	 */
+	public ApnsMockGateway start() throws IOException {
+		serverSocket = tls.createServerSocket(0);
+		Thread acceptThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				acceptLoop();
+			}
+		}, "ApnsMockGateway-accept");
+		acceptThread.setDaemon(true);
+		acceptThread.start();
+		return this;
+	}
+
+	/**
+	 * 待ち受けポートの取得
+	 * @return ポート
+	 */
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (serverSocket != null) {
+			serverSocket.close();
+		}
+	}
+
+	/**
+	 * 指定した識別子の通知をエラーにする
+	 * @param identifier 識別子
+	 * @param status ステータス
+	 */
+	public void failIdentifier(int identifier, int status) {
+		identifierErrors.put(identifier, status);
+	}
+
+	/**
+	 * 一定の割合の通知をエラーにする
+	 * @param rate 割合（0～1）
+	 * @param status ステータス
+	 */
+	public void setErrorRate(double rate, int status) {
+		this.errorRate = rate;
+		this.errorRateStatus = status;
+	}
+
+	/**
+	 * シャットダウンの通知の設定
+	 * @param count シャットダウンを通知するまでに1接続で受け付ける件数（0の場合は通知しない）
+	 */
+	public void setShutdownAfter(int count) {
+		this.shutdownAfter = count;
+	}
+
+	/**
+	 * 受信速度の制限
+	 * @param bytesPerSecond 1秒あたりの受信バイト数の上限（0の場合は制限しない）
+	 */
+	public void setReadBytesPerSecond(long bytesPerSecond) {
+		this.readBytesPerSecond = bytesPerSecond;
+	}
+
+	/**
+	 * 識別子ごとの受付回数の取得
+	 * @return 識別子ごとの受付回数（Key:識別子, value:回数）
+	 */
+	public Map<Integer, AtomicInteger> getAccepted() {
+		return accepted;
+	}
+
+	/**
+	 * エラーにした通知の識別子の取得
+	 * @return エラーにした通知の識別子
+	 */
+	public Set<Integer> getRejected() {
+		return rejected;
+	}
+
+	/**
+	 * 接続数の取得
+	 * @return 接続数
+	 */
+	public long getConnectionCount() {
+		return connectionCount.get();
+	}
+
+	/**
+	 * 受信した通知の件数の取得
+	 * @return 受信した通知の件数（エラー通知後に読み捨てたものを除く）
+	 */
+	public long getFrameCount() {
+		return frameCount.get();
+	}
+
+	/**
+	 * 受信したバイト数の取得
+	 * @return 受信したバイト数（エラー通知後に読み捨てたものを除く）
+	 */
+	public long getByteCount() {
+		return byteCount.get();
+	}
+
+	/**
+	 * エラー通知後に読み捨てたバイト数の取得
+	 * @return 読み捨てたバイト数
+	 */
+	public long getDiscardedBytes() {
+		return discardedBytes.get();
+	}
+
+	/**
+	 * シャットダウンの通知回数の取得
+	 * @return シャットダウンの通知回数
+	 */
+	public long getShutdownCount() {
+		return shutdownCount.get();
+	}
+
+	/**
+	 * 接続ごとのクライアント証明書のサブジェクトの取得
+	 * @return クライアント証明書のサブジェクト（ハンドシェイクの完了順。証明書がない場合は空文字列）
+	 */
+	public List<String> getClientSubjects() {
+		return clientSubjects;
+	}
+
+	/**
+	 * 接続の受付
+	 */
+	private void acceptLoop() {
+		while (!serverSocket.isClosed()) {
+			final Socket socket;
+			try {
+				socket = serverSocket.accept();
+			} catch (IOException e) {
+				if (!serverSocket.isClosed()) {
+					logger.info("接続の受付に失敗しました。", e);
+				}
+				return;
+			}
+			connectionCount.incrementAndGet();
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					handle(socket);
+				}
+			}, "ApnsMockGateway-" + socket.getPort());
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	/**
+	 * 1接続の処理
+	 * @param socket ソケット
+	 */
+	private void handle(Socket socket) {
+		try {
+			clientSubjects.add(clientSubject(socket));
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			OutputStream out = socket.getOutputStream();
+			long startNanos = System.nanoTime();
+			long received = 0;
+			int acceptedOnConnection = 0;
+			int lastAccepted = 0;
+			while (true) {
+				int command = in.read();
+				if (command < 0) {
+					return;
+				}
+				if (command != 2) {
+					sendError(socket, in, out, STATUS_PROCESSING_ERROR, 0);
+					return;
+				}
+				int frameLength = in.readInt();
+				byte[] frame = new byte[frameLength];
+				in.readFully(frame);
+				received += 5 + frameLength;
+				byteCount.addAndGet(5 + frameLength);
+				frameCount.incrementAndGet();
+				throttle(startNanos, received);
+
+				// アイテムの解析
+				int identifier = 0;
+				int tokenLength = -1;
+				int payloadLength = -1;
+				int pos = 0;
+				while (pos + 3 <= frameLength) {
+					int itemId = frame[pos] & 0xff;
+					int itemLength = ((frame[pos + 1] & 0xff) << 8) | (frame[pos + 2] & 0xff);
+					int data = pos + 3;
+					if (itemId == 1) {
+						tokenLength = itemLength;
+					} else if (itemId == 2) {
+						payloadLength = itemLength;
+					} else if (itemId == 3 && itemLength == 4 && data + 4 <= frameLength) {
+						identifier = ApnsUtil.parseBytesToInt(frame[data], frame[data + 1], frame[data + 2], frame[data + 3]);
+					}
+					pos = data + itemLength;
+				}
+
+				// 受付可否の判定
+				int status = 0;
+				if (tokenLength != 32) {
+					status = STATUS_INVALID_TOKEN_SIZE;
+				} else if (payloadLength < 0 || payloadLength > ApnsPayload.DEFAULT_MAX_PAYLOAD_SIZE) {
+					status = STATUS_INVALID_PAYLOAD_SIZE;
+				} else if (identifierErrors.containsKey(identifier)) {
+					status = identifierErrors.get(identifier);
+				} else if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+					status = errorRateStatus;
+				}
+				if (status != 0) {
+					rejected.add(identifier);
+					sendError(socket, in, out, status, identifier);
+					return;
+				}
+
+				AtomicInteger count = accepted.get(identifier);
+				if (count == null) {
+					AtomicInteger created = new AtomicInteger();
+					count = accepted.putIfAbsent(identifier, created);
+					if (count == null) {
+						count = created;
+					}
+				}
+				count.incrementAndGet();
+				lastAccepted = identifier;
+				acceptedOnConnection++;
+
+				if (shutdownAfter > 0 && acceptedOnConnection >= shutdownAfter) {
+					// 最後に受け付けた通知の識別子でシャットダウンを通知
+					shutdownCount.incrementAndGet();
+					sendError(socket, in, out, STATUS_SHUTDOWN, lastAccepted);
+					return;
+				}
+			}
+		} catch (EOFException e) {
+			// クライアントによる切断
+		} catch (IOException e) {
+			logger.debug("接続が切断されました。", e);
+		} finally {
+			ApnsUtil.close(socket);
+		}
+	}
+
+	/**
+	 * クライアント証明書のサブジェクトの取得（ハンドシェイクを含む）
+	 * @param socket ソケット
+	 * @return クライアント証明書のサブジェクト。証明書がない場合は空文字列
+	 * @throws IOException
+	 */
+	private static String clientSubject(Socket socket) throws IOException {
+		if (!(socket instanceof SSLSocket)) {
+			return "";
+		}
+		SSLSocket sslSocket = (SSLSocket) socket;
+		sslSocket.startHandshake();
+		try {
+			Certificate[] chain = sslSocket.getSession().getPeerCertificates();
+			return ((X509Certificate) chain[0]).getSubjectX500Principal().getName();
+		} catch (SSLPeerUnverifiedException e) {
+			return "";
+		}
+	}
+
+	/**
+	 * エラー通知の送信
+	 *
+	 * <p>
+	 * エラー通知を送信した後、クライアントが切断するまで受信データを読み捨てます。
+	 * </p>
+	 *
+	 * @param socket ソケット
+	 * @param in 入力ストリーム
+	 * @param out 出力ストリーム
+	 * @param status ステータス
+	 * @param identifier 識別子
+	 * @throws IOException
+	 */
+	private void sendError(Socket socket, DataInputStream in, OutputStream out, int status, int identifier) throws IOException {
+		byte[] response = { 8, (byte) status, (byte) (identifier >>> 24), (byte) (identifier >>> 16), (byte) (identifier >>> 8), (byte) identifier };
+		out.write(response);
+		out.flush();
+		socket.setSoTimeout(DRAIN_TIMEOUT_MS);
+		byte[] buf = new byte[8192];
+		try {
+			int n;
+			while ((n = in.read(buf)) != -1) {
+				discardedBytes.addAndGet(n);
+			}
+		} catch (SocketTimeoutException e) {
+			logger.info("エラー通知後にクライアントが切断しませんでした。");
+		}
+	}
+
+	/**
+	 * 受信速度の制限
+	 * @param startNanos 接続の開始時刻
+	 * @param received 接続で受信したバイト数
+	 */
+	private void throttle(long startNanos, long received) {
+		long limit = readBytesPerSecond;
+		if (limit <= 0) {
+			return;
+		}
+		long expectedNanos = received * TimeUnit.SECONDS.toNanos(1) / limit;
+		long waitNanos = expectedNanos - (System.nanoTime() - startNanos);
+		if (waitNanos > 0) {
+			ApnsUtil.sleep(TimeUnit.NANOSECONDS.toMillis(waitNanos));
+		}
+	}
+}
@@ -0,0 +1,196 @@
+package japns;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+
+/**
+ * モックサーバ用のTLS設定
+ *
+ * <p>
+ * JDKの{@code keytool}で自己署名証明書のキーストアを一時ファイルに生成し、
+ * サーバ用の{@link SSLServerSocket}と、その証明書を信頼するクライアント用の{@link SSLSocketFactory}を生成します。<br>
+ * サーバはクライアント証明書を要求し（必須ではない）、検証せずに受け入れます。
+ * </p>
+ *
+ * @author T.Inukai
+ */
+public class ApnsMockTls {
+
+	/** キーストアのパスワード */
+	public static final String PASSWORD = "japns-mock";
+
+	/** サーバ証明書のキーストアファイル */
+	private final File keyStoreFile;
+
+	/** サーバ用SSLContext */
+	private final SSLContext serverContext;
+
+	/** クライアント用SSLContext */
+	private final SSLContext clientContext;
+
+	private ApnsMockTls(File keyStoreFile, KeyStore ks) throws Exception {
+		this.keyStoreFile = keyStoreFile;
+		KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+		kmf.init(ks, PASSWORD.toCharArray());
+		serverContext = SSLContext.getInstance("TLS");
+		serverContext.init(kmf.getKeyManagers(), new TrustManager[] { new AcceptAllTrustManager() }, null);
+
+		TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+		tmf.init(ks);
+		clientContext = SSLContext.getInstance("TLS");
+		clientContext.init(null, tmf.getTrustManagers(), null);
+	}
+
+	/**
+	 * 自己署名証明書を生成してインスタンスを生成します
+	 * @return モックサーバ用のTLS設定
+	 */
+	public static ApnsMockTls create() {
+		File file = createKeyStoreFile("localhost");
+		try {
+			KeyStore ks = KeyStore.getInstance("PKCS12");
+			InputStream is = new FileInputStream(file);
+			try {
+				ks.load(is, PASSWORD.toCharArray());
+			} finally {
+				is.close();
+			}
+			return new ApnsMockTls(file, ks);
+		} catch (Exception e) {
+			file.delete();
+			throw new ApnsException(e);
+		}
+	}
+
+	/**
+	 * 自己署名証明書のキーストアファイルの生成
+	 *
+	 * <p>
+	 * パスワードが{@link #PASSWORD}のPKCS12ファイルを一時ファイルとして生成します。JVMの終了時に削除されます。
+	 * クライアント証明書として{@link ApnsUtil#getSSLSocketFactory(String, String)}で読み込むこともできます。
+	 * </p>
+	 *
+	 * @param commonName 証明書のCN
+	 * @return キーストアファイル
+	 */
+	public static File createKeyStoreFile(String commonName) {
+		File file = null;
+		try {
+			file = File.createTempFile("japns-mock", ".p12");
+			file.deleteOnExit();
+			// keytoolは既存の空ファイルを読み込もうとするため削除しておく
+			file.delete();
+			String keytool = System.getProperty("java.home") + File.separator + "bin" + File.separator + "keytool";
+			Process process = new ProcessBuilder(keytool, "-genkeypair", "-alias", "mock", "-keyalg", "RSA", "-keysize", "2048",
+					"-dname", "CN=" + commonName, "-ext", "SAN=dns:localhost,ip:127.0.0.1", "-validity", "2",
+					"-storetype", "PKCS12", "-keystore", file.getPath(), "-storepass", PASSWORD, "-keypass", PASSWORD)
+					.redirectErrorStream(true).start();
+			byte[] output = readAll(process.getInputStream());
+			if (process.waitFor() != 0) {
+				throw new ApnsException("keytoolの実行に失敗しました。" + new String(output));
+			}
+			return file;
+		} catch (ApnsException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new ApnsException(e);
+		}
+	}
+
+	/**
+	 * サーバ証明書のキーストアファイルの取得
+	 *
+	 * <p>
+	 * システムプロパティ{@code javax.net.ssl.trustStore}に指定すると、
+	 * {@link ApnsUtil#getSSLSocketFactory(String, String)}で生成したソケットファクトリがモックサーバを信頼します。
+	 * </p>
+	 *
+	 * @return キーストアファイル（PKCS12、パスワードは{@link #PASSWORD}）
+	 */
+	public File getKeyStoreFile() {
+		return keyStoreFile;
+	}
+
+	/**
+	 * サーバソケットの生成
+	 * @param port ポート。0の場合は空いているポート
+	 * @return ループバックアドレスで待ち受けるサーバソケット
+	 * @throws IOException
+	 */
+	public SSLServerSocket createServerSocket(int port) throws IOException {
+		SSLServerSocket serverSocket = (SSLServerSocket) serverContext.getServerSocketFactory().createServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		serverSocket.setWantClientAuth(true);
+		return serverSocket;
+	}
+
+	/**
+	 * 受け付けたソケットへのTLSの適用
+	 *
+	 * <p>
+	 * 通常の{@link java.net.ServerSocket}で受け付けたソケットにサーバ側のTLSを重ねます。
+	 * 元のソケットを直接閉じると、close_notifyを送らずに切断できます。
+	 * </p>
+	 *
+	 * @param socket 受け付けたソケット
+	 * @return サーバ側のTLSソケット（閉じると元のソケットも閉じる）
+	 * @throws IOException
+	 */
+	public SSLSocket wrapServerSocket(Socket socket) throws IOException {
+		SSLSocket sslSocket = (SSLSocket) serverContext.getSocketFactory().createSocket(socket, null, socket.getPort(), true);
+		sslSocket.setUseClientMode(false);
+		sslSocket.setWantClientAuth(true);
+		return sslSocket;
+	}
+
+	/**
+	 * クライアント用ソケットファクトリの取得
+	 * @return モックサーバの証明書を信頼するソケットファクトリ
+	 */
+	public SSLSocketFactory getClientSocketFactory() {
+		return clientContext.getSocketFactory();
+	}
+
+	/**
+	 * クライアント証明書を検証しないTrustManager
+	 */
+	private static class AcceptAllTrustManager implements X509TrustManager {
+		@Override
+		public void checkClientTrusted(X509Certificate[] chain, String authType) {
+		}
+
+		@Override
+		public void checkServerTrusted(X509Certificate[] chain, String authType) {
+		}
+
+		@Override
+		public X509Certificate[] getAcceptedIssuers() {
+			return new X509Certificate[0];
+		}
+	}
+
+	private static byte[] readAll(InputStream is) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buf = new byte[1024];
+		int n;
+		while ((n = is.read(buf)) != -1) {
+			out.write(buf, 0, n);
+		}
+		return out.toByteArray();
+	}
+}
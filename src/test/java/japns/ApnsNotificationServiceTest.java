@@ -0,0 +1,97 @@
+package japns;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import japns.ApnsNotification.Priority;
+import japns.ApnsNotification.PushStatus;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * PUSH通知送信のテスト
+ *
+ * @author T.Inukai
+ */
+public class ApnsNotificationServiceTest {
+
+	private ApnsMockGateway gateway;
+	private ApnsNotificationService service;
+
+	@Before
+	public void setUp() throws IOException {
+		ApnsMockTls tls = ApnsMockTls.create();
+		gateway = new ApnsMockGateway(tls).start();
+		service = new ApnsNotificationService(false, tls.getClientSocketFactory(), null, 0, 0);
+		service.setGateway("localhost", gateway.getPort());
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		if (gateway != null) {
+			gateway.close();
+		}
+	}
+
+	@Test
+	public void skipsOversizedPayloads() {
+		byte[] small = ApnsUtil.convertStringToUTF8Bytes("{\"aps\":{\"alert\":\"ok\"}}");
+		byte[] limit = payloadOfSize(ApnsPayload.DEFAULT_MAX_PAYLOAD_SIZE);
+		byte[] oversized = payloadOfSize(ApnsPayload.DEFAULT_MAX_PAYLOAD_SIZE + 1);
+
+		ApnsNotificationBatch batch = new ApnsNotificationBatch(4);
+		int smallIndex = batch.addPayload(small);
+		int limitIndex = batch.addPayload(limit);
+		int oversizedIndex = batch.addPayload(oversized);
+		byte[] token = new byte[32];
+		for (int payloadIndex : new int[] { smallIndex, oversizedIndex, limitIndex, smallIndex }) {
+			token[0]++;
+			batch.add(token, 0, token.length, payloadIndex, Integer.MAX_VALUE, Priority.HIGH);
+		}
+
+		ApnsResult result = service.push(batch);
+		assertTrue(result.isSuccess());
+		assertEquals(3, result.getDoneCount());
+		assertEquals(1, result.getErrorCount());
+		assertEquals(PushStatus.ERROR, batch.getPushStatus(1));
+		assertNull(batch.getApnsNotificationErrorData(1));
+
+		// 超過した通知は送信されず、接続は切断されない
+		assertEquals(3, gateway.getAccepted().size());
+		assertTrue(gateway.getRejected().isEmpty());
+		assertEquals(1, gateway.getConnectionCount());
+
+		// 最大ペイロードサイズを変更した場合はそのサイズで判定する
+		ApnsNotification notification = new ApnsNotification(ApnsDeviceToken.wrap(token), limit, Integer.MAX_VALUE, Priority.HIGH);
+		service.setMaxPayloadSize(ApnsPayload.DEFAULT_MAX_PAYLOAD_SIZE - 1);
+		result = service.push(Arrays.asList(notification));
+		assertEquals(0, result.getDoneCount());
+		assertEquals(PushStatus.ERROR, notification.getPushStatus());
+	}
+
+	/**
+	 * 指定バイト数のペイロードの生成
+	 * @param size バイト数
+	 * @return ペイロード
+	 */
+	private static byte[] payloadOfSize(int size) {
+		ApnsPayload payload = new ApnsPayload();
+		payload.setAlertBody("");
+		payload.setMaxPayloadSize(Integer.MAX_VALUE);
+		int overhead = payload.getPayloadSize();
+		StringBuilder body = new StringBuilder();
+		for (int i = overhead; i < size; i++) {
+			body.append('a');
+		}
+		payload.setAlertBody(body.toString());
+		byte[] bytes = payload.getPayloadBytes();
+		assertEquals(size, bytes.length);
+		return bytes;
+	}
+}
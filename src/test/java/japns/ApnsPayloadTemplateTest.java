@@ -0,0 +1,116 @@
+package japns;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * APNsペイロードテンプレートのテスト
+ *
+ * @author T.Inukai
+ */
+public class ApnsPayloadTemplateTest {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	@Test
+	public void replacesOnlyInsideStringValues() throws IOException {
+		ApnsPayload payload = new ApnsPayload();
+		payload.setAlertBody("${name}さん、こんにちは");
+		payload.setLocArgs("${name}", "${count}");
+		payload.putCustomField("k${name}", "${name}");
+		payload.putCustomField("nested", Collections.singletonMap("${count}", Arrays.asList("${count}件")));
+		ApnsPayloadTemplate template = ApnsPayloadTemplate.compile(payload);
+		assertEquals(Arrays.asList("name", "count"), template.getPlaceholderNames());
+
+		byte[] bytes = template.render("太郎", "3");
+		JsonNode json = MAPPER.readTree(bytes);
+		assertEquals("太郎さん、こんにちは", json.get("aps").get("alert").get("body").asText());
+		assertEquals("太郎", json.get("aps").get("alert").get("loc-args").get(0).asText());
+		assertEquals("3", json.get("aps").get("alert").get("loc-args").get(1).asText());
+		// キーは置換されない
+		assertEquals("太郎", json.get("k${name}").asText());
+		assertEquals("3件", json.get("nested").get("${count}").get(0).asText());
+	}
+
+	@Test
+	public void escapedPlaceholderIsLiteral() throws IOException {
+		ApnsPayload payload = new ApnsPayload();
+		payload.setAlertBody("$${literal} ${name} $$ ${ }");
+		ApnsPayloadTemplate template = ApnsPayloadTemplate.compile(payload);
+		assertEquals(Arrays.asList("name"), template.getPlaceholderNames());
+		JsonNode json = MAPPER.readTree(template.render("v"));
+		assertEquals("${literal} v $$ ${ }", json.get("aps").get("alert").asText());
+	}
+
+	@Test
+	public void escapesValuesAndComputesLength() throws IOException {
+		ApnsPayload payload = new ApnsPayload();
+		payload.setAlertBody("\"${name}\"\\n");
+		ApnsPayloadTemplate template = ApnsPayloadTemplate.compile(payload);
+		String value = "a\"b\\c\n😀日";
+		byte[] bytes = template.render(value);
+		assertEquals(bytes.length, template.getRenderedLength(value));
+		assertEquals("\"" + value + "\"\\n", MAPPER.readTree(bytes).get("aps").get("alert").asText());
+	}
+
+	@Test
+	public void rejectsTruncatedPayload() {
+		StringBuilder body = new StringBuilder();
+		for (int i = 0; i < 20; i++) {
+			body.append("${name}");
+		}
+		ApnsPayload payload = new ApnsPayload();
+		payload.setAlertBody(body.toString());
+		payload.setTruncateAlertBody(true);
+		payload.setMaxPayloadSize(60);
+		try {
+			ApnsPayloadTemplate.compile(payload);
+			fail();
+		} catch (ApnsException e) {
+			// 切り詰めたペイロード
+		}
+
+		// 切り詰めが有効でも、切り詰められなければ生成できる
+		payload.setMaxPayloadSize(ApnsPayload.DEFAULT_MAX_PAYLOAD_SIZE);
+		assertEquals(ApnsPayload.DEFAULT_MAX_PAYLOAD_SIZE, ApnsPayloadTemplate.compile(payload).getMaxPayloadSize());
+	}
+
+	@Test
+	public void rejectsOversizedRender() {
+		ApnsPayload payload = new ApnsPayload();
+		payload.setAlertBody("${name}");
+		payload.setMaxPayloadSize(40);
+		ApnsPayloadTemplate template = ApnsPayloadTemplate.compile(payload);
+		assertEquals(40, template.getMaxPayloadSize());
+
+		int overhead = template.getRenderedLength("");
+		StringBuilder value = new StringBuilder();
+		for (int i = overhead; i < 40; i++) {
+			value.append('x');
+		}
+		assertEquals(40, template.render(value.toString()).length);
+		try {
+			template.render(value + "x");
+			fail();
+		} catch (ApnsException e) {
+			// 最大ペイロードサイズ超過
+		}
+		// エスケープ後のバイト数で判定する
+		try {
+			template.render(value.substring(1) + "\"");
+			fail();
+		} catch (ApnsException e) {
+			// 最大ペイロードサイズ超過
+		}
+		assertEquals(ApnsPayload.DEFAULT_MAX_PAYLOAD_SIZE, ApnsPayloadTemplate.compile(payload.build().getBytes()).getMaxPayloadSize());
+	}
+}
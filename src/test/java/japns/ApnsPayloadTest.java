@@ -0,0 +1,129 @@
+package japns;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * APNsペイロードのテスト
+ *
+ * @author T.Inukai
+ */
+public class ApnsPayloadTest {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	/** エスケープが必要な文字、マルチバイト文字、サロゲートペアを含む本文の繰り返し単位 */
+	private static final String BODY_UNIT = "a\"\\\n\u0001日本😀/";
+
+	@Test
+	public void payloadSizeMatchesEncodedBytes() throws IOException {
+		String body = repeat(BODY_UNIT, 3);
+		ApnsPayload payload = new ApnsPayload();
+		payload.setAlertBody(body);
+		payload.setBadge(3);
+		payload.setSound("default");
+		payload.putCustomField("k", "値\t");
+
+		byte[] bytes = payload.getPayloadBytes();
+		assertEquals(bytes.length, payload.getPayloadSize());
+		assertEquals(bytes.length, payload.getPayload().getBytes("UTF-8").length);
+		JsonNode json = MAPPER.readTree(bytes);
+		assertEquals(body, json.get("aps").get("alert").asText());
+		assertEquals("値\t", json.get("k").asText());
+
+		byte[] escaped = new byte[ApnsUtil.getJsonEscapedUTF8Length(body)];
+		assertEquals(escaped.length, ApnsUtil.writeJsonEscapedUTF8(body, escaped, 0));
+	}
+
+	@Test
+	public void rejectsOversizedPayloadWithoutTruncation() {
+		ApnsPayload payload = new ApnsPayload();
+		payload.setAlertBody(repeat("a", ApnsPayload.DEFAULT_MAX_PAYLOAD_SIZE));
+		try {
+			payload.build();
+			fail();
+		} catch (ApnsException e) {
+			// 最大ペイロードサイズ超過
+		}
+		assertNull(payload.getPayload());
+		assertEquals(-1, payload.getPayloadSize());
+
+		payload.setMaxPayloadSize(ApnsPayload.DEFAULT_MAX_PAYLOAD_SIZE * 2);
+		assertTrue(payload.build().length() > ApnsPayload.DEFAULT_MAX_PAYLOAD_SIZE);
+
+		// ちょうど最大ペイロードサイズは生成できる
+		int size = payload.getPayloadSize();
+		payload.setMaxPayloadSize(size);
+		assertEquals(size, payload.build().length());
+	}
+
+	@Test
+	public void rejectsWhenFieldsOtherThanBodyExceedLimit() {
+		ApnsPayload payload = new ApnsPayload();
+		payload.setAlertBody("body");
+		payload.putCustomField("data", repeat("x", 100));
+		payload.setMaxPayloadSize(50);
+		payload.setTruncateAlertBody(true);
+		try {
+			payload.build();
+			fail();
+		} catch (ApnsException e) {
+			// alert本文以外で最大ペイロードサイズ超過
+		}
+	}
+
+	@Test
+	public void truncatesOnCodePointBoundaries() throws IOException {
+		String body = repeat(BODY_UNIT, 20);
+		ApnsPayload payload = new ApnsPayload();
+		payload.setAlertBody(body);
+		payload.setTitle("タイトル");
+		int fullSize = payload.getPayloadSize();
+		payload.setTruncateAlertBody(true);
+
+		int truncatedCount = 0;
+		for (int max = fullSize - 1; max > fullSize - 120; max--) {
+			payload.setMaxPayloadSize(max);
+			byte[] bytes = payload.build().getBytes();
+			assertTrue("max=" + max, bytes.length <= max);
+
+			String alert = MAPPER.readTree(bytes).get("aps").get("alert").get("body").asText();
+			assertTrue(alert.endsWith("…"));
+			String prefix = alert.substring(0, alert.length() - 1);
+			assertTrue("max=" + max, body.startsWith(prefix));
+			assertFalse("max=" + max, prefix.length() > 0 && Character.isHighSurrogate(prefix.charAt(prefix.length() - 1)));
+
+			// 次の1文字（サロゲートペアは2文字）を加えると最大ペイロードサイズを超える
+			int next = prefix.length() + Character.charCount(body.codePointAt(prefix.length()));
+			ApnsPayload longer = new ApnsPayload();
+			longer.setAlertBody(body.substring(0, next) + "…");
+			longer.setTitle("タイトル");
+			longer.setMaxPayloadSize(Integer.MAX_VALUE);
+			assertTrue("max=" + max, longer.getPayloadSize() > max);
+			truncatedCount++;
+		}
+		assertEquals(119, truncatedCount);
+
+		// 設定したalert本文自体は変更されない
+		payload.setMaxPayloadSize(fullSize);
+		assertEquals(body, MAPPER.readTree(payload.getPayloadBytes()).get("aps").get("alert").get("body").asText());
+	}
+
+	private static String repeat(String s, int count) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			sb.append(s);
+		}
+		return sb.toString();
+	}
+}
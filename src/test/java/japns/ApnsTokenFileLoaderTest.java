@@ -0,0 +1,123 @@
+package japns;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ * デバイストークンファイルの読み込みのテスト
+ *
+ * <p>
+ * 小さな分割単位で、分割単位の境界が全ての位置に来るように読み込みます。
+ * </p>
+ *
+ * @author T.Inukai
+ */
+public class ApnsTokenFileLoaderTest {
+
+	/** UTF-8のBOM */
+	private static final byte[] BOM = { (byte) 0xef, (byte) 0xbb, (byte) 0xbf };
+
+	/** デバイストークンファイルの内容（デバイストークンは4バイト） */
+	private static final String CONTENT = ""
+			+ "0123abcd\r\n" // 1
+			+ "\r\n" // 2：空行
+			+ "01-23 45 67\n" // 3
+			+ "zz000000\r\n" // 4：16進文字以外
+			+ "0011223344\n" // 5：バイト数が不一致
+			+ "  \t\n" // 6：空行
+			+ "DEADBEEF\r\n" // 7
+			+ "0a0b0c0\n" // 8：バイト数が不一致
+			+ "ffffffff"; // 9：最終行に改行なし
+
+	/** 読み込まれるデバイストークン */
+	private static final byte[][] TOKENS = {
+			{ 0x01, 0x23, (byte) 0xab, (byte) 0xcd },
+			{ 0x01, 0x23, 0x45, 0x67 },
+			{ (byte) 0xde, (byte) 0xad, (byte) 0xbe, (byte) 0xef },
+			{ (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff } };
+
+	/** 形式が不正な行の行番号 */
+	private static final long[] MALFORMED_LINES = { 4, 5, 8 };
+
+	@Test
+	public void loadWithEveryChunkBoundary() throws IOException {
+		byte[] content = CONTENT.getBytes("US-ASCII");
+		assertLoadWithEveryChunkBoundary(content, MALFORMED_LINES.length);
+	}
+
+	@Test
+	public void skipsByteOrderMark() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(BOM);
+		out.write(CONTENT.getBytes("US-ASCII"));
+		assertLoadWithEveryChunkBoundary(out.toByteArray(), MALFORMED_LINES.length);
+	}
+
+	@Test
+	public void limitsReportedMalformedLines() throws IOException {
+		byte[] content = CONTENT.getBytes("US-ASCII");
+		assertLoadWithEveryChunkBoundary(content, 2);
+	}
+
+	@Test
+	public void emptyFile() throws IOException {
+		ApnsPackedTokens tokens = new ApnsTokenFileLoader().load(createFile(new byte[0]).getPath());
+		assertEquals(0, tokens.size());
+		assertEquals(0, tokens.getMalformedLineCount());
+	}
+
+	/**
+	 * 分割単位を1バイトからファイルサイズまで変えて読み込み、結果が同じことを確認
+	 * @param content ファイルの内容
+	 * @param maxReportedMalformedLines 形式が不正な行の行番号の保持件数
+	 * @throws IOException
+	 */
+	private static void assertLoadWithEveryChunkBoundary(byte[] content, int maxReportedMalformedLines) throws IOException {
+		File file = createFile(content);
+		long[] expectedMalformedLines = new long[Math.min(maxReportedMalformedLines, MALFORMED_LINES.length)];
+		System.arraycopy(MALFORMED_LINES, 0, expectedMalformedLines, 0, expectedMalformedLines.length);
+		for (int chunkSize = 1; chunkSize <= content.length + 1; chunkSize++) {
+			ApnsTokenFileLoader loader = new ApnsTokenFileLoader();
+			loader.setTokenLength(4);
+			loader.setThreadCount(3);
+			loader.setChunkSizeUnchecked(chunkSize);
+			loader.setMaxReportedMalformedLines(maxReportedMalformedLines);
+			ApnsPackedTokens tokens = loader.load(file.getPath());
+
+			String message = "chunkSize=" + chunkSize;
+			assertEquals(message, TOKENS.length, tokens.size());
+			for (int i = 0; i < TOKENS.length; i++) {
+				byte[] token = new byte[4];
+				tokens.copyToken(i, token, 0);
+				assertArrayEquals(message, TOKENS[i], token);
+			}
+			assertEquals(message, MALFORMED_LINES.length, tokens.getMalformedLineCount());
+			assertArrayEquals(message, expectedMalformedLines, tokens.getMalformedLines());
+		}
+	}
+
+	/**
+	 * 一時ファイルの生成
+	 * @param content ファイルの内容
+	 * @return 一時ファイル
+	 * @throws IOException
+	 */
+	private static File createFile(byte[] content) throws IOException {
+		File file = File.createTempFile("japns-tokens", ".txt");
+		file.deleteOnExit();
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(content);
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+}